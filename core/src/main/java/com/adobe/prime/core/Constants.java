@@ -28,6 +28,9 @@ public final class Constants
 
   public static final String DEFAULT_HOST = "https://captivateprime.adobe.com";
 
+  public static final String WIDGET_RESOURCE_TYPE = "cpWidget/components/content/widget";
+  public static final String DEFERRED_RENDER_SELECTOR = "cpdeferred";
+
   public final class CPUrl
   {
     public static final String CONFIG_URL = "/app/embeddablewidget?widgetRef=widgets-aem";
@@ -44,6 +47,10 @@ public final class Constants
     public static final String ADMIN_CONFIG_CLIENT_SECRET = "clientSecret";
     public static final String ADMIN_CONFIG_REFRESH_TOKEN = "refreshToken";
     public static final String ADMIN_CONFIG_ACCOUNT_ID = "accountId";
+    public static final String ADMIN_CONFIG_TOKEN_KEY = "tokenKey";
+    public static final String ADMIN_CONFIG_PATH = "configPath";
+    public static final String ADMIN_CONFIG_PREVIOUS_TOKEN_KEY = "previousTokenKey";
+    public static final String ADMIN_CONFIG_TOKEN_ROTATED_AT = "tokenRotatedAt";
 
     public static final String ADMIN_CONFIG_HOST_NAME = CP_NODE_PROPERTY_PREFIX + "commonConfig.captivateHostName";
     public static final String GLOBAL_CONFIG_SETTINGS = "/conf/global/settings";
@@ -80,7 +80,7 @@ public class EmbeddableWidgetsConfig
 
   public List<EmbeddableWidgetOptions> getOptions()
   {
-    return Collections.unmodifiableList(options);
+    return options != null ? Collections.unmodifiableList(options) : Collections.emptyList();
   }
 
   public void setOptions(List<EmbeddableWidgetOptions> options)
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.jobs;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Session;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.apache.sling.event.jobs.consumer.JobExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.utils.EmbeddableWidgetMetrics;
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.replication.ReplicationActionType;
+import com.day.cq.replication.ReplicationException;
+import com.day.cq.replication.ReplicationOptions;
+import com.day.cq.replication.ReplicationStatus;
+import com.day.cq.replication.Replicator;
+import com.day.cq.wcm.api.NameConstants;
+
+/**
+ * Publishes an admin configuration. The configuration subtree is collected first and activated
+ * with a single replication call, so every agent queues one entry for the whole configuration
+ * instead of one entry per node. Nodes which have not changed since they were last activated are
+ * left out, so unchanged configuration does not flush caches on the publish side.
+ */
+@Component(metatype = false, immediate = true)
+@Service(value = JobExecutor.class)
+@Property(name = JobExecutor.PROPERTY_TOPICS, value = ConfigPublishJobExecutor.TOPIC, propertyPrivate = true)
+public class ConfigPublishJobExecutor implements JobExecutor
+{
+
+  public static final String TOPIC = "com/adobe/prime/core/config/publish";
+  public static final String PROPERTY_CONFIG_NAME = "configName";
+  public static final String PROPERTY_USER_ID = "userId";
+
+  @Reference
+  ResourceResolverFactory resourceResolverFactory;
+
+  @Reference
+  Replicator replicator;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConfigPublishJobExecutor.class);
+  private static final String SUBSERVICE_NAME = "writeService";
+  private static final Map<String, Object> SERVICE_PARAMS =
+      Collections.<String, Object>singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE_NAME);
+
+  public static Map<String, Object> getJobProperties(String configName, String userId)
+  {
+    Map<String, Object> jobProperties = new HashMap<>();
+    jobProperties.put(PROPERTY_CONFIG_NAME, configName);
+    if (userId != null)
+    {
+      jobProperties.put(PROPERTY_USER_ID, userId);
+    }
+    return Collections.unmodifiableMap(jobProperties);
+  }
+
+  @Override
+  public JobExecutionResult process(Job job, JobExecutionContext context)
+  {
+    String configName = job.getProperty(PROPERTY_CONFIG_NAME, String.class);
+    if (StringUtils.isEmpty(configName))
+    {
+      return context.result().message("Configuration name is required.").cancelled();
+    }
+
+    String configPath = Constants.AdminConfigurations.GLOBAL_CONFIG_CP_PATH + "/" + configName;
+    ResourceResolver adminResolver = null;
+    try
+    {
+      adminResolver = resourceResolverFactory.getServiceResourceResolver(SERVICE_PARAMS);
+      Resource configResource = adminResolver.getResource(configPath);
+      if (configResource == null)
+      {
+        return context.result().message("Configuration " + configName + " does not exist").cancelled();
+      }
+
+      List<String> paths = collectModifiedPaths(configResource);
+      if (paths.isEmpty())
+      {
+        EmbeddableWidgetMetrics.increment("configpublish.unchanged");
+        return context.result().message("No changes to publish in configuration " + configName).succeeded();
+      }
+      replicator.replicate(adminResolver.adaptTo(Session.class), ReplicationActionType.ACTIVATE, paths.toArray(new String[0]),
+          new ReplicationOptions());
+
+      EmbeddableWidgetMetrics.increment("configpublish.published");
+      EmbeddableWidgetMetrics.increment("configpublish.paths", paths.size());
+      LOGGER.info("ConfigPublishJobExecutor process:: Published {} paths of {} for {}", paths.size(), configName,
+          job.getProperty(PROPERTY_USER_ID, String.class));
+      return context.result().message("Published configuration " + configName + ", " + paths.size() + " resources").succeeded();
+    } catch (LoginException | ReplicationException exc)
+    {
+      LOGGER.error("ConfigPublishJobExecutor process:: Exception in publishing configuration {}", configName, exc);
+      return context.result().message("Unable to publish configuration " + configName).failed();
+    } finally
+    {
+      if (adminResolver != null)
+      {
+        adminResolver.close();
+      }
+    }
+  }
+
+  /**
+   * Paths of the resource and its descendants which were modified after they were last activated,
+   * each parent ahead of its children. A node which was never activated, or deactivated since, is
+   * always included.
+   */
+  public static List<String> collectModifiedPaths(Resource resource)
+  {
+    List<String> paths = new ArrayList<>();
+    collectModifiedPaths(resource, paths);
+    return paths;
+  }
+
+  private static void collectModifiedPaths(Resource resource, List<String> paths)
+  {
+    if (isModifiedSinceActivation(resource))
+    {
+      paths.add(resource.getPath());
+    }
+    Iterator<Resource> it = resource.getResourceResolver().listChildren(resource);
+    while (it.hasNext())
+    {
+      collectModifiedPaths(it.next(), paths);
+    }
+  }
+
+  /**
+   * Replication status and modification time are read from the node, or from its
+   * {@code jcr:content} child where pages keep them.
+   */
+  private static boolean isModifiedSinceActivation(Resource resource)
+  {
+    ValueMap properties = resource.getValueMap();
+    if (!properties.containsKey(ReplicationStatus.NODE_PROPERTY_LAST_REPLICATED))
+    {
+      Resource content = resource.getChild(JcrConstants.JCR_CONTENT);
+      if (content != null)
+      {
+        properties = content.getValueMap();
+      }
+    }
+    Calendar lastReplicated = properties.get(ReplicationStatus.NODE_PROPERTY_LAST_REPLICATED, Calendar.class);
+    String lastAction = properties.get(ReplicationStatus.NODE_PROPERTY_LAST_REPLICATION_ACTION, String.class);
+    if (lastReplicated == null || !ReplicationActionType.ACTIVATE.getName().equals(lastAction))
+    {
+      return true;
+    }
+    Calendar lastModified = properties.get(NameConstants.PN_PAGE_LAST_MOD, Calendar.class);
+    if (lastModified == null)
+    {
+      lastModified = properties.get(JcrConstants.JCR_LASTMODIFIED, Calendar.class);
+    }
+    return lastModified != null && lastModified.after(lastReplicated);
+  }
+}
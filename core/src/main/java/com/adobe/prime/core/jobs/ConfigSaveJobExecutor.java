@@ -0,0 +1,340 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.jobs;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.jcr.Node;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.jackrabbit.commons.JcrUtils;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.apache.sling.event.jobs.consumer.JobExecutor;
+import org.apache.sling.jcr.resource.api.JcrResourceConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.utils.EmbeddableWidgetConfigUtils;
+import com.adobe.prime.core.utils.EmbeddableWidgetMetrics;
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.wcm.api.NameConstants;
+
+/**
+ * Saves an admin configuration submitted from the configuration console. The account SKU is
+ * validated first, so the author request does not wait on Learning Manager; a configuration whose
+ * account fails validation is not written and the job is cancelled with
+ * {@link #SKU_VALIDATION_ERROR} as its result message. Only properties whose submitted value differs
+ * from the stored one are written, and nothing is committed when no property changed.
+ */
+@Component(metatype = false, immediate = true)
+@Service(value = JobExecutor.class)
+@Property(name = JobExecutor.PROPERTY_TOPICS, value = ConfigSaveJobExecutor.TOPIC, propertyPrivate = true)
+public class ConfigSaveJobExecutor implements JobExecutor
+{
+
+  public static final String TOPIC = "com/adobe/prime/core/config/save";
+  public static final String PROPERTY_CONFIG_NAME = "configName";
+  public static final String PROPERTY_USER_ID = "userId";
+  public static final String PROPERTY_NAMES = "propertyNames";
+  public static final String PROPERTY_VALUES = "propertyValues";
+
+  public static final String SKU_VALIDATION_ERROR = "Error in SKU Validation";
+
+  @Reference
+  ResourceResolverFactory resourceResolverFactory;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConfigSaveJobExecutor.class);
+  private static final String SUBSERVICE_NAME = "writeService";
+  private static final Map<String, Object> SERVICE_PARAMS =
+      Collections.<String, Object>singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE_NAME);
+
+  private static final String CQ_PAGE_CONTENT = "cq:PageContent";
+
+  /**
+   * Job properties for saving the submitted {@code cpWidget#} properties. Names and values are
+   * stored as parallel arrays, which the job queue persists without serialization.
+   */
+  public static Map<String, Object> getJobProperties(String configName, String userId, Map<String, String> properties)
+  {
+    String[] names = new String[properties.size()];
+    String[] values = new String[properties.size()];
+    int i = 0;
+    for (Entry<String, String> e : properties.entrySet())
+    {
+      names[i] = e.getKey();
+      values[i] = e.getValue();
+      i++;
+    }
+    Map<String, Object> jobProperties = new HashMap<>();
+    jobProperties.put(PROPERTY_CONFIG_NAME, configName);
+    if (userId != null)
+    {
+      jobProperties.put(PROPERTY_USER_ID, userId);
+    }
+    jobProperties.put(PROPERTY_NAMES, names);
+    jobProperties.put(PROPERTY_VALUES, values);
+    return Collections.unmodifiableMap(jobProperties);
+  }
+
+  @Override
+  public JobExecutionResult process(Job job, JobExecutionContext context)
+  {
+    String configName = job.getProperty(PROPERTY_CONFIG_NAME, String.class);
+    String[] names = job.getProperty(PROPERTY_NAMES, String[].class);
+    String[] values = job.getProperty(PROPERTY_VALUES, String[].class);
+    if (StringUtils.isEmpty(configName) || names == null || values == null || names.length != values.length)
+    {
+      return context.result().message("Configuration name and properties are required.").cancelled();
+    }
+    Map<String, String> properties = new HashMap<>();
+    for (int i = 0; i < names.length; i++)
+    {
+      properties.put(names[i], values[i]);
+    }
+    String invalidNumber = getInvalidNumberProperty(properties);
+    if (invalidNumber != null)
+    {
+      return context.result().message("Property " + invalidNumber + " of configuration " + configName + " must be a number").cancelled();
+    }
+
+    String hostName = properties.get(Constants.AdminConfigurations.ADMIN_CONFIG_HOST_NAME);
+    String accountId = properties.get(Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_ACCOUNT_ID);
+    if (!isAccountSKUValid(hostName, accountId))
+    {
+      EmbeddableWidgetMetrics.increment("configsave.rejected");
+      LOGGER.info("ConfigSaveJobExecutor process:: Account {} of {} failed SKU validation", accountId, configName);
+      return context.result().message(SKU_VALIDATION_ERROR).cancelled();
+    }
+
+    String userId = job.getProperty(PROPERTY_USER_ID, String.class);
+    ResourceResolver adminResolver = null;
+    int writes;
+    try
+    {
+      adminResolver = resourceResolverFactory.getServiceResourceResolver(SERVICE_PARAMS);
+      Session session = adminResolver.adaptTo(Session.class);
+      writes = saveConfiguration(session, configName, userId, properties);
+      if (session.hasPendingChanges())
+      {
+        adminResolver.commit();
+      }
+    } catch (LoginException | RepositoryException | PersistenceException exc)
+    {
+      LOGGER.error("ConfigSaveJobExecutor process:: Exception in saving configuration {}", configName, exc);
+      return context.result().message("Unable to save configuration " + configName).failed();
+    } finally
+    {
+      if (adminResolver != null)
+      {
+        adminResolver.close();
+      }
+    }
+    if (writes == 0)
+    {
+      EmbeddableWidgetMetrics.increment("configsave.unchanged");
+      return context.result().message("No changes to configuration " + configName).succeeded();
+    }
+    EmbeddableWidgetMetrics.increment("configsave.saved");
+    EmbeddableWidgetMetrics.increment("configsave.properties.written", writes);
+    return context.result().message("Saved configuration " + configName + ", " + writes + " properties changed").succeeded();
+  }
+
+  /**
+   * Name of the first property whose {@code @TypeHint} is {@code number} but whose value is not a
+   * whole number, or {@code null} if all numbers are valid.
+   */
+  public static String getInvalidNumberProperty(Map<String, String> properties)
+  {
+    for (Entry<String, String> e : properties.entrySet())
+    {
+      String name = e.getKey();
+      if (!name.endsWith("@TypeHint") && !name.endsWith("@Delete") && "number".equals(properties.get(name + "@TypeHint")))
+      {
+        try
+        {
+          Long.parseLong(e.getValue());
+        } catch (NumberFormatException nfe)
+        {
+          return name;
+        }
+      }
+    }
+    return null;
+  }
+
+  boolean isAccountSKUValid(String hostName, String accountId)
+  {
+    return EmbeddableWidgetConfigUtils.isAccountSKUValid(hostName, accountId);
+  }
+
+  /**
+   * Applies the submitted properties to the configuration node.
+   *
+   * @return the number of properties which changed.
+   */
+  int saveConfiguration(Session session, String configName, String userId, Map<String, String> properties) throws RepositoryException
+  {
+    Node configNode = getConfigNode(session, configName);
+    int writes = 0;
+
+    String refreshTokenPropName = Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_REFRESH_TOKEN;
+    if (configNode.hasProperty(refreshTokenPropName))
+    {
+      String refreshTokenUserValue = properties.get(refreshTokenPropName);
+      String refreshTokeDbValue = configNode.getProperty(refreshTokenPropName).getValue().getString();
+      final String overlay =
+          StringUtils.repeat(Constants.AdminConfigurations.MASK_CHAR, refreshTokeDbValue.length() - (2 * Constants.AdminConfigurations.MASK_LENGTH));
+      String maskRefreshTokenValue = StringUtils.overlay(refreshTokeDbValue, overlay, Constants.AdminConfigurations.MASK_LENGTH,
+          refreshTokeDbValue.length() - Constants.AdminConfigurations.MASK_LENGTH);
+      if (maskRefreshTokenValue.equals(refreshTokenUserValue))
+      {
+        properties.remove(refreshTokenPropName);
+      } else if (refreshTokenUserValue != null && !refreshTokenUserValue.equals(refreshTokeDbValue))
+      {
+        LOGGER.info("ConfigSaveJobExecutor saveConfiguration:: Refresh token of {} rotated. Migrating learner tokens.", configName);
+        configNode.setProperty(Constants.AdminConfigurations.ADMIN_CONFIG_PREVIOUS_TOKEN_KEY, DigestUtils.sha512Hex(refreshTokeDbValue));
+        configNode.setProperty(Constants.AdminConfigurations.ADMIN_CONFIG_TOKEN_ROTATED_AT, System.currentTimeMillis());
+        writes += 2;
+      }
+    }
+
+    for (Entry<String, String> e : properties.entrySet())
+    {
+      String name = e.getKey();
+      String value = e.getValue();
+
+      if (name.endsWith("@TypeHint"))
+      {
+        continue;
+      } else if (name.endsWith("@Delete"))
+      {
+        String nonDeletePropName = name.replace("@Delete", "");
+        if (properties.get(nonDeletePropName) == null && setIfChanged(configNode, nonDeletePropName, false))
+        {
+          writes++;
+        }
+      } else
+      {
+        String typeHintPropName = name + "@TypeHint";
+        String type = properties.get(typeHintPropName) != null ? properties.get(typeHintPropName) : "string";
+        Object typedValue;
+        switch (type)
+        {
+          case "boolean":
+            typedValue = true;
+            break;
+          case "number":
+            typedValue = Long.valueOf(value);
+            break;
+          default:
+            typedValue = value;
+        }
+        if (setIfChanged(configNode, name, typedValue))
+        {
+          writes++;
+        }
+      }
+    }
+
+    if (writes > 0)
+    {
+      configNode.setProperty(NameConstants.PN_PAGE_LAST_MOD, Calendar.getInstance());
+      if (userId != null)
+      {
+        configNode.setProperty(NameConstants.PN_PAGE_LAST_MOD_BY, userId);
+      }
+    }
+    return writes;
+  }
+
+  /**
+   * Sets a single-valued property unless it already holds an equal value of the same type.
+   *
+   * @return whether the property was written.
+   */
+  private static boolean setIfChanged(Node node, String name, Object value) throws RepositoryException
+  {
+    if (node.hasProperty(name))
+    {
+      javax.jcr.Property property = node.getProperty(name);
+      if (!property.isMultiple() && value.equals(getValue(property)))
+      {
+        return false;
+      }
+    }
+    if (value instanceof Boolean)
+    {
+      node.setProperty(name, (Boolean) value);
+    } else if (value instanceof Long)
+    {
+      node.setProperty(name, (Long) value);
+    } else
+    {
+      node.setProperty(name, value.toString());
+    }
+    return true;
+  }
+
+  private static Object getValue(javax.jcr.Property property) throws RepositoryException
+  {
+    switch (property.getType())
+    {
+      case PropertyType.BOOLEAN:
+        return property.getBoolean();
+      case PropertyType.LONG:
+        return property.getLong();
+      case PropertyType.STRING:
+        return property.getString();
+      default:
+        return null;
+    }
+  }
+
+  private Node getConfigNode(Session session, String configName) throws RepositoryException
+  {
+    Node globalConfNode = session.getNode(Constants.AdminConfigurations.GLOBAL_CONFIG_PATH);
+    Node configNode = session.nodeExists(Constants.AdminConfigurations.GLOBAL_CONFIG_CP_PATH)
+        ? globalConfNode.getNode(Constants.AdminConfigurations.GLOBAL_CONFIG_CP)
+        : globalConfNode.addNode(Constants.AdminConfigurations.GLOBAL_CONFIG_CP, JcrResourceConstants.NT_SLING_FOLDER);
+    if (!session.nodeExists(configNode.getPath() + "/" + Constants.AdminConfigurations.CLOUD_CONFIG_SETTINGS))
+    {
+      configNode.addNode(Constants.AdminConfigurations.CLOUD_CONFIG_SETTINGS, JcrResourceConstants.NT_SLING_FOLDER);
+    }
+    Node subConfigurationNode = JcrUtils.getOrCreateByPath(configNode.getPath() + "/" + configName, JcrResourceConstants.NT_SLING_FOLDER, session);
+    Node settingsNode = JcrUtils.getOrCreateByPath(subConfigurationNode.getPath() + "/" + Constants.AdminConfigurations.CLOUD_CONFIG_SETTINGS,
+        JcrResourceConstants.NT_SLING_FOLDER, session);
+    Node cloudConfigsNode = JcrUtils.getOrCreateByPath(settingsNode.getPath() + "/" + Constants.AdminConfigurations.CLOUD_CONFIG,
+        JcrResourceConstants.NT_SLING_FOLDER, session);
+    Node cpWidgetNode =
+        JcrUtils.getOrCreateByPath(cloudConfigsNode.getPath() + "/" + Constants.AdminConfigurations.CP_WIDGET_CONFIG, NameConstants.NT_PAGE, session);
+    return JcrUtils.getOrCreateByPath(cpWidgetNode.getPath() + "/" + JcrConstants.JCR_CONTENT, CQ_PAGE_CONTENT, session);
+  }
+}
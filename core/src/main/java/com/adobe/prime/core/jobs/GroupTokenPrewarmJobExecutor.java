@@ -0,0 +1,261 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.jobs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.jackrabbit.api.security.user.Authorizable;
+import org.apache.jackrabbit.api.security.user.Group;
+import org.apache.jackrabbit.api.security.user.UserManager;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.apache.sling.event.jobs.consumer.JobExecutor;
+import org.apache.sling.jcr.base.util.AccessControlUtil;
+import org.osgi.service.component.ComponentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.prime.core.services.EmbeddableWidgetService;
+import com.adobe.prime.core.services.SharedTokenCache;
+import com.adobe.prime.core.utils.EmbeddableWidgetMetrics;
+import com.adobe.prime.core.utils.RateLimiter;
+
+/**
+ * Acquires access tokens for all members of a group ahead of a planned event. Members are processed
+ * in user ID order and in chunks of {@code prewarm.parallelism}; progress is reported after every
+ * chunk, so a job which is retried after a failure or restart resumes after the last finished
+ * chunk.
+ * <p>
+ * Jobs are started from the configuration console and run on author, where no widget is rendered
+ * for learners. The acquired tokens only serve publish through a remote {@link SharedTokenCache},
+ * so jobs are cancelled up front when none is configured.
+ */
+@Component(metatype = true, immediate = true, label = "Adobe Learning Manager Group Token Pre-warm",
+    description = "Acquires learner access tokens for the members of a group ahead of time.")
+@Service(value = JobExecutor.class)
+@Property(name = JobExecutor.PROPERTY_TOPICS, value = GroupTokenPrewarmJobExecutor.TOPIC, propertyPrivate = true)
+public class GroupTokenPrewarmJobExecutor implements JobExecutor
+{
+
+  public static final String TOPIC = "com/adobe/prime/core/token/prewarm/group";
+  public static final String PROPERTY_GROUP_ID = "groupId";
+  public static final String PROPERTY_PAGE_PATH = "pagePath";
+
+  @Reference
+  ResourceResolverFactory resourceResolverFactory;
+
+  @Reference
+  private transient EmbeddableWidgetService widgetService;
+
+  @Reference(cardinality = ReferenceCardinality.OPTIONAL_UNARY, policy = ReferencePolicy.DYNAMIC)
+  private volatile SharedTokenCache sharedTokenCache;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(GroupTokenPrewarmJobExecutor.class);
+  private static final String SUBSERVICE_NAME = "writeService";
+  private static final Map<String, Object> SERVICE_PARAMS =
+      Collections.<String, Object>singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE_NAME);
+
+  private static final double DEFAULT_RATE = 10;
+  private static final int DEFAULT_PARALLELISM = 4;
+  private static final int MAX_LOGGED_FAILURES = 100;
+
+  @Property(label = "Rate", description = "Maximum number of learners per second whose token is acquired.", doubleValue = DEFAULT_RATE)
+  private static final String RATE = "prewarm.rate";
+
+  @Property(label = "Parallelism", description = "Number of learners whose token is acquired concurrently.", intValue = DEFAULT_PARALLELISM)
+  private static final String PARALLELISM = "prewarm.parallelism";
+
+  private double rate = DEFAULT_RATE;
+  private int parallelism = DEFAULT_PARALLELISM;
+
+  public static Map<String, Object> getJobProperties(String groupId, String pagePath)
+  {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(PROPERTY_GROUP_ID, groupId);
+    properties.put(PROPERTY_PAGE_PATH, pagePath);
+    return Collections.unmodifiableMap(properties);
+  }
+
+  protected void activate(ComponentContext componentContext)
+  {
+    Dictionary<String, Object> properties = componentContext.getProperties();
+    rate = PropertiesUtil.toDouble(properties.get(RATE), DEFAULT_RATE);
+    parallelism = Math.max(1, PropertiesUtil.toInteger(properties.get(PARALLELISM), DEFAULT_PARALLELISM));
+  }
+
+  @Override
+  public JobExecutionResult process(Job job, JobExecutionContext context)
+  {
+    String groupId = job.getProperty(PROPERTY_GROUP_ID, String.class);
+    String pagePath = job.getProperty(PROPERTY_PAGE_PATH, String.class);
+    if (groupId == null || pagePath == null)
+    {
+      return context.result().message("Group and page path are required.").cancelled();
+    }
+    SharedTokenCache sharedCache = sharedTokenCache;
+    if (sharedCache == null || !sharedCache.isRemote())
+    {
+      return context.result().message("No remote shared token cache is configured. Tokens acquired here would not reach publish.").cancelled();
+    }
+
+    List<String> memberIds;
+    try
+    {
+      memberIds = getMemberIds(groupId);
+    } catch (LoginException | RepositoryException exc)
+    {
+      LOGGER.error("GroupTokenPrewarmJobExecutor process:: Exception in resolving members of {}", groupId, exc);
+      return context.result().message("Unable to resolve members of " + groupId).failed();
+    }
+    if (memberIds == null)
+    {
+      return context.result().message("No group found for " + groupId).cancelled();
+    }
+
+    int resumeFrom = Math.max(0, Math.min(job.getFinishedProgressStep(), memberIds.size()));
+    context.initProgress(memberIds.size(), -1);
+    if (resumeFrom > 0)
+    {
+      context.log("Resuming after {0} of {1} learners", resumeFrom, memberIds.size());
+    }
+    LOGGER.info("GroupTokenPrewarmJobExecutor process:: Pre-warming {} learners of {} from {}", memberIds.size(), groupId, resumeFrom);
+
+    RateLimiter rateLimiter = new RateLimiter(rate, parallelism);
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+      Thread thread = new Thread(runnable, "cpwidget-token-prewarm");
+      thread.setDaemon(true);
+      return thread;
+    });
+    int succeeded = 0;
+    int failed = 0;
+    try
+    {
+      for (int start = resumeFrom; start < memberIds.size(); start += parallelism)
+      {
+        if (context.isStopped())
+        {
+          return context.result().message("Stopped after " + start + " of " + memberIds.size() + " learners").cancelled();
+        }
+
+        List<String> chunk = memberIds.subList(start, Math.min(start + parallelism, memberIds.size()));
+        List<Future<Boolean>> results = new ArrayList<>(chunk.size());
+        for (String userId : chunk)
+        {
+          rateLimiter.acquire();
+          results.add(executor.submit(() -> widgetService.prewarmAccessToken(userId, pagePath)));
+        }
+        for (int i = 0; i < chunk.size(); i++)
+        {
+          if (getResult(results.get(i)))
+          {
+            succeeded++;
+          } else
+          {
+            failed++;
+            if (failed <= MAX_LOGGED_FAILURES)
+            {
+              context.log("No token acquired for {0}", chunk.get(i));
+            }
+          }
+        }
+        context.incrementProgressCount(chunk.size());
+      }
+    } catch (InterruptedException ie)
+    {
+      Thread.currentThread().interrupt();
+      return context.result().message("Interrupted after " + (resumeFrom + succeeded + failed) + " learners").failed();
+    } finally
+    {
+      executor.shutdownNow();
+    }
+
+    EmbeddableWidgetMetrics.increment("tokenprewarm.group.succeeded", succeeded);
+    EmbeddableWidgetMetrics.increment("tokenprewarm.group.failed", failed);
+    String message = "Pre-warmed " + succeeded + " learners of " + groupId + ", " + failed + " failed";
+    LOGGER.info("GroupTokenPrewarmJobExecutor process:: {}", message);
+    return context.result().message(message).succeeded();
+  }
+
+  private boolean getResult(Future<Boolean> result) throws InterruptedException
+  {
+    try
+    {
+      return Boolean.TRUE.equals(result.get());
+    } catch (ExecutionException ee)
+    {
+      LOGGER.error("GroupTokenPrewarmJobExecutor getResult:: Exception in acquiring access token", ee.getCause());
+      return false;
+    }
+  }
+
+  /**
+   * Returns the sorted IDs of all users which are declared or inherited members of the group, or
+   * {@code null} if there is no such group.
+   */
+  List<String> getMemberIds(String groupId) throws LoginException, RepositoryException
+  {
+    ResourceResolver adminResolver = null;
+    try
+    {
+      adminResolver = resourceResolverFactory.getServiceResourceResolver(SERVICE_PARAMS);
+      UserManager userManager = AccessControlUtil.getUserManager(adminResolver.adaptTo(Session.class));
+      Authorizable authorizable = userManager.getAuthorizable(groupId);
+      if (authorizable == null || !authorizable.isGroup())
+      {
+        return null;
+      }
+
+      List<String> memberIds = new ArrayList<>();
+      Iterator<Authorizable> members = ((Group) authorizable).getMembers();
+      while (members.hasNext())
+      {
+        Authorizable member = members.next();
+        if (!member.isGroup())
+        {
+          memberIds.add(member.getID());
+        }
+      }
+      Collections.sort(memberIds);
+      return memberIds;
+    } finally
+    {
+      if (adminResolver != null)
+      {
+        adminResolver.close();
+      }
+    }
+  }
+}
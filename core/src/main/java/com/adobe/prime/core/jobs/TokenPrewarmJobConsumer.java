@@ -0,0 +1,80 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.jobs;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.prime.core.services.EmbeddableWidgetService;
+import com.adobe.prime.core.utils.EmbeddableWidgetMetrics;
+
+/**
+ * Acquires the access token of a learner ahead of the first widget render. Prewarming is best
+ * effort: jobs which have nothing to do or acquire no token still finish as OK, so they are neither
+ * retried nor kept in the job history, and the render path fetches the token on demand.
+ */
+@Component(metatype = false, immediate = true)
+@Service(value = JobConsumer.class)
+@Property(name = JobConsumer.PROPERTY_TOPICS, value = TokenPrewarmJobConsumer.TOPIC, propertyPrivate = true)
+public class TokenPrewarmJobConsumer implements JobConsumer
+{
+
+  public static final String TOPIC = "com/adobe/prime/core/token/prewarm";
+  public static final String PROPERTY_USER_ID = "userId";
+  public static final String PROPERTY_PAGE_PATH = "pagePath";
+
+  @Reference
+  private transient EmbeddableWidgetService widgetService;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TokenPrewarmJobConsumer.class);
+
+  public static Map<String, Object> getJobProperties(String userId, String pagePath)
+  {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(PROPERTY_USER_ID, userId);
+    properties.put(PROPERTY_PAGE_PATH, pagePath);
+    return Collections.unmodifiableMap(properties);
+  }
+
+  @Override
+  public JobResult process(Job job)
+  {
+    String userId = job.getProperty(PROPERTY_USER_ID, String.class);
+    String pagePath = job.getProperty(PROPERTY_PAGE_PATH, String.class);
+    if (userId == null || pagePath == null)
+    {
+      EmbeddableWidgetMetrics.increment("tokenprewarm.skipped");
+      LOGGER.debug("TokenPrewarmJobConsumer process:: Nothing to prewarm for user {} and page {}", userId, pagePath);
+      return JobResult.OK;
+    }
+
+    if (widgetService.prewarmAccessToken(userId, pagePath))
+    {
+      EmbeddableWidgetMetrics.increment("tokenprewarm.succeeded");
+      LOGGER.debug("TokenPrewarmJobConsumer process:: Access token of {} ready for {}", userId, pagePath);
+      return JobResult.OK;
+    }
+    EmbeddableWidgetMetrics.increment("tokenprewarm.failed");
+    LOGGER.debug("TokenPrewarmJobConsumer process:: No access token acquired for {}", userId);
+    return JobResult.OK;
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.listeners;
+
+import java.util.Dictionary;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.auth.core.AuthConstants;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.event.jobs.JobManager;
+import org.osgi.service.component.ComponentContext;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.prime.core.jobs.TokenPrewarmJobConsumer;
+import com.adobe.prime.core.utils.EmbeddableWidgetMetrics;
+
+/**
+ * Queues a token pre-warm job when a learner logs in, so the access token is usually stored before
+ * the first widget render. The admin configuration is resolved from the configured page, the same
+ * way it is for a widget on that page. Only active when configured, typically on publish.
+ */
+@Component(metatype = true, immediate = true, policy = ConfigurationPolicy.REQUIRE, label = "Adobe Learning Manager Token Pre-warm on Login",
+    description = "Acquires the learner access token asynchronously as soon as a learner logs in.")
+@Service(value = EventHandler.class)
+@Property(name = EventConstants.EVENT_TOPIC, value = AuthConstants.TOPIC_LOGIN, propertyPrivate = true)
+public class TokenPrewarmLoginListener implements EventHandler
+{
+
+  @Reference
+  private transient JobManager jobManager;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TokenPrewarmLoginListener.class);
+
+  @Property(label = "Page Path", description = "Page whose admin configuration is used for the pre-warmed token, e.g. the site root.")
+  private static final String PAGE_PATH = "prewarm.page.path";
+  private String pagePath;
+
+  protected void activate(ComponentContext componentContext)
+  {
+    Dictionary<String, Object> properties = componentContext.getProperties();
+    pagePath = PropertiesUtil.toString(properties.get(PAGE_PATH), null);
+    if (StringUtils.isEmpty(pagePath))
+    {
+      LOGGER.warn("TokenPrewarmLoginListener activate:: No page path configured. Tokens are not pre-warmed.");
+    }
+  }
+
+  @Override
+  public void handleEvent(Event event)
+  {
+    Object userId = event.getProperty(SlingConstants.PROPERTY_USERID);
+    if (userId == null || StringUtils.isEmpty(pagePath))
+    {
+      return;
+    }
+    if (jobManager.addJob(TokenPrewarmJobConsumer.TOPIC, TokenPrewarmJobConsumer.getJobProperties(userId.toString(), pagePath)) != null)
+    {
+      EmbeddableWidgetMetrics.increment("tokenprewarm.queued");
+    } else
+    {
+      LOGGER.error("TokenPrewarmLoginListener handleEvent:: Unable to queue token pre-warm for {}", userId);
+    }
+  }
+}
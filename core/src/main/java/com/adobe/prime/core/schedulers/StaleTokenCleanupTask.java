@@ -0,0 +1,317 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.schedulers;
+
+import static java.lang.System.currentTimeMillis;
+
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.query.Query;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.osgi.service.component.ComponentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.utils.EmbeddableWidgetMetrics;
+
+/**
+ * Removes learner token properties from user profiles which belong to no live admin configuration
+ * or expired long ago. Users are read in pages ordered by their ID; each page is committed on its own
+ * together with the last visited ID and followed by a pause, so the job does not compete with
+ * request traffic and a stopped run resumes where it left off. It runs on the cluster leader only.
+ * A run which finds no live configuration is skipped, since the configurations may just be
+ * unreadable.
+ */
+@Component(metatype = true, immediate = true, label = "Adobe Learning Manager Stale Token Cleanup",
+    description = "Removes stale learner access-token properties from user profiles.")
+@Service(value = Runnable.class)
+public class StaleTokenCleanupTask implements Runnable
+{
+
+  @Reference
+  ResourceResolverFactory resourceResolverFactory;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StaleTokenCleanupTask.class);
+  private static final String SUBSERVICE_NAME = "writeService";
+  private static final Map<String, Object> SERVICE_PARAMS =
+      Collections.<String, Object>singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE_NAME);
+
+  private static final String USERS_QUERY =
+      "SELECT * FROM [rep:User] AS u WHERE ISDESCENDANTNODE(u, '/home/users')%s ORDER BY u.[rep:authorizableId]";
+  private static final String AUTHORIZABLE_ID = "rep:authorizableId";
+  static final String CHECKPOINT = "tokenCleanupCheckpoint";
+  private static final String TOKEN_PREFIX = Constants.LearnerConfigurations.USER_ACCESS_TOKEN_STR + "_";
+  private static final String EXPIRY_PREFIX = Constants.LearnerConfigurations.EXPIRES_IN_STR + "_";
+
+  private static final boolean DEFAULT_ENABLED = true;
+  private static final int DEFAULT_BATCH_SIZE = 100;
+  private static final long DEFAULT_BATCH_PAUSE_MS = 1000;
+  private static final int DEFAULT_EXPIRED_RETENTION_DAYS = 30;
+
+  @Property(label = "Cron Expression", description = "When the cleanup runs.", value = "0 0 3 * * ?")
+  private static final String SCHEDULER_EXPRESSION = "scheduler.expression";
+
+  @Property(boolValue = false, propertyPrivate = true)
+  private static final String SCHEDULER_CONCURRENT = "scheduler.concurrent";
+
+  @Property(value = "LEADER", propertyPrivate = true)
+  private static final String SCHEDULER_RUN_ON = "scheduler.runOn";
+
+  @Property(label = "Enabled", description = "Whether the scheduled cleanup runs.", boolValue = DEFAULT_ENABLED)
+  private static final String ENABLED = "cleanup.enabled";
+
+  @Property(label = "Batch Size", description = "Number of users read and committed together.", intValue = DEFAULT_BATCH_SIZE)
+  private static final String BATCH_SIZE = "cleanup.batch.size";
+
+  @Property(label = "Batch Pause (ms)", description = "Pause after every committed batch. Ends early when the component stops.",
+      longValue = DEFAULT_BATCH_PAUSE_MS)
+  private static final String BATCH_PAUSE = "cleanup.batch.pause.ms";
+
+  @Property(label = "Expired Token Retention (days)", description = "Tokens expired for longer than this are removed even for live configurations.",
+      intValue = DEFAULT_EXPIRED_RETENTION_DAYS)
+  private static final String EXPIRED_RETENTION = "cleanup.expired.retention.days";
+
+  private boolean enabled = DEFAULT_ENABLED;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private long batchPause = DEFAULT_BATCH_PAUSE_MS;
+  private long expiredRetention = TimeUnit.DAYS.toMillis(DEFAULT_EXPIRED_RETENTION_DAYS);
+  private volatile CountDownLatch stopSignal = new CountDownLatch(1);
+
+  protected void activate(ComponentContext componentContext)
+  {
+    Dictionary<String, Object> properties = componentContext.getProperties();
+    enabled = PropertiesUtil.toBoolean(properties.get(ENABLED), DEFAULT_ENABLED);
+    batchSize = Math.max(1, PropertiesUtil.toInteger(properties.get(BATCH_SIZE), DEFAULT_BATCH_SIZE));
+    batchPause = PropertiesUtil.toLong(properties.get(BATCH_PAUSE), DEFAULT_BATCH_PAUSE_MS);
+    expiredRetention = TimeUnit.DAYS.toMillis(PropertiesUtil.toInteger(properties.get(EXPIRED_RETENTION), DEFAULT_EXPIRED_RETENTION_DAYS));
+    stopSignal = new CountDownLatch(1);
+  }
+
+  protected void deactivate()
+  {
+    stopSignal.countDown();
+  }
+
+  @Override
+  public void run()
+  {
+    if (!enabled)
+    {
+      return;
+    }
+
+    ResourceResolver adminResolver = null;
+    long startTime = currentTimeMillis();
+    int scannedProfiles = 0;
+    int modifiedProfiles = 0;
+    int removedTokens = 0;
+    try
+    {
+      adminResolver = resourceResolverFactory.getServiceResourceResolver(SERVICE_PARAMS);
+      Set<String> liveTokenKeys = getLiveTokenKeys(adminResolver);
+      if (liveTokenKeys.isEmpty())
+      {
+        LOGGER.warn("StaleTokenCleanupTask run:: No refresh token found under {}. Skipping cleanup, as every learner token would be removed.",
+            Constants.AdminConfigurations.GLOBAL_CONFIG_CP_PATH);
+        EmbeddableWidgetMetrics.increment("tokencleanup.skipped");
+        return;
+      }
+      long expiredBefore = startTime - expiredRetention;
+      LOGGER.info("StaleTokenCleanupTask run:: Starting cleanup with {} live token keys", liveTokenKeys.size());
+
+      Resource configsRoot = adminResolver.getResource(Constants.AdminConfigurations.GLOBAL_CONFIG_CP_PATH);
+      String lastUserId = configsRoot.getValueMap().get(CHECKPOINT, String.class);
+      if (lastUserId != null)
+      {
+        LOGGER.info("StaleTokenCleanupTask run:: Resuming after user {}", lastUserId);
+      }
+
+      boolean finished = false;
+      while (!finished && stopSignal.getCount() > 0)
+      {
+        Iterator<Resource> users = findUsers(adminResolver, lastUserId);
+        int pageUsers = 0;
+        int pageProfiles = 0;
+        while (pageUsers < batchSize && users.hasNext())
+        {
+          Resource user = users.next();
+          pageUsers++;
+          String userId = user.getValueMap().get(AUTHORIZABLE_ID, String.class);
+          if (userId != null)
+          {
+            lastUserId = userId;
+          }
+          Resource profile = user.getChild("profile");
+          if (profile == null)
+          {
+            continue;
+          }
+          scannedProfiles++;
+          int removed = cleanProfile(profile, liveTokenKeys, expiredBefore);
+          if (removed > 0)
+          {
+            removedTokens += removed;
+            modifiedProfiles++;
+            pageProfiles++;
+          }
+        }
+        finished = pageUsers < batchSize;
+
+        saveCheckpoint(configsRoot, finished ? null : lastUserId);
+        adminResolver.commit();
+        EmbeddableWidgetMetrics.increment("tokencleanup.profiles.modified", pageProfiles);
+        if (!finished)
+        {
+          LOGGER.info("StaleTokenCleanupTask run:: Progress. Scanned {} profiles, cleaned {}, removed {} tokens", scannedProfiles, modifiedProfiles,
+              removedTokens);
+          if (stopSignal.await(batchPause, TimeUnit.MILLISECONDS))
+          {
+            LOGGER.info("StaleTokenCleanupTask run:: Stopped. The next run resumes after user {}", lastUserId);
+          }
+        }
+      }
+    } catch (InterruptedException ie)
+    {
+      Thread.currentThread().interrupt();
+      LOGGER.warn("StaleTokenCleanupTask run:: Interrupted. The next run resumes after the last committed batch.");
+    } catch (LoginException | PersistenceException exc)
+    {
+      LOGGER.error("StaleTokenCleanupTask run:: Exception in cleaning up stale tokens", exc);
+    } finally
+    {
+      if (adminResolver != null)
+      {
+        adminResolver.close();
+      }
+      EmbeddableWidgetMetrics.increment("tokencleanup.profiles.scanned", scannedProfiles);
+      EmbeddableWidgetMetrics.increment("tokencleanup.tokens.removed", removedTokens);
+      EmbeddableWidgetMetrics.increment("tokencleanup.runs");
+    }
+    LOGGER.info("StaleTokenCleanupTask run:: Finished in {} ms. Scanned {} profiles, cleaned {}, removed {} tokens", currentTimeMillis() - startTime,
+        scannedProfiles, modifiedProfiles, removedTokens);
+  }
+
+  /**
+   * Users ordered by ID, starting after {@code afterUserId} or from the first user if it is
+   * {@code null}.
+   */
+  Iterator<Resource> findUsers(ResourceResolver adminResolver, String afterUserId)
+  {
+    String condition = afterUserId == null ? "" : " AND u.[" + AUTHORIZABLE_ID + "] > '" + afterUserId.replace("'", "''") + "'";
+    return adminResolver.findResources(String.format(USERS_QUERY, condition), Query.JCR_SQL2);
+  }
+
+  private void saveCheckpoint(Resource configsRoot, String lastUserId)
+  {
+    ModifiableValueMap modifiableValueMap = configsRoot.adaptTo(ModifiableValueMap.class);
+    if (modifiableValueMap == null)
+    {
+      LOGGER.warn("StaleTokenCleanupTask saveCheckpoint:: {} is not modifiable. A stopped run starts over.", configsRoot.getPath());
+    } else if (lastUserId == null)
+    {
+      modifiableValueMap.remove(CHECKPOINT);
+    } else
+    {
+      modifiableValueMap.put(CHECKPOINT, lastUserId);
+    }
+  }
+
+  Set<String> getLiveTokenKeys(ResourceResolver adminResolver)
+  {
+    Set<String> liveTokenKeys = new HashSet<>();
+    Resource configsRoot = adminResolver.getResource(Constants.AdminConfigurations.GLOBAL_CONFIG_CP_PATH);
+    if (configsRoot == null)
+    {
+      return liveTokenKeys;
+    }
+    for (Resource config : configsRoot.getChildren())
+    {
+      Resource configResource = adminResolver.getResource(config.getPath() + Constants.AdminConfigurations.CP_SUB_CONFIG_PATH);
+      if (configResource == null)
+      {
+        continue;
+      }
+      String refreshToken =
+          configResource.getValueMap().get(Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_REFRESH_TOKEN, String.class);
+      if (refreshToken != null)
+      {
+        liveTokenKeys.add(DigestUtils.sha512Hex(refreshToken));
+      }
+      String previousTokenKey = configResource.getValueMap().get(Constants.AdminConfigurations.ADMIN_CONFIG_PREVIOUS_TOKEN_KEY, String.class);
+      if (previousTokenKey != null)
+      {
+        liveTokenKeys.add(previousTokenKey);
+      }
+    }
+    return liveTokenKeys;
+  }
+
+  /**
+   * @return the number of tokens removed from the profile.
+   */
+  int cleanProfile(Resource profile, Set<String> liveTokenKeys, long expiredBefore)
+  {
+    ValueMap valueMap = profile.getValueMap();
+    Set<String> staleKeys = new HashSet<>();
+    for (String name : valueMap.keySet())
+    {
+      if (!name.startsWith(TOKEN_PREFIX))
+      {
+        continue;
+      }
+      String tokenKey = name.substring(TOKEN_PREFIX.length());
+      Long expiry = valueMap.get(EXPIRY_PREFIX + tokenKey, Long.class);
+      if (!liveTokenKeys.contains(tokenKey) || expiry == null || expiry < expiredBefore)
+      {
+        staleKeys.add(tokenKey);
+      }
+    }
+    if (staleKeys.isEmpty())
+    {
+      return 0;
+    }
+
+    ModifiableValueMap modifiableValueMap = profile.adaptTo(ModifiableValueMap.class);
+    if (modifiableValueMap == null)
+    {
+      LOGGER.warn("StaleTokenCleanupTask cleanProfile:: Profile {} is not modifiable", profile.getPath());
+      return 0;
+    }
+    for (String tokenKey : staleKeys)
+    {
+      modifiableValueMap.remove(TOKEN_PREFIX + tokenKey);
+      modifiableValueMap.remove(EXPIRY_PREFIX + tokenKey);
+    }
+    return staleKeys.size();
+  }
+}
@@ -18,7 +18,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
@@ -48,6 +53,9 @@ public class EmbeddableWidgetConfigurationServiceImpl implements EmbeddableWidge
   private static final Map<String, Object> SERVICE_PARAMS =
       Collections.<String, Object>singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE_NAME);
 
+  // config node path -> (refresh token, token key) of the last revision seen
+  private final ConcurrentMap<String, Pair<String, String>> tokenKeys = new ConcurrentHashMap<>();
+
   @Override
   public Map<String, Object> getGeneralConfigs(Resource resource)
   {
@@ -124,6 +132,12 @@ public class EmbeddableWidgetConfigurationServiceImpl implements EmbeddableWidge
             {
               adminConfigs.put(e.getKey(), e.getValue());
             }
+            adminConfigs.put(Constants.AdminConfigurations.ADMIN_CONFIG_PATH, configNodePath);
+            Object refreshToken = adminConfigs.get(Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_REFRESH_TOKEN);
+            if (refreshToken != null)
+            {
+              adminConfigs.put(Constants.AdminConfigurations.ADMIN_CONFIG_TOKEN_KEY, getTokenKey(configNodePath, refreshToken.toString()));
+            }
           }
         }
       }
@@ -140,6 +154,17 @@ public class EmbeddableWidgetConfigurationServiceImpl implements EmbeddableWidge
     return adminConfigs;
   }
 
+  private String getTokenKey(String configNodePath, String refreshToken)
+  {
+    Pair<String, String> tokenKey = tokenKeys.get(configNodePath);
+    if (tokenKey == null || !tokenKey.getLeft().equals(refreshToken))
+    {
+      tokenKey = new ImmutablePair<>(refreshToken, DigestUtils.sha512Hex(refreshToken));
+      tokenKeys.put(configNodePath, tokenKey);
+    }
+    return tokenKey.getRight();
+  }
+
   private String getFirstAvailableCPConfigPath(ResourceResolver adminResolver)
   {
     LOGGER.debug(
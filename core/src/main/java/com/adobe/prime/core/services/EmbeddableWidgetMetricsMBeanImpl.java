@@ -0,0 +1,53 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.services;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+
+import com.adobe.prime.core.utils.EmbeddableWidgetMetrics;
+import com.google.gson.GsonBuilder;
+
+@Component(metatype = false, immediate = true)
+@Service(value = DynamicMBean.class)
+@Property(name = "jmx.objectname", value = "com.adobe.prime:type=EmbeddableWidgetMetrics")
+public class EmbeddableWidgetMetricsMBeanImpl extends StandardMBean implements EmbeddableWidgetMetricsMBean
+{
+
+  public EmbeddableWidgetMetricsMBeanImpl() throws NotCompliantMBeanException
+  {
+    super(EmbeddableWidgetMetricsMBean.class);
+  }
+
+  @Override
+  public String getMetrics()
+  {
+    return new GsonBuilder().setPrettyPrinting().create().toJson(EmbeddableWidgetMetrics.snapshot());
+  }
+
+  @Override
+  public long getCount(String name)
+  {
+    return EmbeddableWidgetMetrics.getCount(name);
+  }
+
+  @Override
+  public void resetCounters()
+  {
+    EmbeddableWidgetMetrics.reset();
+  }
+}
@@ -18,7 +18,17 @@ import com.day.cq.wcm.api.Page;
 public interface EmbeddableWidgetService
 {
 
+  public boolean isTokenRequired(SlingHttpServletRequest request);
+
   public String getAccessTokenOfUser(SlingHttpServletRequest request, Page currentPage);
 
+  public String getAccessTokenOfUser(SlingHttpServletRequest request, Page currentPage, long deadline);
+
+  public boolean prewarmAccessToken(String userId, String pagePath);
+
+  public long getRenderBudget();
+
+  public long getDeferredBudget();
+
   public String getDefaultHostName();
 }
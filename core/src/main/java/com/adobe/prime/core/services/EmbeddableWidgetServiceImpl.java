@@ -16,36 +16,52 @@ import static java.lang.System.currentTimeMillis;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyUnbounded;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.http.ParseException;
-import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.commons.osgi.PropertiesUtil;
 import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.utils.EmbeddableWidgetConfigUtils;
+import com.adobe.prime.core.utils.EmbeddableWidgetHttpUtils;
+import com.adobe.prime.core.utils.EmbeddableWidgetMetrics;
+import com.adobe.prime.core.utils.FailureBackoffCache;
+import com.adobe.prime.core.utils.LatencyTracker;
 import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
@@ -78,21 +94,244 @@ public class EmbeddableWidgetServiceImpl implements EmbeddableWidgetService
   private static final String CONFIG_HOST_NAME = "config.hostname";
   private String configHostName;
 
+  private static final String ANONYMOUS_USER_ID = "anonymous";
+
+  @Property(label = "Token-less Users", description = "User IDs which never get a learner access token, such as anonymous and service users.",
+      value = {ANONYMOUS_USER_ID}, unbounded = PropertyUnbounded.ARRAY)
+  private static final String SKIP_USERS = "token.skip.users";
+  private Set<String> skipUsers = Collections.singleton(ANONYMOUS_USER_ID);
+
+  private static final long DEFAULT_RENDER_BUDGET_MS = 2000;
+  private static final int DEFAULT_HTTP_TIMEOUT_MS = 10000;
+
+  @Property(label = "Render Latency Budget (ms)",
+      description = "Maximum time a component render may wait on Learning Manager. When exceeded, the widget is rendered without an access token and the browser fetches it afterwards.",
+      longValue = DEFAULT_RENDER_BUDGET_MS)
+  private static final String RENDER_BUDGET = "render.budget.ms";
+  private long renderBudget = DEFAULT_RENDER_BUDGET_MS;
+
+  private static final long DEFAULT_DEFERRED_BUDGET_MS = 5000;
+
+  @Property(label = "Deferred Render Budget (ms)",
+      description = "Maximum time the deferred widget request may wait on Learning Manager for the catalog and the access token.",
+      longValue = DEFAULT_DEFERRED_BUDGET_MS)
+  private static final String DEFERRED_BUDGET = "deferred.budget.ms";
+  private long deferredBudget = DEFAULT_DEFERRED_BUDGET_MS;
+
+  @Property(label = "HTTP Timeout (ms)", description = "Timeout for calls to Learning Manager which are not bound by the render latency budget.",
+      intValue = DEFAULT_HTTP_TIMEOUT_MS)
+  private static final String HTTP_TIMEOUT = "http.timeout.ms";
+
+  private static final int DEFAULT_CIRCUIT_FAILURE_THRESHOLD = 5;
+  private static final long DEFAULT_CIRCUIT_OPEN_DURATION_MS = 30000;
+
+  @Property(label = "Circuit Failure Threshold", description = "Consecutive failed calls after which calls to a Learning Manager host are short-circuited.",
+      intValue = DEFAULT_CIRCUIT_FAILURE_THRESHOLD)
+  private static final String CIRCUIT_FAILURE_THRESHOLD = "circuit.failure.threshold";
+
+  @Property(label = "Circuit Open Duration (ms)", description = "Time an open circuit waits before letting a trial call through.",
+      longValue = DEFAULT_CIRCUIT_OPEN_DURATION_MS)
+  private static final String CIRCUIT_OPEN_DURATION = "circuit.open.duration.ms";
+
+  private static final int DEFAULT_LIMITER_INITIAL_LIMIT = 10;
+  private static final int DEFAULT_LIMITER_MAX_LIMIT = 50;
+  private static final long DEFAULT_LIMITER_LATENCY_THRESHOLD_MS = 2000;
+  private static final long DEFAULT_LIMITER_QUEUE_TIMEOUT_MS = 100;
+
+  @Property(label = "Initial Concurrency Limit", description = "Initial number of concurrent calls allowed per Learning Manager host.",
+      intValue = DEFAULT_LIMITER_INITIAL_LIMIT)
+  private static final String LIMITER_INITIAL_LIMIT = "limiter.initial.limit";
+
+  @Property(label = "Maximum Concurrency Limit", description = "Upper bound for the adaptive per-host concurrency limit.",
+      intValue = DEFAULT_LIMITER_MAX_LIMIT)
+  private static final String LIMITER_MAX_LIMIT = "limiter.max.limit";
+
+  @Property(label = "Concurrency Latency Threshold (ms)", description = "Calls slower than this shrink the per-host concurrency limit.",
+      longValue = DEFAULT_LIMITER_LATENCY_THRESHOLD_MS)
+  private static final String LIMITER_LATENCY_THRESHOLD = "limiter.latency.threshold.ms";
+
+  @Property(label = "Concurrency Queue Timeout (ms)", description = "Time a call waits for a free slot before it is rejected.",
+      longValue = DEFAULT_LIMITER_QUEUE_TIMEOUT_MS)
+  private static final String LIMITER_QUEUE_TIMEOUT = "limiter.queue.timeout.ms";
+
+  private static final double DEFAULT_HEDGE_PERCENTILE = 95;
+  private static final double DEFAULT_HEDGE_MAX_RATIO = 0.05;
+  private static final int HEDGE_LATENCY_SAMPLES = 500;
+  private static final int HEDGE_MIN_LATENCY_SAMPLES = 50;
+  private static final double HEDGE_MAX_CREDITS = 10;
+
+  @Property(label = "Hedge Token Requests", description = "Send a second access-token request when the first is slower than the configured percentile.",
+      boolValue = false)
+  private static final String HEDGE_ENABLED = "token.hedge.enabled";
+
+  @Property(label = "Hedge Delay Percentile", description = "Percentile of recent access-token latencies after which a hedged request is sent.",
+      doubleValue = DEFAULT_HEDGE_PERCENTILE)
+  private static final String HEDGE_PERCENTILE = "token.hedge.percentile";
+
+  @Property(label = "Maximum Hedge Ratio", description = "Maximum fraction of access-token requests which may be hedged.",
+      doubleValue = DEFAULT_HEDGE_MAX_RATIO)
+  private static final String HEDGE_MAX_RATIO = "token.hedge.max.ratio";
+
+  private double hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+  private double hedgeMaxRatio = DEFAULT_HEDGE_MAX_RATIO;
+  private double hedgeCredits;
+  private final LatencyTracker tokenLatencyTracker = new LatencyTracker(HEDGE_LATENCY_SAMPLES, HEDGE_MIN_LATENCY_SAMPLES);
+  private ExecutorService hedgeExecutor;
+
+  private static final long DEFAULT_BACKOFF_INITIAL_MS = 60000;
+  private static final long DEFAULT_BACKOFF_MAX_MS = 3600000;
+  private static final int DEFAULT_BACKOFF_MAX_ENTRIES = 10000;
+
+  @Property(label = "Token Failure Backoff (ms)", description = "Time a user is not retried after a failed access-token acquisition. Doubles with every further failure.",
+      longValue = DEFAULT_BACKOFF_INITIAL_MS)
+  private static final String BACKOFF_INITIAL = "token.backoff.initial.ms";
+
+  @Property(label = "Maximum Token Failure Backoff (ms)", description = "Upper bound for the access-token failure backoff.",
+      longValue = DEFAULT_BACKOFF_MAX_MS)
+  private static final String BACKOFF_MAX = "token.backoff.max.ms";
+
+  @Property(label = "Token Failure Cache Size", description = "Maximum number of failed user and configuration pairs remembered.",
+      intValue = DEFAULT_BACKOFF_MAX_ENTRIES)
+  private static final String BACKOFF_MAX_ENTRIES = "token.backoff.max.entries";
+
+  private static final long DEFAULT_SKU_VALID_TTL_MS = 3600000;
+  private static final long DEFAULT_SKU_INVALID_TTL_MS = 300000;
+  private static final int DEFAULT_SKU_CACHE_ENTRIES = 1000;
+
+  @Property(label = "SKU Validation TTL (ms)", description = "Time a successful account SKU validation is reused.", longValue = DEFAULT_SKU_VALID_TTL_MS)
+  private static final String SKU_VALID_TTL = "sku.validation.ttl.ms";
+
+  @Property(label = "Failed SKU Validation TTL (ms)", description = "Time a failed account SKU validation is reused before the account is checked again.",
+      longValue = DEFAULT_SKU_INVALID_TTL_MS)
+  private static final String SKU_INVALID_TTL = "sku.validation.negative.ttl.ms";
+
+  @Property(label = "SKU Validation Cache Size", description = "Maximum number of host and account pairs whose SKU validation is remembered.",
+      intValue = DEFAULT_SKU_CACHE_ENTRIES)
+  private static final String SKU_CACHE_ENTRIES = "sku.validation.max.entries";
+
+  private FailureBackoffCache tokenFailures = new FailureBackoffCache("token", DEFAULT_BACKOFF_INITIAL_MS, DEFAULT_BACKOFF_MAX_MS, DEFAULT_BACKOFF_MAX_ENTRIES);
+
   protected void activate(ComponentContext componentContext)
   {
     Dictionary<String, Object> properties = componentContext.getProperties();
     configHostName = properties.get(CONFIG_HOST_NAME) != null ? properties.get(CONFIG_HOST_NAME).toString() : DEFAULT_HOST;
+    skipUsers = new HashSet<>(Arrays.asList(PropertiesUtil.toStringArray(properties.get(SKIP_USERS), new String[] {ANONYMOUS_USER_ID})));
+    renderBudget = PropertiesUtil.toLong(properties.get(RENDER_BUDGET), DEFAULT_RENDER_BUDGET_MS);
+    deferredBudget = PropertiesUtil.toLong(properties.get(DEFERRED_BUDGET), DEFAULT_DEFERRED_BUDGET_MS);
+    EmbeddableWidgetHttpUtils.setDefaultTimeout(PropertiesUtil.toInteger(properties.get(HTTP_TIMEOUT), DEFAULT_HTTP_TIMEOUT_MS));
+    EmbeddableWidgetHttpUtils.configureCircuitBreaker(PropertiesUtil.toInteger(properties.get(CIRCUIT_FAILURE_THRESHOLD), DEFAULT_CIRCUIT_FAILURE_THRESHOLD),
+        PropertiesUtil.toLong(properties.get(CIRCUIT_OPEN_DURATION), DEFAULT_CIRCUIT_OPEN_DURATION_MS));
+    EmbeddableWidgetHttpUtils.configureConcurrencyLimiter(PropertiesUtil.toInteger(properties.get(LIMITER_INITIAL_LIMIT), DEFAULT_LIMITER_INITIAL_LIMIT),
+        PropertiesUtil.toInteger(properties.get(LIMITER_MAX_LIMIT), DEFAULT_LIMITER_MAX_LIMIT),
+        PropertiesUtil.toLong(properties.get(LIMITER_LATENCY_THRESHOLD), DEFAULT_LIMITER_LATENCY_THRESHOLD_MS),
+        PropertiesUtil.toLong(properties.get(LIMITER_QUEUE_TIMEOUT), DEFAULT_LIMITER_QUEUE_TIMEOUT_MS));
+    EmbeddableWidgetConfigUtils.configureSkuValidationCache(PropertiesUtil.toLong(properties.get(SKU_VALID_TTL), DEFAULT_SKU_VALID_TTL_MS),
+        PropertiesUtil.toLong(properties.get(SKU_INVALID_TTL), DEFAULT_SKU_INVALID_TTL_MS),
+        PropertiesUtil.toInteger(properties.get(SKU_CACHE_ENTRIES), DEFAULT_SKU_CACHE_ENTRIES));
+
+    tokenFailures = new FailureBackoffCache("token", PropertiesUtil.toLong(properties.get(BACKOFF_INITIAL), DEFAULT_BACKOFF_INITIAL_MS),
+        PropertiesUtil.toLong(properties.get(BACKOFF_MAX), DEFAULT_BACKOFF_MAX_MS),
+        PropertiesUtil.toInteger(properties.get(BACKOFF_MAX_ENTRIES), DEFAULT_BACKOFF_MAX_ENTRIES));
+    EmbeddableWidgetMetrics.registerGauge("token.backoff.entries", tokenFailures::size);
+    EmbeddableWidgetMetrics.registerGauge("token.backoff.longestPendingMs", tokenFailures::getLongestPendingDelay);
+
+    hedgePercentile = PropertiesUtil.toDouble(properties.get(HEDGE_PERCENTILE), DEFAULT_HEDGE_PERCENTILE);
+    hedgeMaxRatio = PropertiesUtil.toDouble(properties.get(HEDGE_MAX_RATIO), DEFAULT_HEDGE_MAX_RATIO);
+    if (PropertiesUtil.toBoolean(properties.get(HEDGE_ENABLED), false))
+    {
+      hedgeExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "cpwidget-token-hedge");
+        thread.setDaemon(true);
+        return thread;
+      });
+      EmbeddableWidgetMetrics.registerGauge("token.hedge.delayMs", () -> tokenLatencyTracker.getPercentile(hedgePercentile));
+    }
+  }
+
+  protected void deactivate()
+  {
+    EmbeddableWidgetMetrics.unregisterGauge("token.backoff.entries");
+    EmbeddableWidgetMetrics.unregisterGauge("token.backoff.longestPendingMs");
+    if (hedgeExecutor != null)
+    {
+      hedgeExecutor.shutdownNow();
+      hedgeExecutor = null;
+      EmbeddableWidgetMetrics.unregisterGauge("token.hedge.delayMs");
+    }
+    EmbeddableWidgetHttpUtils.shutdown();
+  }
+
+  @Override
+  public boolean isTokenRequired(SlingHttpServletRequest request)
+  {
+    return isTokenRequired(request.getResourceResolver().getUserID());
   }
 
   @Override
   public String getAccessTokenOfUser(SlingHttpServletRequest request, Page currentPage)
+  {
+    return getAccessTokenOfUser(request, currentPage, currentTimeMillis() + EmbeddableWidgetHttpUtils.getDefaultTimeout());
+  }
+
+  @Override
+  public String getAccessTokenOfUser(SlingHttpServletRequest request, Page currentPage, long deadline)
+  {
+    String userId = request.getResourceResolver().getUserID();
+    if (!isTokenRequired(userId))
+    {
+      LOGGER.trace("EmbeddableWidgetServiceImpl getAccessTokenOfUser:: No access token for user {}", userId);
+      return "";
+    }
+    return getAccessToken(userId, widgetUserService.getUserEmail(request), currentPage, deadline);
+  }
+
+  @Override
+  public boolean prewarmAccessToken(String userId, String pagePath)
+  {
+    if (!isTokenRequired(userId))
+    {
+      return false;
+    }
+
+    ResourceResolver adminResolver = null;
+    try
+    {
+      adminResolver = resourceResolverFactory.getServiceResourceResolver(SERVICE_PARAMS);
+      PageManager pageManager = adminResolver.adaptTo(PageManager.class);
+      Page page = pageManager != null ? pageManager.getPage(pagePath) : null;
+      if (page == null)
+      {
+        LOGGER.error("EmbeddableWidgetServiceImpl prewarmAccessToken:: No page found at {}", pagePath);
+        return false;
+      }
+      String accessToken = getAccessToken(userId, widgetUserService.getUserEmail(userId), page,
+          currentTimeMillis() + EmbeddableWidgetHttpUtils.getDefaultTimeout());
+      return !accessToken.isEmpty();
+    } catch (LoginException exc)
+    {
+      LOGGER.error("EmbeddableWidgetServiceImpl prewarmAccessToken:: Exception in resolving page {}", pagePath, exc);
+    } finally
+    {
+      if (adminResolver != null)
+      {
+        adminResolver.close();
+      }
+    }
+    return false;
+  }
+
+  private boolean isTokenRequired(String userId)
+  {
+    return userId != null && !skipUsers.contains(userId);
+  }
+
+  private String getAccessToken(String userId, String email, Page currentPage, long deadline)
   {
     ResourceResolver adminResolver = null;
     String accessToken = "";
     try
     {
-      String email = widgetUserService.getUserEmail(request);
-      Pair<String, Long> tokenWithExpiry = widgetUserService.getAccessTokenWithExpiry(request, currentPage, email);
+      Pair<String, Long> tokenWithExpiry = widgetUserService.getAccessTokenWithExpiry(userId, currentPage);
 
       long currentTime = currentTimeMillis();
 
@@ -117,19 +356,45 @@ public class EmbeddableWidgetServiceImpl implements EmbeddableWidgetService
         String clientSecret =
             adminConfigs.get(Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_CLIENT_SECRET).toString();
 
+        String failureKey = userId + "|" + DigestUtils.sha256Hex(hostName + "|" + clientId + "|" + refreshToken);
+        if (tokenFailures.isBackingOff(failureKey))
+        {
+          LOGGER.debug("EmbeddableWidgetServiceImpl getAccessTokenOfUser:: Backing off after earlier failure for user {}", userId);
+          return "";
+        }
+
+        if (StringUtils.isEmpty(email))
+        {
+          long delay = tokenFailures.recordFailure(failureKey);
+          LOGGER.error("EmbeddableWidgetServiceImpl getAccessTokenOfUser:: No email for user {}. Retrying in {} ms", userId, delay);
+          return "";
+        }
+
         LOGGER.debug("EmbeddableWidgetServiceImpl getAccessTokenOfUser:: Fetching Access Token");
-        String accessTokenResponse = fetchAccessToken(hostName, clientId, clientSecret, refreshToken, email);
+        long remainingTime = deadline - currentTimeMillis();
+        if (remainingTime <= 0)
+        {
+          LOGGER.warn("EmbeddableWidgetServiceImpl getAccessTokenOfUser:: Render budget exhausted before fetching access token.");
+          return "";
+        }
+        String accessTokenResponse = fetchAccessToken(hostName, clientId, clientSecret, refreshToken, email, remainingTime);
         Pair<String, Long> resp = getTokenAndExpiry(accessTokenResponse);
 
         if (resp == null)
         {
           LOGGER.error("EmbeddableWidgetServiceImpl getAccessTokenOfUser:: Exception in fetching access_token. Response- {}", accessTokenResponse);
+          if (accessTokenResponse != null)
+          {
+            long delay = tokenFailures.recordFailure(failureKey);
+            LOGGER.error("EmbeddableWidgetServiceImpl getAccessTokenOfUser:: Retrying access_token for user {} in {} ms", userId, delay);
+          }
           return "";
         }
+        tokenFailures.recordSuccess(failureKey);
 
         accessToken = resp.getLeft();
 
-        widgetUserService.setAccessTokenWithExpiry(request, currentPage, accessToken, resp.getRight(), email);
+        widgetUserService.setAccessTokenWithExpiry(userId, currentPage, accessToken, resp.getRight());
 
       } else
       {
@@ -157,29 +422,38 @@ public class EmbeddableWidgetServiceImpl implements EmbeddableWidgetService
     return configHostName;
   }
 
-  private String fetchAccessToken(String hostName, String clientId, String clientSecret, String refreshToken, String email)
+  @Override
+  public long getRenderBudget()
+  {
+    return renderBudget;
+  }
+
+  @Override
+  public long getDeferredBudget()
+  {
+    return deferredBudget;
+  }
+
+  private String fetchAccessToken(String hostName, String clientId, String clientSecret, String refreshToken, String email, long timeoutMs)
   {
     LOGGER.debug("EmbeddableWidgetServiceImpl FetchAccessToken:: HostName {}, email {}", hostName, email);
     try
     {
       String url = hostName
           + Constants.CPUrl.ACCESS_TOKEN_URL.replace("{email}", URLEncoder.encode(email, "UTF-8")).replace("{min_validity_sec}", String.valueOf(ACCESS_TOKEN_MIN_VALIDITY_SEC));
-      HttpPost post = new HttpPost(url);
-      post.setHeader("Content-Type", "application/json");
 
       Map<String, String> requestBodyMap = new HashMap<String, String>();
       requestBodyMap.put("client_id", clientId);
       requestBodyMap.put("client_secret", clientSecret);
       requestBodyMap.put("refresh_token", refreshToken);
-      post.setEntity(new StringEntity(new Gson().toJson(requestBodyMap), ContentType.APPLICATION_JSON));
+      String requestBody = new Gson().toJson(requestBodyMap);
 
-      try (CloseableHttpClient httpClient = HttpClients.createDefault(); CloseableHttpResponse response = httpClient.execute(post))
+      ExecutorService executor = hedgeExecutor;
+      if (executor == null)
       {
-        return EntityUtils.toString(response.getEntity());
-      } catch (ParseException | IOException e)
-      {
-        LOGGER.error("Exception in http call while fetching access-token", e);
+        return executeTokenRequest(createTokenRequest(url, requestBody), timeoutMs);
       }
+      return executeHedgedTokenRequest(executor, url, requestBody, timeoutMs);
 
     } catch (UnsupportedEncodingException use)
     {
@@ -188,6 +462,124 @@ public class EmbeddableWidgetServiceImpl implements EmbeddableWidgetService
     return null;
   }
 
+  private HttpPost createTokenRequest(String url, String requestBody)
+  {
+    HttpPost post = new HttpPost(url);
+    post.setHeader("Content-Type", "application/json");
+    post.setEntity(new StringEntity(requestBody, ContentType.APPLICATION_JSON));
+    return post;
+  }
+
+  private String executeTokenRequest(HttpPost post, long timeoutMs)
+  {
+    long startTime = currentTimeMillis();
+    try
+    {
+      String response = EmbeddableWidgetHttpUtils.execute(post, timeoutMs);
+      if (response != null)
+      {
+        tokenLatencyTracker.record(currentTimeMillis() - startTime);
+      }
+      return response;
+    } catch (ParseException | IOException e)
+    {
+      if (!post.isAborted())
+      {
+        LOGGER.error("Exception in http call while fetching access-token", e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Sends the token request and, if it has not answered within the configured latency percentile,
+   * an identical second one. The first non-empty response wins and the other request is aborted.
+   */
+  String executeHedgedTokenRequest(ExecutorService executor, String url, String requestBody, long timeoutMs)
+  {
+    long deadline = currentTimeMillis() + timeoutMs;
+    CompletionService<String> completionService = new ExecutorCompletionService<>(executor);
+    HttpPost primaryRequest = createTokenRequest(url, requestBody);
+    HttpPost hedgeRequest = null;
+    Future<String> hedgeFuture = null;
+    int pending = 1;
+    completionService.submit(() -> executeTokenRequest(primaryRequest, timeoutMs));
+    addHedgeCredit();
+
+    try
+    {
+      Future<String> completed = null;
+      long hedgeDelay = tokenLatencyTracker.getPercentile(hedgePercentile);
+      if (hedgeDelay >= 0 && hedgeDelay < timeoutMs)
+      {
+        completed = completionService.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+        if (completed == null && acquireHedgeCredit())
+        {
+          HttpPost request = createTokenRequest(url, requestBody);
+          long hedgeTimeout = deadline - currentTimeMillis();
+          hedgeRequest = request;
+          hedgeFuture = completionService.submit(() -> executeTokenRequest(request, hedgeTimeout));
+          pending++;
+          EmbeddableWidgetMetrics.increment("token.hedge.sent");
+          LOGGER.debug("EmbeddableWidgetServiceImpl executeHedgedTokenRequest:: Sent hedged request after {} ms", hedgeDelay);
+        }
+      }
+
+      while (pending > 0)
+      {
+        if (completed == null)
+        {
+          completed = completionService.poll(Math.max(0, deadline - currentTimeMillis()), TimeUnit.MILLISECONDS);
+          if (completed == null)
+          {
+            break;
+          }
+        }
+        pending--;
+        String response = completed.get();
+        if (response != null)
+        {
+          if (completed == hedgeFuture)
+          {
+            EmbeddableWidgetMetrics.increment("token.hedge.won");
+          }
+          return response;
+        }
+        completed = null;
+      }
+    } catch (InterruptedException ie)
+    {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException ee)
+    {
+      LOGGER.error("Exception in hedged http call while fetching access-token", ee);
+    } finally
+    {
+      primaryRequest.abort();
+      if (hedgeRequest != null)
+      {
+        hedgeRequest.abort();
+      }
+    }
+    return null;
+  }
+
+  private synchronized void addHedgeCredit()
+  {
+    hedgeCredits = Math.min(HEDGE_MAX_CREDITS, hedgeCredits + hedgeMaxRatio);
+  }
+
+  private synchronized boolean acquireHedgeCredit()
+  {
+    if (hedgeCredits < 1)
+    {
+      EmbeddableWidgetMetrics.increment("token.hedge.throttled");
+      return false;
+    }
+    hedgeCredits--;
+    return true;
+  }
+
   private Pair<String, Long> getTokenAndExpiry(String accessTokenResponse)
   {
     if (accessTokenResponse != null && !accessTokenResponse.isEmpty())
@@ -25,4 +25,10 @@ public interface EmbeddableWidgetUserService
 
   public boolean setAccessTokenWithExpiry(SlingHttpServletRequest request, Page currentPage, String accessToken, Long expiryMilliSecond,
       String email);
+
+  public String getUserEmail(String userId);
+
+  public Pair<String, Long> getAccessTokenWithExpiry(String userId, Page currentPage);
+
+  public boolean setAccessTokenWithExpiry(String userId, Page currentPage, String accessToken, Long expiryMilliSecond);
 }
@@ -14,49 +14,91 @@ package com.adobe.prime.core.services;
 import static java.lang.System.currentTimeMillis;
 
 import java.util.Collections;
+import java.util.Dictionary;
 import java.util.Map;
 
-import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.Service;
+import org.apache.jackrabbit.api.security.user.Authorizable;
 import org.apache.jackrabbit.api.security.user.User;
 import org.apache.jackrabbit.api.security.user.UserManager;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.LoginException;
-import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.commons.osgi.PropertiesUtil;
 import org.apache.sling.jcr.base.util.AccessControlUtil;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.utils.EmbeddableWidgetMetrics;
+import com.adobe.prime.core.utils.RateLimiter;
 import com.day.cq.wcm.api.Page;
 
-@Component(metatype = false, immediate = true)
+@Component(metatype = true, immediate = true, label = "Adobe Learning Manager Embeddable Widget User Service",
+    description = "Adobe Learning Manager Embeddable Widget User Service")
 @Service(value = EmbeddableWidgetUserService.class)
 public class EmbeddableWidgetUserServiceImpl implements EmbeddableWidgetUserService
 {
 
+  private static final String DEFAULT_TOKEN_STORE_TARGET = "(" + TokenStore.STORE_TYPE + "=" + JcrTokenStoreImpl.STORE_TYPE_JCR + ")";
+
+  @Property(label = "Token Store", description = "Filter selecting the token store, e.g. (token.store=jcr) or (token.store=mmap).",
+      value = DEFAULT_TOKEN_STORE_TARGET)
+  private static final String TOKEN_STORE_TARGET = "tokenStore.target";
+
+  @Reference(target = DEFAULT_TOKEN_STORE_TARGET)
+  private transient TokenStore tokenStore;
+
+  @Reference(cardinality = ReferenceCardinality.OPTIONAL_UNARY, policy = ReferencePolicy.DYNAMIC)
+  private volatile SharedTokenCache sharedTokenCache;
+
   @Reference
   ResourceResolverFactory resourceResolverFactory;
 
   @Reference
   private transient EmbeddableWidgetConfigurationService widgetConfigService;
 
+  private static final long DEFAULT_MIGRATION_WINDOW_MS = 21600000; // 6 Hr
+  private static final double DEFAULT_MIGRATION_RATE = 5;
+
+  @Property(label = "Rotation Migration Window (ms)",
+      description = "After a refresh token rotation, learners move to tokens of the new refresh token spread over this window. Until then their previous token is served.",
+      longValue = DEFAULT_MIGRATION_WINDOW_MS)
+  private static final String MIGRATION_WINDOW = "rotation.migration.window.ms";
+
+  @Property(label = "Rotation Migration Rate", description = "Maximum number of learners per second moved to a token of the new refresh token.",
+      doubleValue = DEFAULT_MIGRATION_RATE)
+  private static final String MIGRATION_RATE = "rotation.migration.rate";
+
+  private long migrationWindow = DEFAULT_MIGRATION_WINDOW_MS;
+  private RateLimiter migrationLimiter = new RateLimiter(DEFAULT_MIGRATION_RATE, DEFAULT_MIGRATION_RATE);
+
   private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddableWidgetUserServiceImpl.class);
   private static final String SUBSERVICE_NAME = "writeService";
   private static final Map<String, Object> SERVICE_PARAMS =
       Collections.<String, Object>singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE_NAME);
 
+  protected void activate(ComponentContext componentContext)
+  {
+    Dictionary<String, Object> properties = componentContext.getProperties();
+    migrationWindow = Math.max(1, PropertiesUtil.toLong(properties.get(MIGRATION_WINDOW), DEFAULT_MIGRATION_WINDOW_MS));
+    double migrationRate = PropertiesUtil.toDouble(properties.get(MIGRATION_RATE), DEFAULT_MIGRATION_RATE);
+    migrationLimiter = new RateLimiter(migrationRate, migrationRate);
+  }
+
   @Override
   public String getUserEmail(SlingHttpServletRequest request)
   {
@@ -81,103 +123,150 @@ public class EmbeddableWidgetUserServiceImpl implements EmbeddableWidgetUserServ
   }
 
   @Override
-  public Pair<String, Long> getAccessTokenWithExpiry(SlingHttpServletRequest request, Page currentPage, String email)
+  public String getUserEmail(String userId)
   {
     ResourceResolver adminResolver = null;
-    String accessToken = "";
-    long expiryMilliSecond = 0L;
-
     try
     {
       adminResolver = resourceResolverFactory.getServiceResourceResolver(SERVICE_PARAMS);
-      Resource pageRsc = adminResolver.getResource(currentPage.getPath());
-      LOGGER.trace("EmbeddableWidgetUserServiceImpl getAccessTokenOfUser:: CurrentPage {} PageRsc {}", currentPage.getPath(), pageRsc.getPath());
-      Map<String, Object> adminConfigs = widgetConfigService.getAvailaleAdminConfiguration(pageRsc);
-
-      if (adminConfigs.isEmpty())
+      UserManager userManager = AccessControlUtil.getUserManager(adminResolver.adaptTo(Session.class));
+      Authorizable authorizable = userManager.getAuthorizable(userId);
+      if (authorizable != null && authorizable.getProperty(Constants.LearnerConfigurations.USER_EMAIL_PATH) != null)
       {
-        LOGGER.error("EmbeddableWidgetServiceImpl getAccessTokenWithExpiry:: Got empty admin configs.");
-        return null;
+        return authorizable.getProperty(Constants.LearnerConfigurations.USER_EMAIL_PATH)[0].toString();
       }
+    } catch (RepositoryException | LoginException exc)
+    {
+      LOGGER.error("EmbeddableWidgetUserServiceImpl getUserEmail:: Exception in getting email of user {}.", userId, exc);
+    } finally
+    {
+      if (adminResolver != null)
+      {
+        adminResolver.close();
+      }
+    }
+    return "";
+  }
 
-      String refreshToken = adminConfigs.get(Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_REFRESH_TOKEN).toString();
-
-      Session session = request.getResourceResolver().adaptTo(Session.class);
-      UserManager userManager = AccessControlUtil.getUserManager(session);
-      User currentUser = (User) userManager.getAuthorizable(session.getUserID());
-      LOGGER.trace("EmbeddableWidgetServiceImpl getAccessTokenWithExpiry:: currentUser {} Path {} userId {}", currentUser, currentUser.getPath(),
-          session.getUserID());
-
-      final String tokenSpecificPath = "_" + DigestUtils.sha512Hex(refreshToken);
+  @Override
+  public Pair<String, Long> getAccessTokenWithExpiry(SlingHttpServletRequest request, Page currentPage, String email)
+  {
+    return getAccessTokenWithExpiry(getUserId(request), currentPage);
+  }
 
-      accessToken = currentUser.getProperty(Constants.LearnerConfigurations.USER_ACCESS_TOKEN_PATH + tokenSpecificPath) != null
-          ? currentUser.getProperty(Constants.LearnerConfigurations.USER_ACCESS_TOKEN_PATH + tokenSpecificPath)[0].toString()
-          : "";
+  @Override
+  public Pair<String, Long> getAccessTokenWithExpiry(String userId, Page currentPage)
+  {
+    Map<String, Object> adminConfigs = getAdminConfigs(currentPage);
+    String tokenKey = getTokenKey(adminConfigs);
+    if (tokenKey == null)
+    {
+      return null;
+    }
 
-      expiryMilliSecond = currentUser.getProperty(Constants.LearnerConfigurations.USER_ACCESS_TOKEN_EXPIRY_PATH + tokenSpecificPath) != null
-          ? Long.valueOf(currentUser.getProperty(Constants.LearnerConfigurations.USER_ACCESS_TOKEN_EXPIRY_PATH + tokenSpecificPath)[0].toString())
-          : 0L;
+    Pair<String, Long> tokenWithExpiry = tokenStore.getToken(userId, tokenKey);
+    LOGGER.trace("EmbeddableWidgetUserServiceImpl getAccessTokenWithExpiry:: userId {} found token {}", userId, tokenWithExpiry != null);
 
-      long currentTime = currentTimeMillis();
+    if (isValid(tokenWithExpiry))
+    {
+      return tokenWithExpiry;
+    }
 
-      if (accessToken == null || accessToken.isEmpty() || (currentTime > expiryMilliSecond))
+    SharedTokenCache sharedCache = sharedTokenCache;
+    if (sharedCache != null)
+    {
+      tokenWithExpiry = sharedCache.get(userId, tokenKey);
+      if (isValid(tokenWithExpiry))
       {
-        return null;
+        EmbeddableWidgetMetrics.increment("tokencache.shared.hits");
+        // keep later renders on this instance local until the shared token expires
+        if (!tokenStore.putToken(userId, tokenKey, tokenWithExpiry.getLeft(), tokenWithExpiry.getRight()))
+        {
+          LOGGER.debug("EmbeddableWidgetUserServiceImpl getAccessTokenWithExpiry:: Unable to store shared token of user {} locally", userId);
+        }
+        return tokenWithExpiry;
       }
-    } catch (RepositoryException | LoginException exc)
+      EmbeddableWidgetMetrics.increment("tokencache.shared.misses");
+    }
+    return getPreviousToken(userId, adminConfigs);
+  }
+
+  @Override
+  public boolean setAccessTokenWithExpiry(SlingHttpServletRequest request, Page currentPage, String accessToken, Long expiryMilliSecond, String email)
+  {
+    return setAccessTokenWithExpiry(getUserId(request), currentPage, accessToken, expiryMilliSecond);
+  }
+
+  @Override
+  public boolean setAccessTokenWithExpiry(String userId, Page currentPage, String accessToken, Long expiryMilliSecond)
+  {
+    String tokenKey = getTokenKey(getAdminConfigs(currentPage));
+    if (tokenKey == null)
     {
-      LOGGER.error("EmbeddableWidgetServiceImpl getAccessTokenWithExpiry:: Exception in fetching access token.", exc);
-    } finally
+      return false;
+    }
+
+    SharedTokenCache sharedCache = sharedTokenCache;
+    if (sharedCache != null)
+    {
+      sharedCache.put(userId, tokenKey, accessToken, expiryMilliSecond);
+    }
+    if (tokenStore.putToken(userId, tokenKey, accessToken, expiryMilliSecond))
     {
-    	if (adminResolver != null)
-    	{
-    		adminResolver.close();
-    	}
+      return true;
     }
+    LOGGER.error("EmbeddableWidgetServiceImpl setAccessTokenWithExpiry:: Unable to set access token of user");
+    return false;
+  }
 
-    return new ImmutablePair<>(accessToken, expiryMilliSecond);
+  /**
+   * After a refresh token rotation, serves the learner's token of the previous refresh token until
+   * it expires or until the learner's turn to migrate. Turns are spread evenly over the migration
+   * window by user ID and are additionally capped by the migration rate.
+   */
+  private Pair<String, Long> getPreviousToken(String userId, Map<String, Object> adminConfigs)
+  {
+    Object previousTokenKey = adminConfigs.get(Constants.AdminConfigurations.ADMIN_CONFIG_PREVIOUS_TOKEN_KEY);
+    Object rotatedAt = adminConfigs.get(Constants.AdminConfigurations.ADMIN_CONFIG_TOKEN_ROTATED_AT);
+    if (previousTokenKey == null || rotatedAt == null || userId == null)
+    {
+      return null;
+    }
+    long elapsed = currentTimeMillis() - PropertiesUtil.toLong(rotatedAt, 0L);
+    if (elapsed >= migrationWindow)
+    {
+      return null;
+    }
+
+    Pair<String, Long> previousToken = tokenStore.getToken(userId, previousTokenKey.toString());
+    if (!isValid(previousToken))
+    {
+      return null;
+    }
+    if (Math.floorMod((long) userId.hashCode(), migrationWindow) < elapsed)
+    {
+      if (migrationLimiter.tryAcquire())
+      {
+        EmbeddableWidgetMetrics.increment("tokenrotation.migrated");
+        return null;
+      }
+      EmbeddableWidgetMetrics.increment("tokenrotation.deferred");
+    }
+    EmbeddableWidgetMetrics.increment("tokenrotation.served.previous");
+    return previousToken;
   }
 
-  @Override
-  public boolean setAccessTokenWithExpiry(SlingHttpServletRequest request, Page currentPage, String accessToken, Long expiryMilliSecond, String email)
+  private Map<String, Object> getAdminConfigs(Page currentPage)
   {
     ResourceResolver adminResolver = null;
-
     try
     {
       adminResolver = resourceResolverFactory.getServiceResourceResolver(SERVICE_PARAMS);
-      
       Resource pageRsc = adminResolver.getResource(currentPage.getPath());
-      Map<String, Object> adminConfigs = widgetConfigService.getAvailaleAdminConfiguration(pageRsc);
-      if (adminConfigs.isEmpty())
-      {
-        LOGGER.error("EmbeddableWidgetServiceImpl setAccessTokenWithExpiry:: Got empty admin configs.");
-        return false;
-      }
-
-      final String refreshToken =
-          adminConfigs.get(Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_REFRESH_TOKEN).toString();
-      final String tokenSpecificPath = "_" + DigestUtils.sha512Hex(refreshToken);
-          
-      Session session = request.getResourceResolver().adaptTo(Session.class);
-      UserManager userManager = AccessControlUtil.getUserManager(session);
-      User currentUser = (User) userManager.getAuthorizable(session.getUserID());
-      String userNodeProfilePath = currentUser.getPath() + "/profile";
-      Resource userNodeRsc = adminResolver.getResource(userNodeProfilePath);
-      if (userNodeRsc != null)
-      {
-        Node userProfileNode = userNodeRsc.adaptTo(Node.class);
-        if (userProfileNode != null)
-        {
-          userProfileNode.setProperty((Constants.LearnerConfigurations.USER_ACCESS_TOKEN_STR + tokenSpecificPath), accessToken);
-          userProfileNode.setProperty((Constants.LearnerConfigurations.EXPIRES_IN_STR + tokenSpecificPath), expiryMilliSecond);
-          adminResolver.commit();
-          return true;
-        }
-      }
-    } catch (RepositoryException | LoginException | PersistenceException exc)
+      return widgetConfigService.getAvailaleAdminConfiguration(pageRsc);
+    } catch (LoginException exc)
     {
-      LOGGER.error("EmbeddableWidgetServiceImpl setAccessTokenWithExpiry:: Exception in setting access token of user", exc);
+      LOGGER.error("EmbeddableWidgetUserServiceImpl getAdminConfigs:: Exception in resolving admin configs.", exc);
     } finally
     {
       if (adminResolver != null)
@@ -185,8 +274,35 @@ public class EmbeddableWidgetUserServiceImpl implements EmbeddableWidgetUserServ
         adminResolver.close();
       }
     }
-    LOGGER.error("EmbeddableWidgetServiceImpl setAccessTokenWithExpiry:: Unable to set access token of user");
-    return false;
+    return Collections.emptyMap();
+  }
+
+  private String getTokenKey(Map<String, Object> adminConfigs)
+  {
+    if (adminConfigs.isEmpty())
+    {
+      LOGGER.error("EmbeddableWidgetUserServiceImpl getTokenKey:: Got empty admin configs.");
+      return null;
+    }
+    Object tokenKey = adminConfigs.get(Constants.AdminConfigurations.ADMIN_CONFIG_TOKEN_KEY);
+    if (tokenKey != null)
+    {
+      return tokenKey.toString();
+    }
+    String refreshToken = adminConfigs.get(Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_REFRESH_TOKEN).toString();
+    return DigestUtils.sha512Hex(refreshToken);
+  }
+
+  private boolean isValid(Pair<String, Long> tokenWithExpiry)
+  {
+    return tokenWithExpiry != null && tokenWithExpiry.getLeft() != null && !tokenWithExpiry.getLeft().isEmpty() && tokenWithExpiry.getRight() != null
+        && currentTimeMillis() <= tokenWithExpiry.getRight();
+  }
+
+  private String getUserId(SlingHttpServletRequest request)
+  {
+    Session session = request.getResourceResolver().adaptTo(Session.class);
+    return session != null ? session.getUserID() : request.getResourceResolver().getUserID();
   }
 
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.prime.core.services;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.jackrabbit.api.security.user.User;
+import org.apache.jackrabbit.api.security.user.UserManager;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.jcr.base.util.AccessControlUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.prime.core.Constants;
+
+@Component(metatype = false, immediate = true)
+@Service(value = TokenStore.class)
+@Properties({@Property(name = TokenStore.STORE_TYPE, value = JcrTokenStoreImpl.STORE_TYPE_JCR, propertyPrivate = true)})
+public class JcrTokenStoreImpl implements TokenStore
+{
+
+  public static final String STORE_TYPE_JCR = "jcr";
+
+  @Reference
+  ResourceResolverFactory resourceResolverFactory;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JcrTokenStoreImpl.class);
+  private static final String SUBSERVICE_NAME = "writeService";
+  private static final Map<String, Object> SERVICE_PARAMS =
+      Collections.<String, Object>singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE_NAME);
+
+  @Override
+  public Pair<String, Long> getToken(String userId, String tokenKey)
+  {
+    ResourceResolver adminResolver = null;
+    try
+    {
+      adminResolver = resourceResolverFactory.getServiceResourceResolver(SERVICE_PARAMS);
+      User user = getUser(adminResolver, userId);
+      if (user == null)
+      {
+        return null;
+      }
+
+      final String tokenSpecificPath = "_" + tokenKey;
+      Value[] accessToken = user.getProperty(Constants.LearnerConfigurations.USER_ACCESS_TOKEN_PATH + tokenSpecificPath);
+      Value[] expiry = user.getProperty(Constants.LearnerConfigurations.USER_ACCESS_TOKEN_EXPIRY_PATH + tokenSpecificPath);
+      if (accessToken == null || accessToken.length == 0)
+      {
+        return null;
+      }
+      long expiryMilliSecond = expiry != null && expiry.length > 0 ? Long.valueOf(expiry[0].toString()) : 0L;
+      return new ImmutablePair<>(accessToken[0].toString(), expiryMilliSecond);
+    } catch (RepositoryException | LoginException exc)
+    {
+      LOGGER.error("JcrTokenStoreImpl getToken:: Exception in reading access token of user {}", userId, exc);
+    } finally
+    {
+      if (adminResolver != null)
+      {
+        adminResolver.close();
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public boolean putToken(String userId, String tokenKey, String accessToken, long expiryMilliSecond)
+  {
+    ResourceResolver adminResolver = null;
+    try
+    {
+      adminResolver = resourceResolverFactory.getServiceResourceResolver(SERVICE_PARAMS);
+      User user = getUser(adminResolver, userId);
+      if (user == null)
+      {
+        return false;
+      }
+
+      final String tokenSpecificPath = "_" + tokenKey;
+      Resource userNodeRsc = adminResolver.getResource(user.getPath() + "/profile");
+      if (userNodeRsc != null)
+      {
+        Node userProfileNode = userNodeRsc.adaptTo(Node.class);
+        if (userProfileNode != null)
+        {
+          userProfileNode.setProperty((Constants.LearnerConfigurations.USER_ACCESS_TOKEN_STR + tokenSpecificPath), accessToken);
+          userProfileNode.setProperty((Constants.LearnerConfigurations.EXPIRES_IN_STR + tokenSpecificPath), expiryMilliSecond);
+          adminResolver.commit();
+          return true;
+        }
+      }
+    } catch (RepositoryException | LoginException | PersistenceException exc)
+    {
+      LOGGER.error("JcrTokenStoreImpl putToken:: Exception in setting access token of user {}", userId, exc);
+    } finally
+    {
+      if (adminResolver != null)
+      {
+        adminResolver.close();
+      }
+    }
+    return false;
+  }
+
+  private User getUser(ResourceResolver adminResolver, String userId) throws RepositoryException
+  {
+    Session session = adminResolver.adaptTo(Session.class);
+    UserManager userManager = AccessControlUtil.getUserManager(session);
+    User user = userId != null ? (User) userManager.getAuthorizable(userId) : null;
+    if (user == null)
+    {
+      LOGGER.error("JcrTokenStoreImpl getUser:: No user found for {}", userId);
+    }
+    return user;
+  }
+}
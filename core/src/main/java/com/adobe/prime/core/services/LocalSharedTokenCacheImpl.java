@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.prime.core.services;
+
+import static java.lang.System.currentTimeMillis;
+
+import java.util.Dictionary;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.osgi.service.component.ComponentContext;
+
+@Component(metatype = true, immediate = true, policy = ConfigurationPolicy.REQUIRE, label = "Adobe Learning Manager Local Shared Token Cache",
+    description = "In-process shared token cache. Stand-in for a remote cache in tests and single-instance setups.")
+@Service(value = SharedTokenCache.class)
+public class LocalSharedTokenCacheImpl implements SharedTokenCache
+{
+
+  private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+  @Property(label = "Maximum Entries", description = "Number of tokens kept. The least recently used are dropped first.",
+      intValue = DEFAULT_MAX_ENTRIES)
+  private static final String MAX_ENTRIES = "cache.max.entries";
+
+  private Map<String, Pair<String, Long>> tokens = createTokenMap(DEFAULT_MAX_ENTRIES);
+
+  protected void activate(ComponentContext componentContext)
+  {
+    Dictionary<String, Object> properties = componentContext.getProperties();
+    tokens = createTokenMap(PropertiesUtil.toInteger(properties.get(MAX_ENTRIES), DEFAULT_MAX_ENTRIES));
+  }
+
+  @Override
+  public synchronized Pair<String, Long> get(String userId, String tokenKey)
+  {
+    String key = userId + "|" + tokenKey;
+    Pair<String, Long> token = tokens.get(key);
+    if (token != null && currentTimeMillis() > token.getRight())
+    {
+      tokens.remove(key);
+      return null;
+    }
+    return token;
+  }
+
+  @Override
+  public synchronized void put(String userId, String tokenKey, String accessToken, long expiryMilliSecond)
+  {
+    tokens.put(userId + "|" + tokenKey, new ImmutablePair<>(accessToken, expiryMilliSecond));
+  }
+
+  @Override
+  public boolean isRemote()
+  {
+    return false;
+  }
+
+  public synchronized int size()
+  {
+    return tokens.size();
+  }
+
+  private static Map<String, Pair<String, Long>> createTokenMap(final int maxEntries)
+  {
+    return new LinkedHashMap<String, Pair<String, Long>>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Pair<String, Long>> eldest)
+      {
+        return size() > maxEntries;
+      }
+    };
+  }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.prime.core.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.osgi.service.component.ComponentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.prime.core.utils.EmbeddableWidgetMetrics;
+
+/**
+ * Token store backed by a memory-mapped file of fixed-size records. Each record holds a 64-bit
+ * probe key and the full SHA-256 digest of user ID and token key, the expiry, the token bytes and
+ * a CRC32 over all of them. Records are located by open addressing with a bounded probe sequence;
+ * when all probed slots are taken, the one expiring first is overwritten. A lookup only returns a
+ * record whose digest matches the requested user and token key and whose checksum is intact, so
+ * neither a foreign record nor one torn by a crash during a write is ever served. The file keeps
+ * its contents across restarts and its size is fixed by the configured slot count, independent of
+ * the number of learners.
+ * <p>
+ * The file holds the live access tokens of learners in plain text. Unlike the JCR store it is not
+ * covered by repository ACLs, so it is kept under {@code sling.home} and created readable and
+ * writable by its owner only.
+ */
+@Component(metatype = true, immediate = true, policy = ConfigurationPolicy.REQUIRE, label = "Adobe Learning Manager Memory-Mapped Token Store",
+    description = "Stores learner access tokens in a memory-mapped file instead of user profiles. The file holds live learner credentials in plain text and is only protected by its file system permissions.")
+@Service(value = TokenStore.class)
+@Properties({@Property(name = TokenStore.STORE_TYPE, value = MappedFileTokenStoreImpl.STORE_TYPE_MMAP, propertyPrivate = true)})
+public class MappedFileTokenStoreImpl implements TokenStore
+{
+
+  public static final String STORE_TYPE_MMAP = "mmap";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MappedFileTokenStoreImpl.class);
+
+  private static final int MAGIC = 0x43505453;
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 16;
+  private static final int RECORD_SIZE = 512;
+  private static final int DIGEST_OFFSET = 8;
+  private static final int DIGEST_LENGTH = 32;
+  private static final int EXPIRY_OFFSET = DIGEST_OFFSET + DIGEST_LENGTH;
+  private static final int LENGTH_OFFSET = EXPIRY_OFFSET + 8;
+  private static final int CHECKSUM_OFFSET = LENGTH_OFFSET + 2;
+  private static final int TOKEN_OFFSET = CHECKSUM_OFFSET + 4;
+  private static final int MAX_TOKEN_BYTES = RECORD_SIZE - TOKEN_OFFSET;
+  private static final int MAX_PROBES = 16;
+  private static final int MAX_SLOTS = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+  private static final long EMPTY_KEY = 0L;
+
+  private static final String DEFAULT_FILE = "cpwidget/tokens.dat";
+  private static final int DEFAULT_SLOTS = 65536;
+  private static final String SLING_HOME = "sling.home";
+  private static final Set<PosixFilePermission> OWNER_ONLY_FILE = PosixFilePermissions.fromString("rw-------");
+  private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+
+  @Property(label = "Token File",
+      description = "Path of the token file, which holds live learner credentials. Relative paths are resolved against sling.home. The file is created readable by its owner only.",
+      value = DEFAULT_FILE)
+  private static final String TOKEN_FILE = "token.store.file";
+
+  @Property(label = "Slots", description = "Number of token records in the file. Each record takes " + RECORD_SIZE + " bytes.",
+      intValue = DEFAULT_SLOTS)
+  private static final String TOKEN_SLOTS = "token.store.slots";
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private int slots;
+  private int usedSlots;
+
+  protected void activate(ComponentContext componentContext) throws IOException
+  {
+    Dictionary<String, Object> properties = componentContext.getProperties();
+    File file = resolveFile(componentContext, PropertiesUtil.toString(properties.get(TOKEN_FILE), DEFAULT_FILE));
+    slots = Math.min(MAX_SLOTS, Math.max(MAX_PROBES, PropertiesUtil.toInteger(properties.get(TOKEN_SLOTS), DEFAULT_SLOTS)));
+    long size = HEADER_SIZE + (long) slots * RECORD_SIZE;
+
+    lock.writeLock().lock();
+    try
+    {
+      channel = openOwnerOnly(file.toPath());
+      boolean compatible = channel.size() == size && hasValidHeader();
+      if (!compatible)
+      {
+        channel.truncate(0);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      if (compatible)
+      {
+        usedSlots = countUsedSlots();
+      } else
+      {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, slots);
+        buffer.putInt(12, RECORD_SIZE);
+        usedSlots = 0;
+      }
+      LOGGER.info("MappedFileTokenStoreImpl activate:: Opened {} with {} slots, {} in use. Reused existing file {}", file.getAbsolutePath(), slots,
+          usedSlots, compatible);
+    } finally
+    {
+      lock.writeLock().unlock();
+    }
+    EmbeddableWidgetMetrics.registerGauge("tokenstore.mmap.slots", () -> slots);
+    EmbeddableWidgetMetrics.registerGauge("tokenstore.mmap.used", this::getUsedSlots);
+  }
+
+  protected void deactivate()
+  {
+    EmbeddableWidgetMetrics.unregisterGauge("tokenstore.mmap.slots");
+    EmbeddableWidgetMetrics.unregisterGauge("tokenstore.mmap.used");
+    lock.writeLock().lock();
+    try
+    {
+      if (buffer != null)
+      {
+        buffer.force();
+        buffer = null;
+      }
+      if (channel != null)
+      {
+        channel.close();
+        channel = null;
+      }
+    } catch (IOException ioe)
+    {
+      LOGGER.error("MappedFileTokenStoreImpl deactivate:: Exception in closing token file", ioe);
+    } finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Pair<String, Long> getToken(String userId, String tokenKey)
+  {
+    byte[] digest = toDigest(userId, tokenKey);
+    long key = toKey(digest);
+    lock.readLock().lock();
+    try
+    {
+      if (buffer == null)
+      {
+        return null;
+      }
+      int start = startSlot(key);
+      for (int probe = 0; probe < MAX_PROBES; probe++)
+      {
+        int offset = offset((start + probe) % slots);
+        long slotKey = buffer.getLong(offset);
+        if (slotKey == EMPTY_KEY)
+        {
+          return null;
+        }
+        if (slotKey == key && matchesDigest(offset, digest))
+        {
+          int length = buffer.getShort(offset + LENGTH_OFFSET);
+          if (length < 0 || length > MAX_TOKEN_BYTES || buffer.getInt(offset + CHECKSUM_OFFSET) != checksum(offset, length))
+          {
+            EmbeddableWidgetMetrics.increment("tokenstore.mmap.corrupt");
+            LOGGER.warn("MappedFileTokenStoreImpl getToken:: Discarding damaged token record of user {}", userId);
+            return null;
+          }
+          byte[] token = new byte[length];
+          ByteBuffer view = buffer.duplicate();
+          view.position(offset + TOKEN_OFFSET);
+          view.get(token);
+          return new ImmutablePair<>(new String(token, StandardCharsets.UTF_8), buffer.getLong(offset + EXPIRY_OFFSET));
+        }
+      }
+      return null;
+    } finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean putToken(String userId, String tokenKey, String accessToken, long expiryMilliSecond)
+  {
+    byte[] token = accessToken.getBytes(StandardCharsets.UTF_8);
+    if (token.length > MAX_TOKEN_BYTES)
+    {
+      LOGGER.error("MappedFileTokenStoreImpl putToken:: Token of {} bytes exceeds the record size. Not storing token for user {}", token.length,
+          userId);
+      return false;
+    }
+
+    byte[] digest = toDigest(userId, tokenKey);
+    long key = toKey(digest);
+    lock.writeLock().lock();
+    try
+    {
+      if (buffer == null)
+      {
+        return false;
+      }
+      int start = startSlot(key);
+      int target = -1;
+      int earliestExpiring = start;
+      long earliestExpiry = Long.MAX_VALUE;
+      for (int probe = 0; probe < MAX_PROBES; probe++)
+      {
+        int slot = (start + probe) % slots;
+        long slotKey = buffer.getLong(offset(slot));
+        if (slotKey == EMPTY_KEY || (slotKey == key && matchesDigest(offset(slot), digest)))
+        {
+          target = slot;
+          break;
+        }
+        long expiry = buffer.getLong(offset(slot) + EXPIRY_OFFSET);
+        if (expiry < earliestExpiry)
+        {
+          earliestExpiry = expiry;
+          earliestExpiring = slot;
+        }
+      }
+      if (target < 0)
+      {
+        target = earliestExpiring;
+        EmbeddableWidgetMetrics.increment("tokenstore.mmap.evictions");
+      }
+
+      int offset = offset(target);
+      if (buffer.getLong(offset) == EMPTY_KEY)
+      {
+        usedSlots++;
+      }
+      ByteBuffer view = buffer.duplicate();
+      view.position(offset + DIGEST_OFFSET);
+      view.put(digest);
+      buffer.putLong(offset + EXPIRY_OFFSET, expiryMilliSecond);
+      buffer.putShort(offset + LENGTH_OFFSET, (short) token.length);
+      view.position(offset + TOKEN_OFFSET);
+      view.put(token);
+      buffer.putInt(offset + CHECKSUM_OFFSET, checksum(offset, token.length));
+      // the probe key goes last, so a record is only found once it is complete
+      buffer.putLong(offset, key);
+      return true;
+    } finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public int getUsedSlots()
+  {
+    lock.readLock().lock();
+    try
+    {
+      return usedSlots;
+    } finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Token file of the configured path, relative paths being resolved against {@code sling.home}.
+   */
+  private static File resolveFile(ComponentContext componentContext, String path) throws IOException
+  {
+    File file = new File(path);
+    if (file.isAbsolute())
+    {
+      return file;
+    }
+    String slingHome = componentContext.getBundleContext() != null ? componentContext.getBundleContext().getProperty(SLING_HOME) : null;
+    if (slingHome == null || slingHome.isEmpty())
+    {
+      throw new IOException("Unable to resolve token file " + path + " without " + SLING_HOME);
+    }
+    return new File(slingHome, path);
+  }
+
+  /**
+   * Opens the token file, creating it and its directory readable by the owner only. Existing files
+   * are restricted to the owner as well.
+   */
+  private static FileChannel openOwnerOnly(Path path) throws IOException
+  {
+    boolean posix = path.getFileSystem().supportedFileAttributeViews().contains("posix");
+    Path parent = path.toAbsolutePath().getParent();
+    if (parent != null && !Files.exists(parent))
+    {
+      if (posix)
+      {
+        Files.createDirectories(parent, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIRECTORY));
+      } else
+      {
+        Files.createDirectories(parent);
+      }
+    }
+    Set<StandardOpenOption> options = EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    if (!posix)
+    {
+      LOGGER.warn("MappedFileTokenStoreImpl openOwnerOnly:: File system of {} has no POSIX permissions. Restrict access to it manually.", path);
+      return FileChannel.open(path, options);
+    }
+    FileAttribute<Set<PosixFilePermission>> ownerOnly = PosixFilePermissions.asFileAttribute(OWNER_ONLY_FILE);
+    FileChannel fileChannel = FileChannel.open(path, options, ownerOnly);
+    Files.setPosixFilePermissions(path, OWNER_ONLY_FILE);
+    return fileChannel;
+  }
+
+  private boolean hasValidHeader() throws IOException
+  {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    channel.read(header, 0);
+    return header.getInt(0) == MAGIC && header.getInt(4) == VERSION && header.getInt(8) == slots && header.getInt(12) == RECORD_SIZE;
+  }
+
+  private int countUsedSlots()
+  {
+    int used = 0;
+    for (int slot = 0; slot < slots; slot++)
+    {
+      if (buffer.getLong(offset(slot)) != EMPTY_KEY)
+      {
+        used++;
+      }
+    }
+    return used;
+  }
+
+  private int startSlot(long key)
+  {
+    return (int) ((key & Long.MAX_VALUE) % slots);
+  }
+
+  private int offset(int slot)
+  {
+    return HEADER_SIZE + slot * RECORD_SIZE;
+  }
+
+  private boolean matchesDigest(int offset, byte[] digest)
+  {
+    byte[] stored = new byte[DIGEST_LENGTH];
+    ByteBuffer view = buffer.duplicate();
+    view.position(offset + DIGEST_OFFSET);
+    view.get(stored);
+    return Arrays.equals(stored, digest);
+  }
+
+  /**
+   * CRC32 over digest, expiry, length and token bytes of the record.
+   */
+  private int checksum(int offset, int tokenLength)
+  {
+    CRC32 crc = new CRC32();
+    ByteBuffer view = buffer.duplicate();
+    view.limit(offset + CHECKSUM_OFFSET);
+    view.position(offset + DIGEST_OFFSET);
+    crc.update(view);
+    view.limit(offset + TOKEN_OFFSET + tokenLength);
+    view.position(offset + TOKEN_OFFSET);
+    crc.update(view);
+    return (int) crc.getValue();
+  }
+
+  private static byte[] toDigest(String userId, String tokenKey)
+  {
+    return DigestUtils.sha256(userId + "|" + tokenKey);
+  }
+
+  private static long toKey(byte[] digest)
+  {
+    long key = ByteBuffer.wrap(digest).getLong();
+    return key != EMPTY_KEY ? key : 1L;
+  }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.prime.core.services;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Token cache shared by all publish instances of a farm, so that a token acquired on one instance
+ * is reused by the others. Implementations front a remote store; {@link LocalSharedTokenCacheImpl}
+ * is an in-process stand-in for tests and single-instance setups.
+ */
+public interface SharedTokenCache
+{
+
+  /**
+   * @return the token and its expiry in ms, or {@code null} when the cache has no entry.
+   */
+  public Pair<String, Long> get(String userId, String tokenKey);
+
+  public void put(String userId, String tokenKey, String accessToken, long expiryMilliSecond);
+
+  /**
+   * @return whether entries are visible to other instances, e.g. a token put on author to publish.
+   */
+  public boolean isRemote();
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adobe.prime.core.services;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Storage backend for learner access tokens. Tokens are keyed by user ID and by the token key of
+ * the admin configuration they were issued for. Backends register with a {@link #STORE_TYPE}
+ * property; {@link EmbeddableWidgetUserServiceImpl} picks one through its {@code tokenStore.target}
+ * filter.
+ */
+public interface TokenStore
+{
+
+  public static final String STORE_TYPE = "token.store";
+
+  /**
+   * @return the token and its expiry in ms, or {@code null} when nothing is stored.
+   */
+  public Pair<String, Long> getToken(String userId, String tokenKey);
+
+  public boolean putToken(String userId, String tokenKey, String accessToken, long expiryMilliSecond);
+}
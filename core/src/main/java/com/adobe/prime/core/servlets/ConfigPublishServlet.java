@@ -11,27 +11,41 @@
 
 package com.adobe.prime.core.servlets;
 
-import java.util.Iterator;
+import java.io.IOException;
+import java.util.List;
 
 import javax.jcr.Session;
 import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.jobs.ConfigPublishJobExecutor;
 import com.day.cq.replication.ReplicationActionType;
 import com.day.cq.replication.ReplicationException;
 import com.day.cq.replication.Replicator;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 
-@Component(service = Servlet.class, property = {"sling.servlet.methods=POST", "sling.servlet.resourceTypes=" + ConfigPublishServlet.RESOURCE_TYPE,
+/**
+ * Queues the publication of an admin configuration. Only users who may replicate the
+ * configuration can queue it; the replication itself runs in {@link ConfigPublishJobExecutor}.
+ * With {@code dryRun=true} nothing is queued and the paths which would be activated are listed.
+ * A GET with the returned {@code jobId} reports the outcome of the publication.
+ */
+@Component(service = Servlet.class, property = {"sling.servlet.methods=POST", "sling.servlet.methods=GET", "sling.servlet.resourceTypes=" + ConfigPublishServlet.RESOURCE_TYPE,
     "sling.servlet.selectors=" + "publishConfig", "sling.servlet.extensions=html"})
 public class ConfigPublishServlet extends SlingAllMethodsServlet
 {
@@ -45,39 +59,100 @@ public class ConfigPublishServlet extends SlingAllMethodsServlet
   @Reference
   private transient Replicator replicator;
 
+  @Reference
+  private transient JobManager jobManager;
+
   @Override
-  protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response)
+  protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException
   {
-
-    Resource configResource = null;
     String configName = request.getParameter("itemPath");
-    try
+    if (StringUtils.isEmpty(configName) || configName.contains("/") || configName.startsWith("."))
+    {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+
+    ResourceResolver resolver = request.getResourceResolver();
+    String configPath = Constants.AdminConfigurations.GLOBAL_CONFIG_CP_PATH + "/" + configName;
+    Resource configResource = resolver.getResource(configPath);
+    if (configResource == null)
     {
-      ResourceResolver resolver = request.getResourceResolver();
-      if (configName != null && !configName.isEmpty())
-      {
-        String configPath = Constants.AdminConfigurations.GLOBAL_CONFIG_CP_PATH + "/" + configName;
-        configResource = resolver.getResource(configPath);
-        if (configResource != null)
-        {
-          replicate(configResource);
-        }
-      }
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
 
+    try
+    {
+      replicator.checkPermission(resolver.adaptTo(Session.class), ReplicationActionType.ACTIVATE, configPath);
     } catch (ReplicationException re)
     {
-      LOGGER.error("ReplicationException in publishing config", re);
+      LOGGER.info("ConfigPublishServlet doPost:: {} may not publish {}", resolver.getUserID(), configPath);
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    if (Boolean.parseBoolean(request.getParameter("dryRun")))
+    {
+      List<String> paths = ConfigPublishJobExecutor.collectModifiedPaths(configResource);
+      JsonArray pathArray = new JsonArray();
+      paths.forEach(pathArray::add);
+      JsonObject dryRunObject = new JsonObject();
+      dryRunObject.addProperty("configName", configName);
+      dryRunObject.add("paths", pathArray);
+      writeJson(response, dryRunObject);
+      return;
     }
 
+    Job job = jobManager.addJob(ConfigPublishJobExecutor.TOPIC, ConfigPublishJobExecutor.getJobProperties(configName, resolver.getUserID()));
+    if (job == null)
+    {
+      LOGGER.error("ConfigPublishServlet doPost:: Unable to queue publication of {}", configName);
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+    LOGGER.info("ConfigPublishServlet doPost:: Queued publication of {} as {}", configName, job.getId());
+
+    JsonObject jobObject = new JsonObject();
+    jobObject.addProperty("jobId", job.getId());
+    response.setStatus(HttpServletResponse.SC_ACCEPTED);
+    writeJson(response, jobObject);
   }
 
-  private void replicate(Resource resource) throws ReplicationException
+  @Override
+  protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException
   {
-    replicator.replicate(resource.getResourceResolver().adaptTo(Session.class), ReplicationActionType.ACTIVATE, resource.getPath());
-    Iterator<Resource> it = resource.getResourceResolver().listChildren(resource);
-    while (it.hasNext())
+    String jobId = request.getParameter("jobId");
+    Job job = StringUtils.isEmpty(jobId) ? null : jobManager.getJobById(jobId);
+    if (job == null || !ConfigPublishJobExecutor.TOPIC.equals(job.getTopic()))
+    {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    ResourceResolver resolver = request.getResourceResolver();
+    String configPath =
+        Constants.AdminConfigurations.GLOBAL_CONFIG_CP_PATH + "/" + job.getProperty(ConfigPublishJobExecutor.PROPERTY_CONFIG_NAME, String.class);
+    try
+    {
+      replicator.checkPermission(resolver.adaptTo(Session.class), ReplicationActionType.ACTIVATE, configPath);
+    } catch (ReplicationException re)
     {
-      replicate(it.next());
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
     }
+
+    JsonObject jobObject = new JsonObject();
+    jobObject.addProperty("jobId", job.getId());
+    jobObject.addProperty("state", job.getJobState().name());
+    jobObject.addProperty("message", job.getResultMessage());
+    writeJson(response, jobObject);
+  }
+
+  private void writeJson(SlingHttpServletResponse response, JsonObject jsonObject) throws IOException
+  {
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "private, no-store");
+    response.getWriter().write(jsonObject.toString());
   }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.servlets;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+
+import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.entity.EmbeddableWidgetOptions;
+import com.adobe.prime.core.entity.EmbeddableWidgetsConfig;
+
+/**
+ * Immutable dialog field compiled from one catalog option. Everything except the field value and
+ * its visibility is fixed per catalog version, so descriptors are compiled once and turned into
+ * resources per dialog request by {@link #toResource(ResourceResolver, ValueMap, boolean)}.
+ */
+final class DialogFieldDescriptor
+{
+
+  private final String resourceType;
+  private final String propertyName;
+  private final Map<String, Object> properties;
+  private final boolean fixedValue;
+  private final String defaultValue;
+  private final List<Map<String, Object>> items;
+
+  private DialogFieldDescriptor(String resourceType, String propertyName, Map<String, Object> properties, boolean fixedValue,
+      String defaultValue, List<Map<String, Object>> items)
+  {
+    this.resourceType = resourceType;
+    this.propertyName = propertyName;
+    this.properties = Collections.unmodifiableMap(properties);
+    this.fixedValue = fixedValue;
+    this.defaultValue = defaultValue;
+    this.items = items;
+  }
+
+  static List<DialogFieldDescriptor> compile(EmbeddableWidgetsConfig widgetConfig)
+  {
+    List<DialogFieldDescriptor> descriptors = new ArrayList<>();
+    for (EmbeddableWidgetOptions option : widgetConfig.getOptions())
+    {
+      descriptors.add(compile(widgetConfig, option));
+    }
+    return Collections.unmodifiableList(descriptors);
+  }
+
+  private static DialogFieldDescriptor compile(EmbeddableWidgetsConfig widgetConfig, EmbeddableWidgetOptions option)
+  {
+    String propertyName = Constants.CP_NODE_PROPERTY_PREFIX + option.getRef();
+    boolean hideOption = option.getHidden();
+
+    Map<String, Object> properties = new HashMap<>();
+    properties.put("name", "./" + propertyName);
+    properties.put("fieldLabel", option.getName());
+    properties.put("granite:itemtype", widgetConfig.getWidgetRef());
+    if (hideOption)
+    {
+      properties.put("labelId", "hideOption");
+    }
+
+    String resourceType;
+    List<Map<String, Object>> items = null;
+    switch (option.getType())
+    {
+      case "color":
+        resourceType = DialogFieldFactory.COLORFIELD_TYPE;
+        properties.put("emptyText", widgetConfig.getDefault());
+        properties.put("required", option.getMandatory());
+        break;
+
+      case "string":
+        resourceType = DialogFieldFactory.TEXTFIELD_TYPE;
+        properties.put("emptyText", widgetConfig.getDefault());
+        properties.put("required", option.getMandatory());
+        if (hideOption)
+        {
+          properties.put("granite:rel", "hideOption");
+        }
+        break;
+
+      case "boolean":
+        resourceType = DialogFieldFactory.CHECKBOX_TYPE;
+        properties.put("text", widgetConfig.getName());
+        break;
+
+      default:
+        resourceType = DialogFieldFactory.SELECT_TYPE;
+        properties.put("required", option.getMandatory());
+        items = DialogFieldFactory.getDropdownItems(option.getType());
+        break;
+    }
+    return new DialogFieldDescriptor(resourceType, propertyName, properties, hideOption, option.getDefaultValue(), items);
+  }
+
+  String getResourceType()
+  {
+    return resourceType;
+  }
+
+  /**
+   * Creates the dialog field. Values of the content resource are only shown in the fields of the
+   * selected widget; fields of other widgets are rendered hidden.
+   */
+  Resource toResource(ResourceResolver resolver, ValueMap contentValues, boolean selected)
+  {
+    if (items != null)
+    {
+      return DialogFieldFactory.createDropdown(resolver, properties, items, null, "renderHidden", !selected);
+    }
+    return DialogFieldFactory.createField(resolver, resourceType, properties, "value", getValue(contentValues, selected), "renderHidden", !selected);
+  }
+
+  private String getValue(ValueMap contentValues, boolean selected)
+  {
+    if (fixedValue)
+    {
+      return defaultValue;
+    }
+    if (selected && contentValues.get(propertyName) != null)
+    {
+      return contentValues.get(propertyName).toString();
+    }
+    return "";
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.servlets;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+
+import com.adobe.granite.ui.components.ValueMapResourceWrapper;
+import com.adobe.granite.ui.components.ds.ValueMapResource;
+import com.day.cq.commons.jcr.JcrConstants;
+
+/**
+ * Creates the synthetic dialog fields of the datasource servlets. Fields share immutable template
+ * property maps; the few properties which differ per request are layered on top instead of copying
+ * the template. Select items are cached per option type and built once per dropdown.
+ */
+final class DialogFieldFactory
+{
+
+  static final String TEXTFIELD_TYPE = "granite/ui/components/coral/foundation/form/textfield";
+  static final String CHECKBOX_TYPE = "granite/ui/components/coral/foundation/form/checkbox";
+  static final String COLORFIELD_TYPE = "granite/ui/components/coral/foundation/form/colorfield";
+  static final String SELECT_TYPE = "granite/ui/components/coral/foundation/form/select";
+  static final String HIDDEN_TYPE = "granite/ui/components/coral/foundation/form/hidden";
+
+  private static final int MAX_CACHED_ITEMS = 10000;
+
+  private static final ConcurrentMap<String, List<Map<String, Object>>> DROPDOWN_ITEMS = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, Map<String, Object>> ITEMS = new ConcurrentHashMap<>();
+
+  private DialogFieldFactory()
+  {}
+
+  /**
+   * Immutable template from alternating property names and values.
+   */
+  static Map<String, Object> template(Object... properties)
+  {
+    Map<String, Object> template = new HashMap<>();
+    for (int i = 0; i < properties.length; i += 2)
+    {
+      template.put(properties[i].toString(), properties[i + 1]);
+    }
+    return Collections.unmodifiableMap(template);
+  }
+
+  static Resource createField(ResourceResolver resolver, String resourceType, Map<String, Object> template, Object... overrides)
+  {
+    return new ValueMapResource(resolver, "", resourceType, new ValueMapDecorator(new FlyweightMap(template, overrides)));
+  }
+
+  /**
+   * Select field whose {@code items} child lists {@code items}, marking the one equal to
+   * {@code selectedValue}, if any, as selected.
+   */
+  static Resource createDropdown(ResourceResolver resolver, Map<String, Object> template, List<Map<String, Object>> items, String selectedValue,
+      Object... overrides)
+  {
+    ValueMap valueMap = new ValueMapDecorator(new FlyweightMap(template, overrides));
+    Resource res = new ValueMapResource(resolver, "", SELECT_TYPE, valueMap);
+    return new ValueMapResourceWrapper(res, SELECT_TYPE)
+    {
+      private List<Resource> itemResources;
+
+      @Override
+      public Resource getChild(String relPath)
+      {
+        if ("items".equals(relPath))
+        {
+          return new ValueMapResourceWrapper(res, JcrConstants.NT_UNSTRUCTURED)
+          {
+            @Override
+            public Iterator<Resource> listChildren()
+            {
+              return getItemResources().iterator();
+            }
+          };
+        }
+        return super.getChild(relPath);
+      }
+
+      @Override
+      public ValueMap getValueMap()
+      {
+        return valueMap;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public <AdapterType> AdapterType adaptTo(Class<AdapterType> type)
+      {
+        if (type == ValueMap.class || type == Map.class)
+        {
+          return (AdapterType) valueMap;
+        }
+        return super.adaptTo(type);
+      }
+
+      private List<Resource> getItemResources()
+      {
+        if (itemResources == null)
+        {
+          Resource[] resources = new Resource[items.size()];
+          for (int i = 0; i < resources.length; i++)
+          {
+            Map<String, Object> item = items.get(i);
+            if (selectedValue != null && selectedValue.equals(item.get("value")))
+            {
+              item = new FlyweightMap(item, "selected", true);
+            }
+            resources[i] = new ValueMapResource(resolver, "", JcrConstants.NT_UNSTRUCTURED, new ValueMapDecorator(item));
+          }
+          itemResources = Arrays.asList(resources);
+        }
+        return itemResources;
+      }
+    };
+  }
+
+  /**
+   * Items of a dropdown option, whose type lists the values separated by {@code |}.
+   */
+  static List<Map<String, Object>> getDropdownItems(String type)
+  {
+    List<Map<String, Object>> items = DROPDOWN_ITEMS.get(type);
+    if (items == null)
+    {
+      String[] values = type.split("\\|");
+      List<Map<String, Object>> newItems = new ArrayList<>(values.length);
+      for (String value : values)
+      {
+        newItems.add(getItem(value, value));
+      }
+      items = Collections.unmodifiableList(newItems);
+      if (DROPDOWN_ITEMS.size() >= MAX_CACHED_ITEMS)
+      {
+        DROPDOWN_ITEMS.clear();
+      }
+      DROPDOWN_ITEMS.put(type, items);
+    }
+    return items;
+  }
+
+  static Map<String, Object> getItem(String value, String text)
+  {
+    String key = value + '\n' + text;
+    Map<String, Object> item = ITEMS.get(key);
+    if (item == null)
+    {
+      item = template("value", value, "text", text);
+      if (ITEMS.size() >= MAX_CACHED_ITEMS)
+      {
+        ITEMS.clear();
+      }
+      ITEMS.put(key, item);
+    }
+    return item;
+  }
+
+  /**
+   * Properties of a shared template with per-field overrides on top. Overrides are passed as
+   * alternating names and values; later {@link #put} calls are kept in a map of their own.
+   */
+  static final class FlyweightMap extends AbstractMap<String, Object>
+  {
+    private final Map<String, Object> template;
+    private final Object[] overrides;
+    private Map<String, Object> added;
+
+    FlyweightMap(Map<String, Object> template, Object... overrides)
+    {
+      this.template = template;
+      this.overrides = overrides;
+    }
+
+    @Override
+    public Object get(Object key)
+    {
+      if (added != null && added.containsKey(key))
+      {
+        return added.get(key);
+      }
+      for (int i = 0; i < overrides.length; i += 2)
+      {
+        if (overrides[i].equals(key))
+        {
+          return overrides[i + 1];
+        }
+      }
+      return template.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+      if (added != null && added.containsKey(key))
+      {
+        return true;
+      }
+      for (int i = 0; i < overrides.length; i += 2)
+      {
+        if (overrides[i].equals(key))
+        {
+          return true;
+        }
+      }
+      return template.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value)
+    {
+      Object previous = get(key);
+      if (added == null)
+      {
+        added = new HashMap<>();
+      }
+      added.put(key, value);
+      return previous;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet()
+    {
+      Map<String, Object> merged = new LinkedHashMap<>(template);
+      for (int i = 0; i < overrides.length; i += 2)
+      {
+        merged.put(overrides[i].toString(), overrides[i + 1]);
+      }
+      if (added != null)
+      {
+        merged.putAll(added);
+      }
+      return Collections.unmodifiableMap(merged).entrySet();
+    }
+  }
+}
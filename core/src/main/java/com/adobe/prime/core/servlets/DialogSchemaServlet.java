@@ -0,0 +1,252 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.servlets;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.settings.SlingSettingsService;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.entity.EmbeddableWidgetOptions;
+import com.adobe.prime.core.entity.EmbeddableWidgetsConfig;
+import com.adobe.prime.core.services.EmbeddableWidgetConfigurationService;
+import com.adobe.prime.core.services.EmbeddableWidgetService;
+import com.adobe.prime.core.utils.EmbeddableWidgetConfigUtils;
+import com.day.cq.wcm.api.PageManager;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Serves the dialog schema of the widget catalog which applies to the requested resource: the
+ * general settings and the options of every widget with their types, defaults and helpx links.
+ * The schema is compiled once per host and catalog version and carries a strong ETag derived from
+ * its content, so dialogs can keep it across opens and only revalidate it. Requests which pass the
+ * current tag as {@code v} address that exact content and may cache the response for good.
+ * The schema is served for widget resources on author only.
+ */
+@Component(service = Servlet.class, property = {"sling.servlet.methods=GET", "sling.servlet.resourceTypes=" + DialogSchemaServlet.RESOURCE_TYPE,
+    "sling.servlet.selectors=" + DialogSchemaServlet.SELECTOR, "sling.servlet.extensions=json"})
+public class DialogSchemaServlet extends SlingSafeMethodsServlet
+{
+
+  private static final long serialVersionUID = 5521806437019832746L;
+
+  final static String RESOURCE_TYPE = Constants.WIDGET_RESOURCE_TYPE;
+  final static String SELECTOR = "cpdialogschema";
+
+  private static final String VERSION_PARAM = "v";
+  private static final String REVALIDATE_CACHE_CONTROL = "private, no-cache";
+  private static final String IMMUTABLE_CACHE_CONTROL = "private, max-age=31536000, immutable";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DialogSchemaServlet.class);
+
+  private static final ConcurrentMap<String, DialogSchema> SCHEMAS = new ConcurrentHashMap<>();
+
+  static final class DialogSchema
+  {
+    private final long catalogVersion;
+    private final String json;
+    private final String version;
+    private final String etag;
+
+    private DialogSchema(long catalogVersion, String json)
+    {
+      this.catalogVersion = catalogVersion;
+      this.json = json;
+      this.version = DigestUtils.sha256Hex(json);
+      this.etag = "\"" + version + "\"";
+    }
+
+    String getVersion()
+    {
+      return version;
+    }
+
+    String getJson()
+    {
+      return json;
+    }
+
+    String getEtag()
+    {
+      return etag;
+    }
+  }
+
+  @Reference
+  private transient EmbeddableWidgetService widgetService;
+
+  @Reference
+  private transient EmbeddableWidgetConfigurationService widgetConfigService;
+
+  @Reference
+  private transient SlingSettingsService slingSettingsService;
+
+  @Override
+  protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException
+  {
+    if (!slingSettingsService.getRunModes().contains(Constants.RUNMODE_AUTHOR))
+    {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    PageManager pageManager = request.getResourceResolver().adaptTo(PageManager.class);
+    if (pageManager == null || pageManager.getContainingPage(request.getResource()) == null)
+    {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    Map<String, Object> adminConfigs = widgetConfigService.getAvailaleAdminConfiguration(request.getResource());
+    String hostName = adminConfigs.get(Constants.AdminConfigurations.ADMIN_CONFIG_HOST_NAME) != null
+        ? adminConfigs.get(Constants.AdminConfigurations.ADMIN_CONFIG_HOST_NAME).toString()
+        : widgetService.getDefaultHostName();
+
+    DialogSchema schema = getSchema(hostName);
+    if (schema == null)
+    {
+      LOGGER.error("DialogSchemaServlet doGet:: Widget catalog unavailable for host {}", hostName);
+      response.setHeader("Cache-Control", "private, no-store");
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+
+    response.setHeader("ETag", schema.getEtag());
+    response.setHeader("Cache-Control",
+        schema.getVersion().equals(request.getParameter(VERSION_PARAM)) ? IMMUTABLE_CACHE_CONTROL : REVALIDATE_CACHE_CONTROL);
+    if (matches(request.getHeader("If-None-Match"), schema.getEtag()))
+    {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    response.getWriter().write(schema.getJson());
+  }
+
+  /**
+   * Schema of the current catalog of the host, or {@code null} when the catalog cannot be loaded.
+   */
+  static DialogSchema getSchema(String hostName)
+  {
+    List<EmbeddableWidgetsConfig> widgets = EmbeddableWidgetConfigUtils.getEmbeddableWidgetsConfig(hostName);
+    long catalogVersion = EmbeddableWidgetConfigUtils.getCatalogVersion(hostName);
+    if (widgets == null || catalogVersion < 0)
+    {
+      return null;
+    }
+    DialogSchema schema = SCHEMAS.get(hostName);
+    if (schema == null || schema.catalogVersion != catalogVersion)
+    {
+      schema = new DialogSchema(catalogVersion, compile(widgets).toString());
+      SCHEMAS.put(hostName, schema);
+    }
+    return schema;
+  }
+
+  static JsonObject compile(List<EmbeddableWidgetsConfig> widgets)
+  {
+    JsonObject schema = new JsonObject();
+    JsonArray widgetsArray = new JsonArray();
+    for (EmbeddableWidgetsConfig widgetConfig : widgets)
+    {
+      boolean general = Constants.GENERAL_SETTINGS_CONFIG_TYPE.equals(widgetConfig.getType());
+      if (!general && !"widget".equals(widgetConfig.getType()))
+      {
+        continue;
+      }
+      JsonObject widgetObject = new JsonObject();
+      widgetObject.addProperty("name", widgetConfig.getName());
+      widgetObject.addProperty("ref", widgetConfig.getRef());
+      widgetObject.addProperty("widgetRef", widgetConfig.getWidgetRef());
+      widgetObject.add("fields", compileFields(widgetConfig.getOptions()));
+      if (general)
+      {
+        schema.add(Constants.GENERAL_SETTINGS_KEY, widgetObject);
+      } else
+      {
+        widgetsArray.add(widgetObject);
+      }
+    }
+    schema.add("widgets", widgetsArray);
+    return schema;
+  }
+
+  private static JsonArray compileFields(List<EmbeddableWidgetOptions> options)
+  {
+    JsonArray fields = new JsonArray();
+    if (options == null)
+    {
+      return fields;
+    }
+    for (EmbeddableWidgetOptions option : options)
+    {
+      JsonObject field = new JsonObject();
+      field.addProperty("name", Constants.CP_NODE_PROPERTY_PREFIX + option.getRef());
+      field.addProperty("ref", option.getRef());
+      field.addProperty("label", option.getName());
+      field.addProperty("default", option.getDefaultValue());
+      field.addProperty("mandatory", option.getMandatory());
+      field.addProperty("hidden", option.getHidden());
+      field.addProperty("helpx", option.getHelpx());
+      String type = option.getType();
+      if ("color".equals(type) || "string".equals(type) || "boolean".equals(type))
+      {
+        field.addProperty("type", type);
+      } else
+      {
+        field.addProperty("type", "select");
+        JsonArray values = new JsonArray();
+        for (Map<String, Object> item : DialogFieldFactory.getDropdownItems(type))
+        {
+          values.add(item.get("value").toString());
+        }
+        field.add("values", values);
+      }
+      fields.add(field);
+    }
+    return fields;
+  }
+
+  private static boolean matches(String ifNoneMatch, String etag)
+  {
+    if (ifNoneMatch == null)
+    {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(","))
+    {
+      String trimmed = candidate.trim();
+      if ("*".equals(trimmed) || etag.equals(trimmed))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+}
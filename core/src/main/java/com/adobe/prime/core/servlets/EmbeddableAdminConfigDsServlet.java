@@ -12,9 +12,12 @@
 package com.adobe.prime.core.servlets;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.Servlet;
 
@@ -33,16 +36,13 @@ import org.apache.sling.api.servlets.HttpConstants;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
 import org.apache.sling.api.wrappers.ValueMapDecorator;
 
-import com.adobe.granite.ui.components.ValueMapResourceWrapper;
 import com.adobe.granite.ui.components.ds.DataSource;
 import com.adobe.granite.ui.components.ds.SimpleDataSource;
-import com.adobe.granite.ui.components.ds.ValueMapResource;
 import com.adobe.prime.core.Constants;
 import com.adobe.prime.core.entity.EmbeddableWidgetOptions;
 import com.adobe.prime.core.entity.EmbeddableWidgetsConfig;
 import com.adobe.prime.core.services.EmbeddableWidgetService;
 import com.adobe.prime.core.utils.EmbeddableWidgetConfigUtils;
-import com.day.cq.commons.jcr.JcrConstants;
 
 @Component(metatype = false)
 @Properties({@Property(name = "sling.servlet.resourceTypes", value = {EmbeddableAdminConfigDsServlet.RESOURCE_TYPE}),
@@ -59,6 +59,134 @@ public class EmbeddableAdminConfigDsServlet extends SlingAllMethodsServlet
 
   final static String RESOURCE_TYPE = "cpWidget/configuration/datasource";
 
+  private static final String TITLE_NAME = Constants.CP_NODE_PROPERTY_PREFIX + "title";
+  private static final String ACCOUNT_ID_NAME = Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_ACCOUNT_ID;
+  private static final String REFRESH_TOKEN_NAME = Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_REFRESH_TOKEN;
+  private static final String CLIENT_ID_NAME = Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_CLIENT_ID;
+  private static final String CLIENT_SECRET_NAME = Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_CLIENT_SECRET;
+
+  private static final Map<String, Object> TITLE_FIELD = getTextFieldTemplate(TITLE_NAME, "Config Title");
+  private static final Map<String, Object> ACCOUNT_ID_FIELD = getTextFieldTemplate(ACCOUNT_ID_NAME, "Account ID");
+  private static final Map<String, Object> REFRESH_TOKEN_FIELD = getTextFieldTemplate(REFRESH_TOKEN_NAME, "Admin Refresh Token");
+  private static final Map<String, Object> CLIENT_ID_FIELD = getTextFieldTemplate(CLIENT_ID_NAME, "Client Id");
+  private static final Map<String, Object> CLIENT_SECRET_FIELD = getTextFieldTemplate(CLIENT_SECRET_NAME, "Client Secret");
+
+  private static final ConcurrentMap<String, SettingsTemplate> SETTINGS_TEMPLATES = new ConcurrentHashMap<>();
+
+  private static final class SettingsTemplate
+  {
+    private final long catalogVersion;
+    private final List<SettingsField> fields;
+
+    private SettingsTemplate(long catalogVersion, List<SettingsField> fields)
+    {
+      this.catalogVersion = catalogVersion;
+      this.fields = Collections.unmodifiableList(fields);
+    }
+  }
+
+  /**
+   * Field of one general settings option. Only the value, and for checkboxes the checked state,
+   * come from the configuration being edited.
+   */
+  private static final class SettingsField
+  {
+    private final String resourceType;
+    private final String propertyName;
+    private final Map<String, Object> template;
+    private final boolean fixedValue;
+    private final String defaultValue;
+    private final List<Map<String, Object>> items;
+    private final List<Map<String, Object>> hiddenFields;
+
+    private SettingsField(EmbeddableWidgetOptions option)
+    {
+      propertyName = Constants.CP_NODE_PROPERTY_PREFIX + option.getRef();
+      fixedValue = option.getHidden();
+      defaultValue = option.getDefaultValue();
+
+      List<Map<String, Object>> hidden = new ArrayList<>();
+      List<Map<String, Object>> dropdownItems = null;
+      switch (option.getType())
+      {
+        case "color":
+          resourceType = DialogFieldFactory.COLORFIELD_TYPE;
+          template = DialogFieldFactory.template("name", propertyName, "emptyText", defaultValue, "required", option.getMandatory(), "fieldLabel",
+              option.getName(), "renderHidden", fixedValue);
+          break;
+
+        case "string":
+          resourceType = DialogFieldFactory.TEXTFIELD_TYPE;
+          template = DialogFieldFactory.template("name", propertyName, "emptyText", defaultValue, "required", option.getMandatory(), "fieldLabel",
+              option.getName(), "renderHidden", fixedValue);
+          break;
+
+        case "boolean":
+          resourceType = DialogFieldFactory.CHECKBOX_TYPE;
+          if (fixedValue)
+          {
+            template = DialogFieldFactory.template("name", propertyName, "text", option.getName(), "fieldLabel", option.getName(), "renderHidden",
+                true, "fieldDescription", true, "wrapperClass", "cp-hide-checkbox-elem");
+          } else
+          {
+            template = DialogFieldFactory.template("name", propertyName, "text", option.getName(), "fieldLabel", option.getName(), "renderHidden",
+                false);
+          }
+          hidden.add(DialogFieldFactory.template("name", propertyName + "@TypeHint", "value", "boolean", "disabled", false));
+          break;
+
+        default:
+          resourceType = DialogFieldFactory.SELECT_TYPE;
+          template = DialogFieldFactory.template("name", propertyName, "required", option.getMandatory(), "fieldLabel", option.getName(),
+              "renderHidden", fixedValue);
+          dropdownItems = DialogFieldFactory.getDropdownItems(option.getType());
+          break;
+      }
+
+      String helpxLink = option.getHelpx();
+      if (helpxLink != null && helpxLink.length() > 0)
+      {
+        hidden.add(DialogFieldFactory.template("name", Constants.AdminConfigurations.HELPXLINK_PREFIX + propertyName, "value", helpxLink, "disabled",
+            true));
+      }
+      items = dropdownItems;
+      hiddenFields = Collections.unmodifiableList(hidden);
+    }
+
+    private void addResources(ResourceResolver resolver, ValueMap map, List<Resource> resourceList)
+    {
+      String value = getValue(map);
+      if (items != null)
+      {
+        resourceList.add(DialogFieldFactory.createDropdown(resolver, template, items, value));
+      } else if (DialogFieldFactory.CHECKBOX_TYPE.equals(resourceType) && value.length() > 0)
+      {
+        resourceList.add(DialogFieldFactory.createField(resolver, resourceType, template, "value", value, "checked", Boolean.valueOf(value)));
+      } else
+      {
+        resourceList.add(DialogFieldFactory.createField(resolver, resourceType, template, "value", value));
+      }
+      for (Map<String, Object> hiddenField : hiddenFields)
+      {
+        resourceList.add(DialogFieldFactory.createField(resolver, DialogFieldFactory.HIDDEN_TYPE, hiddenField));
+      }
+    }
+
+    private String getValue(ValueMap map)
+    {
+      if (fixedValue)
+      {
+        return defaultValue;
+      }
+      Object value = map.get(propertyName);
+      if (value != null)
+      {
+        return value.toString();
+      }
+      return defaultValue != null ? defaultValue : "";
+    }
+  }
+
   @Override
   protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
   {
@@ -83,240 +211,84 @@ public class EmbeddableAdminConfigDsServlet extends SlingAllMethodsServlet
     }
     String configHostName = widgetService.getDefaultHostName();
     EmbeddableWidgetsConfig generalSettingsConfig = EmbeddableWidgetConfigUtils.getGeneralSettingsConfig(configHostName);
-    createAEMSpecificDataSource(request, resourceList, valueMap);
-    createDataSourceForWidget(request, generalSettingsConfig, resourceList, valueMap);
+    createAEMSpecificDataSource(resolver, resourceList, valueMap);
+    for (SettingsField field : getSettingsFields(configHostName, generalSettingsConfig))
+    {
+      field.addResources(resolver, valueMap, resourceList);
+    }
 
     request.setAttribute(DataSource.class.getName(), new SimpleDataSource(resourceList.iterator()));
 
   }
 
-  private void createAEMSpecificDataSource(SlingHttpServletRequest request, List<Resource> resourceList, ValueMap map)
+  private void createAEMSpecificDataSource(ResourceResolver resolver, List<Resource> resourceList, ValueMap map)
   {
 
-    String titleName = Constants.CP_NODE_PROPERTY_PREFIX + "title";
-    Object existingTitleValue = map.get(Constants.CP_NODE_PROPERTY_PREFIX + "title");
+    Object existingTitleValue = map.get(TITLE_NAME);
     if (existingTitleValue != null)
     {
-      resourceList.add(createTextFieldResource(request, titleName, existingTitleValue.toString(), "", true, "Config Title", false, true));
+      resourceList.add(createTextField(resolver, TITLE_FIELD, "value", existingTitleValue.toString(), "disabled", true));
     } else
     {
-      resourceList.add(createTextFieldResource(request, titleName, "", "", true, "Config Title", false, false));
-    }
-
-    String accountIdName = Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_ACCOUNT_ID;
-    String accountIdValue = map.get(Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_ACCOUNT_ID) != null
-        ? map.get(Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_ACCOUNT_ID).toString()
-        : "";
-    resourceList.add(createTextFieldResource(request, accountIdName, accountIdValue, "", true, "Account ID", false, false));
-
-    String refreshTokenName = Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_REFRESH_TOKEN;
-    String refreshTokenValue = "";
-    Object refreshTokenValueObj = map.get(Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_REFRESH_TOKEN);
-    if (refreshTokenValueObj != null)
-    {
-      refreshTokenValue = map.get(Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_REFRESH_TOKEN).toString();
-      int length = refreshTokenValue.length();
-      if (length > 8)
-      {
-        final String overlay =
-            StringUtils.repeat(Constants.AdminConfigurations.MASK_CHAR, length - (2 * Constants.AdminConfigurations.MASK_LENGTH));
-        refreshTokenValue = StringUtils.overlay(refreshTokenValue, overlay, Constants.AdminConfigurations.MASK_LENGTH,
-            length - Constants.AdminConfigurations.MASK_LENGTH);
-      }
+      resourceList.add(createTextField(resolver, TITLE_FIELD, "value", ""));
     }
 
-    resourceList.add(createTextFieldResource(request, refreshTokenName, refreshTokenValue, "", true, "Admin Refresh Token", false, false));
-
-    String clientIdName = Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_CLIENT_ID;
-    String clientIdValue = map.get(Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_CLIENT_ID) != null
-        ? map.get(Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_CLIENT_ID).toString()
-        : "";
-    resourceList.add(createTextFieldResource(request, clientIdName, clientIdValue, "", true, "Client Id", false, false));
-
-    String clientSecretName = Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_CLIENT_SECRET;
-    String clientSecretValue = map.get(Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_CLIENT_SECRET) != null
-        ? map.get(Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_CLIENT_SECRET).toString()
-        : "";
-    resourceList.add(createTextFieldResource(request, clientSecretName, clientSecretValue, "", true, "Client Secret", false, false));
-  }
-
-  private void createDataSourceForWidget(SlingHttpServletRequest request, EmbeddableWidgetsConfig widgetConfig, List<Resource> resourceList,
-      ValueMap map)
-  {
+    resourceList.add(createTextField(resolver, ACCOUNT_ID_FIELD, "value", getValue(map, ACCOUNT_ID_NAME)));
 
-    for (EmbeddableWidgetOptions option : widgetConfig.getOptions())
+    String refreshTokenValue = getValue(map, REFRESH_TOKEN_NAME);
+    int length = refreshTokenValue.length();
+    if (length > 8)
     {
-      String type = option.getType();
-      String name = Constants.CP_NODE_PROPERTY_PREFIX + option.getRef();
-      String value = "", emptyText = "";
-      String fieldLabel = option.getName();
-      boolean hidden = option.getHidden();
-      String helpxLink = option.getHelpx();
-
-      if (option.getRef().equals("auth.accessToken"))
-      {
-        continue;
-      }
-
-      boolean required = option.getMandatory();
-
-      if (hidden)
-      {
-        value = option.getDefaultValue();
-      } else
-      {
-        value = map.get(Constants.CP_NODE_PROPERTY_PREFIX + option.getRef()) != null
-            ? map.get(Constants.CP_NODE_PROPERTY_PREFIX + option.getRef()).toString()
-            : (option.getDefaultValue() != null ? option.getDefaultValue() : "");
-      }
-
-
-      switch (type)
-      {
-        case "color":
-          emptyText = option.getDefaultValue();
-          resourceList.add(createColorPickerResource(request, name, value, emptyText, required, fieldLabel, hidden));
-          break;
-
-        case "string":
-          emptyText = option.getDefaultValue();
-          resourceList.add(createTextFieldResource(request, name, value, emptyText, required, fieldLabel, hidden, false));
-          break;
-
-        case "boolean":
-          resourceList.add(createCheckBoxResource(request, name, value, option.getName(), fieldLabel, hidden));
-          resourceList.add(createHiddenTypeHint(request, name + "@TypeHint", "boolean", false));
-          break;
-
-        default:
-          String[] values = type.split("\\|");
-          resourceList.add(createDropdownResource(request, name, required, fieldLabel, values, value, hidden));
-          break;
-      }
-
-      if (helpxLink != null && helpxLink.length() > 0)
-      {
-        String helpxLinkName = Constants.AdminConfigurations.HELPXLINK_PREFIX + name;
-        resourceList.add(createHiddenTypeHint(request, helpxLinkName, helpxLink, true));
-      }
+      final String overlay = StringUtils.repeat(Constants.AdminConfigurations.MASK_CHAR, length - (2 * Constants.AdminConfigurations.MASK_LENGTH));
+      refreshTokenValue = StringUtils.overlay(refreshTokenValue, overlay, Constants.AdminConfigurations.MASK_LENGTH,
+          length - Constants.AdminConfigurations.MASK_LENGTH);
     }
-  }
+    resourceList.add(createTextField(resolver, REFRESH_TOKEN_FIELD, "value", refreshTokenValue));
 
-  private ValueMapResource createTextFieldResource(SlingHttpServletRequest request, String name, String value, String emptyText, boolean required,
-      String fieldLabel, boolean hidden, boolean disabled)
-  {
-    String resourceType = "granite/ui/components/coral/foundation/form/textfield";
-    ValueMap vm = new ValueMapDecorator(new HashMap<String, Object>());
-    vm.put("name", name);
-    vm.put("emptyText", emptyText);
-    vm.put("value", value);
-    vm.put("required", required);
-    vm.put("fieldLabel", fieldLabel);
-    vm.put("renderHidden", hidden);
-    if (disabled)
-    {
-      vm.put("disabled", disabled);
-    }
-    return new ValueMapResource(request.getResourceResolver(), "", resourceType, vm);
+    resourceList.add(createTextField(resolver, CLIENT_ID_FIELD, "value", getValue(map, CLIENT_ID_NAME)));
+    resourceList.add(createTextField(resolver, CLIENT_SECRET_FIELD, "value", getValue(map, CLIENT_SECRET_NAME)));
   }
 
-  private ValueMapResource createCheckBoxResource(SlingHttpServletRequest request, String name, String value, String text, String fieldLabel,
-      boolean hidden)
+  private static Resource createTextField(ResourceResolver resolver, Map<String, Object> template, Object... overrides)
   {
-    String resourceType = "granite/ui/components/coral/foundation/form/checkbox";
-    ValueMap vm = new ValueMapDecorator(new HashMap<String, Object>());
-    vm.put("name", name);
-    vm.put("text", text);
-    vm.put("fieldLabel", fieldLabel);
-    if (value.length() > 0)
-    {
-      vm.put("checked", Boolean.valueOf(value));
-    }
-    vm.put("value", value);
-    vm.put("renderHidden", hidden);
-    if (hidden)
-    {
-      vm.put("fieldDescription", hidden);
-      vm.put("wrapperClass", "cp-hide-checkbox-elem");
-    }
-    return new ValueMapResource(request.getResourceResolver(), "", resourceType, vm);
+    return DialogFieldFactory.createField(resolver, DialogFieldFactory.TEXTFIELD_TYPE, template, overrides);
   }
 
-  private ValueMapResource createHiddenTypeHint(SlingHttpServletRequest request, String name, String value, boolean disabled)
+  private static String getValue(ValueMap map, String name)
   {
-    String resourceType = "granite/ui/components/coral/foundation/form/hidden";
-    ValueMap vm = new ValueMapDecorator(new HashMap<String, Object>());
-    vm.put("name", name);
-    vm.put("value", value);
-    vm.put("disabled", disabled);
-    return new ValueMapResource(request.getResourceResolver(), "", resourceType, vm);
+    Object value = map.get(name);
+    return value != null ? value.toString() : "";
   }
 
-  private ValueMapResource createColorPickerResource(SlingHttpServletRequest request, String name, String value, String emptyText, boolean required,
-      String fieldLabel, boolean hidden)
+  private static Map<String, Object> getTextFieldTemplate(String name, String fieldLabel)
   {
-    String resourceType = "granite/ui/components/coral/foundation/form/colorfield";
-    ValueMap vm = new ValueMapDecorator(new HashMap<String, Object>());
-    vm.put("name", name);
-    vm.put("value", value);
-    vm.put("emptyText", emptyText);
-    vm.put("required", required);
-    vm.put("fieldLabel", fieldLabel);
-    vm.put("renderHidden", hidden);
-    return new ValueMapResource(request.getResourceResolver(), "", resourceType, vm);
+    return DialogFieldFactory.template("name", name, "emptyText", "", "required", true, "fieldLabel", fieldLabel, "renderHidden", false);
   }
 
-  private Resource createDropdownResource(SlingHttpServletRequest request, String name, boolean required, String fieldLabel, String[] values,
-      String selectedValue, boolean hidden)
+  /**
+   * General settings fields without {@code auth.accessToken}, compiled once per host and catalog
+   * version.
+   */
+  private static List<SettingsField> getSettingsFields(String hostName, EmbeddableWidgetsConfig generalSettingsConfig)
   {
-
-    String resourceType = "granite/ui/components/coral/foundation/form/select";
-    ValueMap vm = new ValueMapDecorator(new HashMap<String, Object>());
-
-    Resource res = new ValueMapResource(request.getResourceResolver(), "", resourceType, vm);
-
-    Resource wrapper = new ValueMapResourceWrapper(res, resourceType)
+    long catalogVersion = EmbeddableWidgetConfigUtils.getCatalogVersion(hostName);
+    SettingsTemplate template = SETTINGS_TEMPLATES.get(hostName);
+    if (template == null || template.catalogVersion != catalogVersion)
     {
-      public Resource getChild(String relPath)
+      List<SettingsField> fields = new ArrayList<>();
+      for (EmbeddableWidgetOptions option : generalSettingsConfig.getOptions())
       {
-        if ("items".equals(relPath))
-        {
-          Resource dataWrapper = new ValueMapResourceWrapper(res, JcrConstants.NT_UNSTRUCTURED)
-          {
-            public Iterator<Resource> listChildren()
-            {
-              List<Resource> itemsResourceList = new ArrayList<Resource>();
-
-              for (String value : values)
-              {
-                ValueMap vm = new ValueMapDecorator(new HashMap<String, Object>());
-                vm.put("value", value);
-                vm.put("text", value);
-                if (value.equals(selectedValue))
-                {
-                  vm.put("selected", true);
-                }
-                itemsResourceList.add(new ValueMapResource(request.getResourceResolver(), "", JcrConstants.NT_UNSTRUCTURED, vm));
-              }
-
-              return itemsResourceList.iterator();
-            }
-          };
-          return dataWrapper;
-        } else
+        if (!option.getRef().equals("auth.accessToken"))
         {
-          return super.getChild(relPath);
+          fields.add(new SettingsField(option));
         }
       }
-    };
-    ValueMap valueMap = wrapper.adaptTo(ValueMap.class);
-    if (valueMap != null)
-    {
-      valueMap.put("name", name);
-      valueMap.put("required", required);
-      valueMap.put("fieldLabel", fieldLabel);
-      valueMap.put("renderHidden", hidden);
+      template = new SettingsTemplate(catalogVersion, fields);
+      if (catalogVersion >= 0)
+      {
+        SETTINGS_TEMPLATES.put(hostName, template);
+      }
     }
-    return wrapper;
+    return template.fields;
   }
 }
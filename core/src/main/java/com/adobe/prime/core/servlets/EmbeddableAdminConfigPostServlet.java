@@ -16,31 +16,36 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.servlet.Servlet;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.jackrabbit.commons.JcrUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.request.RequestParameter;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
-import org.apache.sling.jcr.resource.api.JcrResourceConstants;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.adobe.prime.core.Constants;
-import com.adobe.prime.core.utils.EmbeddableWidgetConfigUtils;
-import com.day.cq.commons.jcr.JcrConstants;
-import com.day.cq.wcm.api.NameConstants;
-
+import com.adobe.prime.core.jobs.ConfigSaveJobExecutor;
+import com.google.gson.JsonObject;
+
+/**
+ * Queues the save of an admin configuration (POST) and reports the outcome of a queued save (GET).
+ * Only users who may write the configuration can queue its save or read its outcome. Malformed
+ * numbers are rejected before queueing; SKU validation and the write itself run in
+ * {@link ConfigSaveJobExecutor}.
+ */
 @Component(service = Servlet.class,
-property = {"sling.servlet.methods=POST", "sling.servlet.resourceTypes=" + EmbeddableAdminConfigPostServlet.RESOURCE_TYPE})
+property = {"sling.servlet.methods=POST", "sling.servlet.methods=GET", "sling.servlet.resourceTypes=" + EmbeddableAdminConfigPostServlet.RESOURCE_TYPE})
 public class EmbeddableAdminConfigPostServlet extends SlingAllMethodsServlet
 {
 
@@ -48,122 +53,116 @@ public class EmbeddableAdminConfigPostServlet extends SlingAllMethodsServlet
 
 	final static String RESOURCE_TYPE = "cpWidget/updateConfiguration";
 
-	private static final String CQ_PAGE_CONTENT = "cq:PageContent";
-
 	private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddableAdminConfigPostServlet.class);
 
+	@Reference
+	private transient JobManager jobManager;
+
 	@Override
-	protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response)
+	protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException
 	{
 		ResourceResolver resolver = request.getResourceResolver();
 		String configName = request.getParameter("item");
-		try
+		Map<String, String> properties = extractProperties(request);
+		if (configName == null || configName.isEmpty())
 		{
-			Session session = resolver.adaptTo(Session.class);
-			Map<String, String> properties = extractProperties(request);
-			if (configName == null || configName.isEmpty())
-			{
-				configName = properties.get(Constants.CP_NODE_PROPERTY_PREFIX + "title");
-			}
-
-			Node configNode = getConfigNode(session, configName);
+			configName = properties.get(Constants.CP_NODE_PROPERTY_PREFIX + "title");
+		}
+		if (StringUtils.isEmpty(configName) || configName.contains("/") || configName.startsWith("."))
+		{
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		String invalidNumber = ConfigSaveJobExecutor.getInvalidNumberProperty(properties);
+		if (invalidNumber != null)
+		{
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Property " + invalidNumber + " must be a number");
+			return;
+		}
 
-			if (configNode != null)
+		try
+		{
+			if (!canWrite(resolver, configName))
 			{
-				String hostNameProp = Constants.AdminConfigurations.ADMIN_CONFIG_HOST_NAME;
-				String hostName = properties.get(hostNameProp);
-				
-				String accountIdProp = Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_ACCOUNT_ID;
-				String accountId = properties.get(accountIdProp);
-				if (!EmbeddableWidgetConfigUtils.isAccountSKUValid(hostName, accountId))
-				{
-					response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Error in SKU Validation");
-					return;
-				}
-
-				String refreshTokenPropName = Constants.CP_NODE_PROPERTY_PREFIX + Constants.AdminConfigurations.ADMIN_CONFIG_REFRESH_TOKEN;
-				if (configNode.hasProperty(refreshTokenPropName))
-				{
-					String refreshTokenUserValue = properties.get(refreshTokenPropName);
-					String refreshTokeDbValue = configNode.getProperty(refreshTokenPropName).getValue().getString();
-					final String overlay = StringUtils.repeat(Constants.AdminConfigurations.MASK_CHAR,
-							refreshTokeDbValue.length() - (2 * Constants.AdminConfigurations.MASK_LENGTH));
-					String maskRefreshTokenValue = StringUtils.overlay(refreshTokeDbValue, overlay, Constants.AdminConfigurations.MASK_LENGTH,
-							refreshTokeDbValue.length() - Constants.AdminConfigurations.MASK_LENGTH);
-					if (maskRefreshTokenValue.equals(refreshTokenUserValue))
-					{
-						properties.remove(refreshTokenPropName);
-					}
-				}
-
-				for (Entry<String, String> e : properties.entrySet())
-				{
-					String name = e.getKey();
-					String value = e.getValue();
-
-					if (name.endsWith("@TypeHint"))
-					{
-						continue;
-					} else if (name.endsWith("@Delete"))
-					{
-						String nonDeletePropName = name.replace("@Delete", "");
-						if (properties.get(nonDeletePropName) == null)
-						{
-							configNode.setProperty(nonDeletePropName, false);
-						}
-					} else
-					{
-						String deletePropName = name + "@TypeHint";
-						String type = properties.get(deletePropName) != null ? properties.get(deletePropName) : "string";
-						switch (type)
-						{
-						case "boolean":
-							configNode.setProperty(name, true);
-							break;
-						case "number":
-							configNode.setProperty(name, Long.valueOf(value));
-							break;
-						default:
-							configNode.setProperty(name, value);
-						}
-					}
-				}
+				response.sendError(HttpServletResponse.SC_FORBIDDEN);
+				return;
 			}
+		} catch (RepositoryException re)
+		{
+			LOGGER.error("EmbeddableAdminConfigPostServlet doPost:: Exception in checking permissions on {}", configName, re);
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			return;
+		}
 
-			resolver.commit();
-
-		} catch (RepositoryException | IOException e)
+		Job job = jobManager.addJob(ConfigSaveJobExecutor.TOPIC,
+				ConfigSaveJobExecutor.getJobProperties(configName, request.getResourceResolver().getUserID(), properties));
+		if (job == null)
 		{
-			LOGGER.error("Exception in saving configurations", e);
+			LOGGER.error("EmbeddableAdminConfigPostServlet doPost:: Unable to queue save of {}", configName);
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			return;
 		}
+		LOGGER.info("EmbeddableAdminConfigPostServlet doPost:: Queued save of {} as {}", configName, job.getId());
+
+		JsonObject jobObject = new JsonObject();
+		jobObject.addProperty("jobId", job.getId());
+		response.setStatus(HttpServletResponse.SC_ACCEPTED);
+		writeJson(response, jobObject);
 	}
 
-	private Node getConfigNode(Session session, String configName)
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException
 	{
+		String jobId = request.getParameter("jobId");
+		Job job = StringUtils.isEmpty(jobId) ? null : jobManager.getJobById(jobId);
+		if (job == null || !ConfigSaveJobExecutor.TOPIC.equals(job.getTopic()))
+		{
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		String configName = job.getProperty(ConfigSaveJobExecutor.PROPERTY_CONFIG_NAME, String.class);
+		if (StringUtils.isEmpty(configName))
+		{
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
 		try
 		{
-			Node globalConfNode = session.getNode(Constants.AdminConfigurations.GLOBAL_CONFIG_PATH);
-			Node configNode = session.nodeExists(Constants.AdminConfigurations.GLOBAL_CONFIG_CP_PATH)
-					? globalConfNode.getNode(Constants.AdminConfigurations.GLOBAL_CONFIG_CP)
-							: globalConfNode.addNode(Constants.AdminConfigurations.GLOBAL_CONFIG_CP, JcrResourceConstants.NT_SLING_FOLDER);
-					if (!session.nodeExists(configNode.getPath() + "/" + Constants.AdminConfigurations.CLOUD_CONFIG_SETTINGS))
-					{
-						configNode.addNode(Constants.AdminConfigurations.CLOUD_CONFIG_SETTINGS, JcrResourceConstants.NT_SLING_FOLDER);
-					}
-					Node subConfigurationNode = JcrUtils.getOrCreateByPath(configNode.getPath() + "/" + configName, JcrResourceConstants.NT_SLING_FOLDER, session);
-					Node settingsNode = JcrUtils.getOrCreateByPath(subConfigurationNode.getPath() + "/" + Constants.AdminConfigurations.CLOUD_CONFIG_SETTINGS,
-							JcrResourceConstants.NT_SLING_FOLDER, session);
-					Node cloudConfigsNode = JcrUtils.getOrCreateByPath(settingsNode.getPath() + "/" + Constants.AdminConfigurations.CLOUD_CONFIG,
-							JcrResourceConstants.NT_SLING_FOLDER, session);
-					Node cpWidgetNode = JcrUtils.getOrCreateByPath(cloudConfigsNode.getPath() + "/" + Constants.AdminConfigurations.CP_WIDGET_CONFIG,
-							NameConstants.NT_PAGE, session);
-					Node cpConfigPropertiesNode = JcrUtils.getOrCreateByPath(cpWidgetNode.getPath() + "/" + JcrConstants.JCR_CONTENT, CQ_PAGE_CONTENT, session);
-					return cpConfigPropertiesNode;
+			if (!canWrite(request.getResourceResolver(), configName))
+			{
+				response.sendError(HttpServletResponse.SC_FORBIDDEN);
+				return;
+			}
 		} catch (RepositoryException re)
 		{
-			LOGGER.error("Exception in creating config node", re);
+			LOGGER.error("EmbeddableAdminConfigPostServlet doGet:: Exception in checking permissions on {}", configName, re);
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			return;
 		}
-		return null;
+
+		JsonObject jobObject = new JsonObject();
+		jobObject.addProperty("jobId", job.getId());
+		jobObject.addProperty("state", job.getJobState().name());
+		jobObject.addProperty("message", job.getResultMessage());
+		writeJson(response, jobObject);
+	}
+
+	/**
+	 * Whether the user may create and modify the configuration.
+	 */
+	private boolean canWrite(ResourceResolver resolver, String configName) throws RepositoryException
+	{
+		Session session = resolver.adaptTo(Session.class);
+		String configPath = Constants.AdminConfigurations.GLOBAL_CONFIG_CP_PATH + "/" + configName + Constants.AdminConfigurations.CP_SUB_CONFIG_PATH;
+		return session != null && session.hasPermission(configPath, Session.ACTION_ADD_NODE + "," + Session.ACTION_SET_PROPERTY);
+	}
+
+	private void writeJson(SlingHttpServletResponse response, JsonObject jsonObject) throws IOException
+	{
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "private, no-store");
+		response.getWriter().write(jsonObject.toString());
 	}
 
 	private Map<String, String> extractProperties(SlingHttpServletRequest request) throws IOException
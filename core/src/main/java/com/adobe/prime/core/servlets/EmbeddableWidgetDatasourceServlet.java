@@ -12,11 +12,12 @@
 package com.adobe.prime.core.servlets;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.Servlet;
 
@@ -31,20 +32,20 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.api.servlets.HttpConstants;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
-import org.apache.sling.api.wrappers.ValueMapDecorator;
 
-import com.adobe.granite.ui.components.ValueMapResourceWrapper;
 import com.adobe.granite.ui.components.ds.DataSource;
 import com.adobe.granite.ui.components.ds.SimpleDataSource;
-import com.adobe.granite.ui.components.ds.ValueMapResource;
 import com.adobe.prime.core.Constants;
-import com.adobe.prime.core.entity.EmbeddableWidgetOptions;
 import com.adobe.prime.core.entity.EmbeddableWidgetsConfig;
 import com.adobe.prime.core.services.EmbeddableWidgetConfigurationService;
 import com.adobe.prime.core.services.EmbeddableWidgetService;
 import com.adobe.prime.core.utils.EmbeddableWidgetConfigUtils;
-import com.day.cq.commons.jcr.JcrConstants;
 
+/**
+ * Fields of the component dialog. Only the fields of the selected widget are emitted; the dialog
+ * loads the fields of another widget when the author picks it, by rendering the field container
+ * again with a {@code widgetRef} request parameter.
+ */
 @Component(label = "Adobe Learning Manager Widget Datasource Servlet", description = "Adobe Learning Manager Widget Datasource Servlet")
 @Properties({@Property(name = "sling.servlet.resourceTypes", value = {EmbeddableWidgetDatasourceServlet.RESOURCE_TYPE}, propertyPrivate = true),
     @Property(name = "sling.servlet.methods", value = HttpConstants.METHOD_GET, propertyPrivate = true),
@@ -63,6 +64,20 @@ public class EmbeddableWidgetDatasourceServlet extends SlingAllMethodsServlet
 
   final static String RESOURCE_TYPE = "cpPrime/widgets/datasource/widgetsdatasource";
 
+  private static final ConcurrentMap<String, DialogTemplate> DIALOG_TEMPLATES = new ConcurrentHashMap<>();
+
+  private static final class DialogTemplate
+  {
+    private final long catalogVersion;
+    private final Map<String, List<DialogFieldDescriptor>> fieldsByWidget;
+
+    private DialogTemplate(long catalogVersion, Map<String, List<DialogFieldDescriptor>> fieldsByWidget)
+    {
+      this.catalogVersion = catalogVersion;
+      this.fieldsByWidget = Collections.unmodifiableMap(fieldsByWidget);
+    }
+  }
+
   @Override
   protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
   {
@@ -83,20 +98,23 @@ public class EmbeddableWidgetDatasourceServlet extends SlingAllMethodsServlet
             ? adminConfigs.get(Constants.AdminConfigurations.ADMIN_CONFIG_HOST_NAME).toString()
             : widgetService.getDefaultHostName();
         List<EmbeddableWidgetsConfig> widgets = EmbeddableWidgetConfigUtils.getEmbeddableWidgetsConfig(hostName);
-        List<EmbeddableWidgetsConfig> availableWidgetsList = getAvailableWidgets(widgets);
-        String selectedWidgetRef =
-            valueMap.get(Constants.SELECTED_WIDGET_REF) != null ? valueMap.get(Constants.SELECTED_WIDGET_REF).toString() : null;
-        if (selectedWidgetRef == null)
-        {
-          selectedWidgetRef = availableWidgetsList.get(0).getWidgetRef();
-        }
+        List<EmbeddableWidgetsConfig> availableWidgetsList = EmbeddableWidgetConfigUtils.getAvailableWidgets(widgets);
 
         Resource widgetSelectDropdown = request.getResource().getChild("widgetSelect");
         resourceList.add(widgetSelectDropdown);
 
-        for (EmbeddableWidgetsConfig widgetConfig : availableWidgetsList)
+        String selectedWidgetRef = request.getParameter(Constants.EmbeddableWidgetConfig.WIDGET_REF);
+        if (selectedWidgetRef == null)
         {
-          createDataSourceForWidget(request, widgetConfig, selectedWidgetRef, resourceList, valueMap);
+          selectedWidgetRef = valueMap.get(Constants.SELECTED_WIDGET_REF, String.class);
+        }
+        EmbeddableWidgetsConfig selectedWidget = EmbeddableWidgetConfigUtils.getSelectedWidget(availableWidgetsList, selectedWidgetRef);
+        if (selectedWidget != null)
+        {
+          for (DialogFieldDescriptor field : getDialogFields(hostName, availableWidgetsList).get(selectedWidget.getWidgetRef()))
+          {
+            resourceList.add(field.toResource(request.getResourceResolver(), valueMap, true));
+          }
         }
       }
     }
@@ -105,169 +123,27 @@ public class EmbeddableWidgetDatasourceServlet extends SlingAllMethodsServlet
 
   }
 
-  private void createDataSourceForWidget(SlingHttpServletRequest request, EmbeddableWidgetsConfig widgetConfig, String selectedWidgetRef,
-      List<Resource> resourceList, ValueMap map)
+  /**
+   * Dialog fields of all available widgets by widget ref, in catalog order. Compiled once per host
+   * and catalog version.
+   */
+  static Map<String, List<DialogFieldDescriptor>> getDialogFields(String hostName, List<EmbeddableWidgetsConfig> availableWidgets)
   {
-    boolean hide = !selectedWidgetRef.equals(widgetConfig.getWidgetRef());
-    String itemType = widgetConfig.getWidgetRef();
-
-    for (EmbeddableWidgetOptions option : widgetConfig.getOptions())
+    long catalogVersion = EmbeddableWidgetConfigUtils.getCatalogVersion(hostName);
+    DialogTemplate template = DIALOG_TEMPLATES.get(hostName);
+    if (template == null || template.catalogVersion != catalogVersion)
     {
-      String type = option.getType();
-      String name = "./" + Constants.CP_NODE_PROPERTY_PREFIX + option.getRef();
-      String value = "", emptyText = "";
-      String fieldLabel = option.getName();
-      boolean hideOption = option.getHidden();
-
-      boolean required = option.getMandatory();
-      if (hideOption)
+      Map<String, List<DialogFieldDescriptor>> fieldsByWidget = new LinkedHashMap<>();
+      for (EmbeddableWidgetsConfig widgetConfig : availableWidgets)
       {
-        value = option.getDefaultValue();
-      } else if ((widgetConfig.getWidgetRef() != null) && selectedWidgetRef != null && widgetConfig.getWidgetRef().equals(selectedWidgetRef))
-      {
-        value = map.get(Constants.CP_NODE_PROPERTY_PREFIX + option.getRef()) != null
-            ? map.get(Constants.CP_NODE_PROPERTY_PREFIX + option.getRef()).toString()
-            : "";
+        fieldsByWidget.put(widgetConfig.getWidgetRef(), DialogFieldDescriptor.compile(widgetConfig));
       }
-
-      switch (type)
+      template = new DialogTemplate(catalogVersion, fieldsByWidget);
+      if (catalogVersion >= 0)
       {
-        case "color":
-          emptyText = widgetConfig.getDefault();
-          resourceList.add(createColorPickerResource(request, name, value, emptyText, required, fieldLabel, hide, itemType, hideOption));
-          break;
-
-        case "string":
-          emptyText = widgetConfig.getDefault();
-          resourceList.add(createTextFieldResource(request, name, value, emptyText, required, fieldLabel, hide, itemType, hideOption));
-          break;
-
-        case "boolean":
-          resourceList.add(createCheckBoxResource(request, name, value, widgetConfig.getName(), fieldLabel, hide, itemType, hideOption));
-          break;
-
-        default:
-          String[] values = type.split("\\|");
-          resourceList.add(createDropdownResource(request, name, required, fieldLabel, hide, values, itemType, hideOption));
-          break;
+        DIALOG_TEMPLATES.put(hostName, template);
       }
     }
-  }
-
-  private ValueMapResource createTextFieldResource(SlingHttpServletRequest request, String name, String value, String emptyText, boolean required,
-      String fieldLabel, boolean hide, String itemType, boolean hideOption)
-  {
-    String resourceType = "granite/ui/components/coral/foundation/form/textfield";
-    ValueMap vm = new ValueMapDecorator(new HashMap<String, Object>());
-    vm.put("name", name);
-    vm.put("emptyText", emptyText);
-    vm.put("value", value);
-    vm.put("required", required);
-    vm.put("renderHidden", hide);
-    vm.put("fieldLabel", fieldLabel);
-    vm.put("granite:itemtype", itemType);
-    if (hideOption)
-    {
-      vm.put("labelId", "hideOption");
-      vm.put("granite:rel", "hideOption");
-    }
-    return new ValueMapResource(request.getResourceResolver(), "", resourceType, vm);
-  }
-
-  private ValueMapResource createCheckBoxResource(SlingHttpServletRequest request, String name, String value, String text, String fieldLabel,
-      boolean hide, String itemType, boolean hideOption)
-  {
-    String resourceType = "granite/ui/components/coral/foundation/form/checkbox";
-    ValueMap vm = new ValueMapDecorator(new HashMap<String, Object>());
-    vm.put("name", name);
-    vm.put("value", value);
-    vm.put("text", text);
-    vm.put("renderHidden", hide);
-    vm.put("fieldLabel", fieldLabel);
-    vm.put("granite:itemtype", itemType);
-    if (hideOption)
-    {
-      vm.put("labelId", "hideOption");
-    }
-    return new ValueMapResource(request.getResourceResolver(), "", resourceType, vm);
-  }
-
-  private ValueMapResource createColorPickerResource(SlingHttpServletRequest request, String name, String value, String emptyText, boolean required,
-      String fieldLabel, boolean hide, String itemType, boolean hideOption)
-  {
-    String resourceType = "granite/ui/components/coral/foundation/form/colorfield";
-    ValueMap vm = new ValueMapDecorator(new HashMap<String, Object>());
-    vm.put("name", name);
-    vm.put("value", value);
-    vm.put("emptyText", emptyText);
-    vm.put("required", required);
-    vm.put("renderHidden", hide);
-    vm.put("fieldLabel", fieldLabel);
-    vm.put("granite:itemtype", itemType);
-    if (hideOption)
-    {
-      vm.put("labelId", "hideOption");
-    }
-    return new ValueMapResource(request.getResourceResolver(), "", resourceType, vm);
-  }
-
-  private Resource createDropdownResource(SlingHttpServletRequest request, String name, boolean required, String fieldLabel, boolean hide,
-      String[] values, String itemType, boolean hideOption)
-  {
-    String resourceType = "granite/ui/components/coral/foundation/form/select";
-    ValueMap vm = new ValueMapDecorator(new HashMap<String, Object>());
-
-    Resource res = new ValueMapResource(request.getResourceResolver(), "", resourceType, vm);
-
-    Resource wrapper = new ValueMapResourceWrapper(res, resourceType)
-    {
-      public Resource getChild(String relPath)
-      {
-        if ("items".equals(relPath))
-        {
-          Resource dataWrapper = new ValueMapResourceWrapper(res, JcrConstants.NT_UNSTRUCTURED)
-          {
-            public Iterator<Resource> listChildren()
-            {
-              List<Resource> itemsResourceList = new ArrayList<Resource>();
-
-              for (String value : values)
-              {
-                ValueMap vm = new ValueMapDecorator(new HashMap<String, Object>());
-                vm.put("value", value);
-                vm.put("text", value);
-                itemsResourceList.add(new ValueMapResource(request.getResourceResolver(), "", JcrConstants.NT_UNSTRUCTURED, vm));
-              }
-
-              return itemsResourceList.iterator();
-            }
-          };
-          return dataWrapper;
-        } else
-        {
-          return super.getChild(relPath);
-        }
-      }
-    };
-    ValueMap valueMap = wrapper.adaptTo(ValueMap.class);
-    if (valueMap != null)
-    {
-      valueMap.put("name", name);
-      valueMap.put("required", required);
-      valueMap.put("renderHidden", hide);
-      valueMap.put("fieldLabel", fieldLabel);
-      valueMap.put("granite:itemtype", itemType);
-      if (hideOption)
-      {
-        vm.put("labelId", "hideOption");
-      }
-    }
-    return wrapper;
-
-  }
-
-  private List<EmbeddableWidgetsConfig> getAvailableWidgets(List<EmbeddableWidgetsConfig> widgets)
-  {
-    return widgets.stream().filter(widget -> widget.getType().equals("widget")).collect(Collectors.toList());
+    return template.fieldsByWidget;
   }
 }
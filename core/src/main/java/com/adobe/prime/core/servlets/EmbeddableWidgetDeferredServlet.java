@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.servlets;
+
+import static java.lang.System.currentTimeMillis;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.entity.EmbeddableWidgetsConfig;
+import com.adobe.prime.core.services.EmbeddableWidgetConfigurationService;
+import com.adobe.prime.core.services.EmbeddableWidgetService;
+import com.adobe.prime.core.utils.EmbeddableWidgetConfigUtils;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.google.gson.JsonObject;
+
+/**
+ * Serves the parts of a widget render which did not fit into the render latency budget, so that
+ * the browser can complete the widget without holding up the page request. Calls to Learning
+ * Manager share the deferred budget of {@link EmbeddableWidgetService#getDeferredBudget()}.
+ */
+@Component(service = Servlet.class, property = {"sling.servlet.methods=GET", "sling.servlet.resourceTypes=" + Constants.WIDGET_RESOURCE_TYPE,
+    "sling.servlet.selectors=" + Constants.DEFERRED_RENDER_SELECTOR, "sling.servlet.extensions=json"})
+public class EmbeddableWidgetDeferredServlet extends SlingSafeMethodsServlet
+{
+
+  private static final long serialVersionUID = 3926107455283947614L;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddableWidgetDeferredServlet.class);
+
+  @Reference
+  private transient EmbeddableWidgetService widgetService;
+
+  @Reference
+  private transient EmbeddableWidgetConfigurationService widgetConfigService;
+
+  @Override
+  protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException
+  {
+    Resource resource = request.getResource();
+    PageManager pageManager = request.getResourceResolver().adaptTo(PageManager.class);
+    Page currentPage = pageManager != null ? pageManager.getContainingPage(resource) : null;
+    if (currentPage == null)
+    {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    long deadline = currentTimeMillis() + widgetService.getDeferredBudget();
+    Map<String, Object> adminConfigs = widgetConfigService.getAvailaleAdminConfiguration(resource);
+    String hostName = adminConfigs.get(Constants.AdminConfigurations.ADMIN_CONFIG_HOST_NAME) != null
+        ? adminConfigs.get(Constants.AdminConfigurations.ADMIN_CONFIG_HOST_NAME).toString()
+        : widgetService.getDefaultHostName();
+
+    ValueMap valueMap = resource.getValueMap();
+    List<EmbeddableWidgetsConfig> widgets = EmbeddableWidgetConfigUtils.getEmbeddableWidgetsConfig(hostName, deadline - currentTimeMillis());
+    List<EmbeddableWidgetsConfig> availableWidgetsList = EmbeddableWidgetConfigUtils.getAvailableWidgets(widgets);
+    EmbeddableWidgetsConfig selectedWidgetConfig =
+        EmbeddableWidgetConfigUtils.getSelectedWidget(availableWidgetsList, valueMap.get(Constants.SELECTED_WIDGET_REF, String.class));
+
+    String accessToken = null;
+    if (selectedWidgetConfig == null || EmbeddableWidgetConfigUtils.isAuthenticationRequired(hostName, selectedWidgetConfig.getWidgetRef()))
+    {
+      accessToken = widgetService.getAccessTokenOfUser(request, currentPage, deadline);
+    }
+
+    JsonObject deferredObject = new JsonObject();
+    deferredObject.addProperty("accessToken", accessToken != null ? accessToken : "");
+    if (selectedWidgetConfig != null)
+    {
+      deferredObject.addProperty("ref", selectedWidgetConfig.getRef());
+      deferredObject.addProperty("widgetRef", selectedWidgetConfig.getWidgetRef());
+    } else
+    {
+      LOGGER.error("EmbeddableWidgetDeferredServlet doGet:: Widget catalog unavailable for host {}", hostName);
+    }
+
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "private, no-store");
+    response.setHeader("Dispatcher", "no-cache");
+    response.getWriter().write(deferredObject.toString());
+  }
+}
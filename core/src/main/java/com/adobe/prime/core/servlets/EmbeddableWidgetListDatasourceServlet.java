@@ -12,10 +12,11 @@
 package com.adobe.prime.core.servlets;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.Servlet;
 
@@ -27,7 +28,7 @@ import org.apache.felix.scr.annotations.Service;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.resource.Resource;
-import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.servlets.HttpConstants;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
 import org.apache.sling.api.wrappers.ValueMapDecorator;
@@ -40,6 +41,7 @@ import com.adobe.prime.core.entity.EmbeddableWidgetsConfig;
 import com.adobe.prime.core.services.EmbeddableWidgetConfigurationService;
 import com.adobe.prime.core.services.EmbeddableWidgetService;
 import com.adobe.prime.core.utils.EmbeddableWidgetConfigUtils;
+import com.day.cq.commons.jcr.JcrConstants;
 
 @Component(label = "Adobe Learning Manager Widget List Datasource Servlet", description = "Adobe Learning Manager Widget List Datasource Servlet")
 @Properties({@Property(name = "sling.servlet.resourceTypes", value = {EmbeddableWidgetListDatasourceServlet.RESOURCE_TYPE}, propertyPrivate = true),
@@ -59,16 +61,33 @@ public class EmbeddableWidgetListDatasourceServlet extends SlingAllMethodsServle
 
   final static String RESOURCE_TYPE = "cpPrime/widgets/datasource/widgetsSelectDatasource";
 
+  private static final ConcurrentMap<String, WidgetList> WIDGET_LISTS = new ConcurrentHashMap<>();
+
+  /**
+   * Dropdown item values of the available widgets of one catalog version. The values are read-only
+   * and shared by all requests, which only wrap them in resources of their own resolver.
+   */
+  private static final class WidgetList
+  {
+    private final long catalogVersion;
+    private final List<Map<String, Object>> items;
+
+    private WidgetList(long catalogVersion, List<Map<String, Object>> items)
+    {
+      this.catalogVersion = catalogVersion;
+      this.items = Collections.unmodifiableList(items);
+    }
+  }
+
   @Override
   protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
   {
 
-    String requestSuffix = "";
     List<Resource> resourceList = new ArrayList<>();
+    String requestSuffix = request.getRequestPathInfo().getSuffix();
 
-    if (null != request.getRequestPathInfo().getSuffix())
+    if (null != requestSuffix)
     {
-      requestSuffix = request.getRequestPathInfo().getSuffix();
       Resource resource = request.getResourceResolver().getResource(requestSuffix);
 
       if (resource != null)
@@ -77,16 +96,10 @@ public class EmbeddableWidgetListDatasourceServlet extends SlingAllMethodsServle
         String hostName = adminConfigs.get(Constants.AdminConfigurations.ADMIN_CONFIG_HOST_NAME) != null
             ? adminConfigs.get(Constants.AdminConfigurations.ADMIN_CONFIG_HOST_NAME).toString()
             : widgetService.getDefaultHostName();
-        List<EmbeddableWidgetsConfig> widgets = EmbeddableWidgetConfigUtils.getEmbeddableWidgetsConfig(hostName);
-        List<EmbeddableWidgetsConfig> availableWidgetsList = getAvailableWidgets(widgets);
-
-        for (EmbeddableWidgetsConfig widgetConfig : availableWidgetsList)
+        ResourceResolver resolver = request.getResourceResolver();
+        for (Map<String, Object> item : getWidgetItems(hostName))
         {
-          ValueMap vm = new ValueMapDecorator(new HashMap<String, Object>());
-          String value = widgetConfig.getWidgetRef();
-          vm.put("value", value);
-          vm.put("text", widgetConfig.getName());
-          resourceList.add(new ValueMapResource(request.getResourceResolver(), "", "", vm));
+          resourceList.add(new ValueMapResource(resolver, "", JcrConstants.NT_UNSTRUCTURED, new ValueMapDecorator(item)));
         }
       }
     }
@@ -94,8 +107,27 @@ public class EmbeddableWidgetListDatasourceServlet extends SlingAllMethodsServle
     request.setAttribute(DataSource.class.getName(), new SimpleDataSource(resourceList.iterator()));
   }
 
-  private List<EmbeddableWidgetsConfig> getAvailableWidgets(List<EmbeddableWidgetsConfig> widgets)
+  /**
+   * Widget dropdown item values of the host, built once per catalog version.
+   */
+  static List<Map<String, Object>> getWidgetItems(String hostName)
   {
-    return widgets.stream().filter(widget -> widget.getType().equals("widget")).collect(Collectors.toList());
+    List<EmbeddableWidgetsConfig> widgets = EmbeddableWidgetConfigUtils.getEmbeddableWidgetsConfig(hostName);
+    long catalogVersion = EmbeddableWidgetConfigUtils.getCatalogVersion(hostName);
+    WidgetList widgetList = WIDGET_LISTS.get(hostName);
+    if (widgetList == null || widgetList.catalogVersion != catalogVersion)
+    {
+      List<Map<String, Object>> items = new ArrayList<>();
+      for (EmbeddableWidgetsConfig widgetConfig : EmbeddableWidgetConfigUtils.getAvailableWidgets(widgets))
+      {
+        items.add(DialogFieldFactory.getItem(widgetConfig.getWidgetRef(), widgetConfig.getName()));
+      }
+      widgetList = new WidgetList(catalogVersion, items);
+      if (catalogVersion >= 0)
+      {
+        WIDGET_LISTS.put(hostName, widgetList);
+      }
+    }
+    return widgetList.items;
   }
 }
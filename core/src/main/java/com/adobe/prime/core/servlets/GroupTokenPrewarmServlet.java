@@ -0,0 +1,212 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.servlets;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.api.security.user.Authorizable;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.jcr.base.util.AccessControlUtil;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.jobs.GroupTokenPrewarmJobExecutor;
+import com.adobe.prime.core.services.EmbeddableWidgetConfigurationService;
+import com.adobe.prime.core.services.SharedTokenCache;
+import com.day.cq.wcm.api.PageManager;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Starts a token pre-warm job for the members of a group (POST) and reports its progress (GET).
+ * The configuration is the one a widget on {@code pagePath} would use; only users who may modify
+ * that configuration can start the job or read its progress.
+ * <p>
+ * The servlet belongs to the configuration console, so the job runs on author. Tokens reach the
+ * publish instances only through a remote {@link SharedTokenCache}, which publish renders read on a
+ * local miss. Without one, pre-warming could not help publish traffic and is refused with
+ * {@code 409 Conflict}.
+ */
+@Component(service = Servlet.class, property = {"sling.servlet.methods=GET", "sling.servlet.methods=POST",
+    "sling.servlet.resourceTypes=" + GroupTokenPrewarmServlet.RESOURCE_TYPE, "sling.servlet.extensions=json"})
+public class GroupTokenPrewarmServlet extends SlingAllMethodsServlet
+{
+
+  private static final long serialVersionUID = 7281934603384012265L;
+
+  final static String RESOURCE_TYPE = "cpWidget/prewarmGroupTokens";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(GroupTokenPrewarmServlet.class);
+
+  @Reference
+  private transient JobManager jobManager;
+
+  @Reference
+  private transient EmbeddableWidgetConfigurationService widgetConfigService;
+
+  @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+  private volatile SharedTokenCache sharedTokenCache;
+
+  @Override
+  protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException
+  {
+    String groupId = request.getParameter("group");
+    String pagePath = request.getParameter("pagePath");
+    if (StringUtils.isEmpty(groupId) || StringUtils.isEmpty(pagePath))
+    {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+    SharedTokenCache sharedCache = sharedTokenCache;
+    if (sharedCache == null || !sharedCache.isRemote())
+    {
+      LOGGER.warn("GroupTokenPrewarmServlet doPost:: No remote shared token cache configured. Refusing pre-warm of {}", groupId);
+      response.sendError(HttpServletResponse.SC_CONFLICT, "Pre-warming tokens requires a remote shared token cache");
+      return;
+    }
+
+    ResourceResolver resolver = request.getResourceResolver();
+    try
+    {
+      int status = checkConfigPermission(resolver, pagePath);
+      if (status != HttpServletResponse.SC_OK)
+      {
+        response.sendError(status);
+        return;
+      }
+
+      Authorizable group = AccessControlUtil.getUserManager(resolver.adaptTo(Session.class)).getAuthorizable(groupId);
+      if (group == null || !group.isGroup())
+      {
+        response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        return;
+      }
+    } catch (RepositoryException re)
+    {
+      LOGGER.error("GroupTokenPrewarmServlet doPost:: Exception in validating pre-warm of {}", groupId, re);
+      response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      return;
+    }
+
+    Job job = jobManager.addJob(GroupTokenPrewarmJobExecutor.TOPIC, GroupTokenPrewarmJobExecutor.getJobProperties(groupId, pagePath));
+    if (job == null)
+    {
+      LOGGER.error("GroupTokenPrewarmServlet doPost:: Unable to queue token pre-warm of {}", groupId);
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+    LOGGER.info("GroupTokenPrewarmServlet doPost:: Queued token pre-warm of {} for {} as {}", groupId, pagePath, job.getId());
+
+    JsonObject jobObject = new JsonObject();
+    jobObject.addProperty("jobId", job.getId());
+    response.setStatus(HttpServletResponse.SC_ACCEPTED);
+    writeJson(response, jobObject);
+  }
+
+  @Override
+  protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException
+  {
+    String jobId = request.getParameter("jobId");
+    Job job = StringUtils.isEmpty(jobId) ? null : jobManager.getJobById(jobId);
+    if (job == null || !GroupTokenPrewarmJobExecutor.TOPIC.equals(job.getTopic()))
+    {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    try
+    {
+      String pagePath = job.getProperty(GroupTokenPrewarmJobExecutor.PROPERTY_PAGE_PATH, String.class);
+      int status = checkConfigPermission(request.getResourceResolver(), pagePath);
+      if (status != HttpServletResponse.SC_OK)
+      {
+        response.sendError(status == HttpServletResponse.SC_FORBIDDEN ? status : HttpServletResponse.SC_NOT_FOUND);
+        return;
+      }
+    } catch (RepositoryException re)
+    {
+      LOGGER.error("GroupTokenPrewarmServlet doGet:: Exception in checking permissions for {}", jobId, re);
+      response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      return;
+    }
+
+    JsonObject jobObject = new JsonObject();
+    jobObject.addProperty("jobId", job.getId());
+    jobObject.addProperty("state", job.getJobState().name());
+    jobObject.addProperty("total", job.getProgressStepCount());
+    jobObject.addProperty("processed", job.getFinishedProgressStep());
+    jobObject.addProperty("message", job.getResultMessage());
+    JsonArray log = new JsonArray();
+    if (job.getProgressLog() != null)
+    {
+      for (String entry : job.getProgressLog())
+      {
+        log.add(entry);
+      }
+    }
+    jobObject.add("log", log);
+    writeJson(response, jobObject);
+  }
+
+  /**
+   * Whether the user may modify the configuration which widgets on the page use.
+   *
+   * @return {@code SC_OK} when permitted, otherwise the status to answer with.
+   */
+  private int checkConfigPermission(ResourceResolver resolver, String pagePath) throws RepositoryException
+  {
+    Resource pageRsc = StringUtils.isEmpty(pagePath) ? null : resolver.getResource(pagePath);
+    if (pageRsc == null)
+    {
+      return HttpServletResponse.SC_NOT_FOUND;
+    }
+    PageManager pageManager = resolver.adaptTo(PageManager.class);
+    if (pageManager == null || pageManager.getContainingPage(pageRsc) == null)
+    {
+      return HttpServletResponse.SC_BAD_REQUEST;
+    }
+
+    Session session = resolver.adaptTo(Session.class);
+    Map<String, Object> adminConfigs = widgetConfigService.getAvailaleAdminConfiguration(pageRsc);
+    Object configPath = adminConfigs.get(Constants.AdminConfigurations.ADMIN_CONFIG_PATH);
+    if (session == null || configPath == null || !session.hasPermission(configPath.toString(), Session.ACTION_SET_PROPERTY))
+    {
+      return HttpServletResponse.SC_FORBIDDEN;
+    }
+    return HttpServletResponse.SC_OK;
+  }
+
+  private void writeJson(SlingHttpServletResponse response, JsonObject jsonObject) throws IOException
+  {
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "private, no-store");
+    response.getWriter().write(jsonObject.toString());
+  }
+}
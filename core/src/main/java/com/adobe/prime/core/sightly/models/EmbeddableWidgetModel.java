@@ -11,22 +11,25 @@
 
 package com.adobe.prime.core.sightly.models;
 
+import static java.lang.System.currentTimeMillis;
+
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Optional;
-import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
 import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.injectorspecific.InjectionStrategy;
 import org.apache.sling.models.annotations.injectorspecific.ScriptVariable;
 import org.apache.sling.models.annotations.injectorspecific.Self;
+import org.apache.sling.models.annotations.injectorspecific.SlingObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +39,7 @@ import com.adobe.prime.core.services.EmbeddableWidgetConfigurationService;
 import com.adobe.prime.core.services.EmbeddableWidgetService;
 import com.adobe.prime.core.utils.EmbeddableWidgetConfigUtils;
 import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.WCMMode;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
@@ -56,6 +60,9 @@ public class EmbeddableWidgetModel
   @Self
   private SlingHttpServletRequest request;
 
+  @SlingObject(injectionStrategy = InjectionStrategy.OPTIONAL)
+  private SlingHttpServletResponse response;
+
   private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddableWidgetModel.class);
 
   private Resource resource;
@@ -64,6 +71,8 @@ public class EmbeddableWidgetModel
   private String widgetConfigs = "";
   private String widgetSrcUrl = "";
   private String widgetCommunicatorUrl = "";
+  private String deferredUrl = "";
+  private boolean authorMode;
   private ValueMap properties;
 
   public EmbeddableWidgetModel(final SlingHttpServletRequest request)
@@ -75,7 +84,10 @@ public class EmbeddableWidgetModel
   {
     resource = request.getResource();
     properties = resource.getValueMap();
-    String accessToken = widgetService.getAccessTokenOfUser(request, currentPage);
+    authorMode = WCMMode.fromRequest(request) != WCMMode.DISABLED;
+    long deadline = currentTimeMillis() + widgetService.getRenderBudget();
+    boolean tokenDeferred = false;
+
     Map<String, Object> adminConfigs = widgetConfigService.getAvailaleAdminConfiguration(resource);
     String hostName = adminConfigs.get(Constants.AdminConfigurations.ADMIN_CONFIG_HOST_NAME) != null
         ? adminConfigs.get(Constants.AdminConfigurations.ADMIN_CONFIG_HOST_NAME).toString()
@@ -84,32 +96,57 @@ public class EmbeddableWidgetModel
     LOGGER.debug("EmbeddableWidgetModel Init:: currentPage {} hostName {} host {} ", currentPage.getPath(), hostName,
         widgetService.getDefaultHostName());
     ValueMap map = resource.getValueMap();
+    EmbeddableWidgetsConfig selectedWidgetConfig = null;
 
     if (map != null)
     {
-      List<EmbeddableWidgetsConfig> widgets = EmbeddableWidgetConfigUtils.getEmbeddableWidgetsConfig(hostName);
+      List<EmbeddableWidgetsConfig> widgets = EmbeddableWidgetConfigUtils.getEmbeddableWidgetsConfig(hostName, deadline - currentTimeMillis());
       LOGGER.trace("EmbeddableWidgetModel Init:: Widgets from CP {}", new Gson().toJson(widgets));
-      List<EmbeddableWidgetsConfig> availableWidgetsList = getAvailableWidgets(widgets);
+      List<EmbeddableWidgetsConfig> availableWidgetsList = EmbeddableWidgetConfigUtils.getAvailableWidgets(widgets);
       selectedWidgetRef = map.get(Constants.SELECTED_WIDGET_REF) != null ? map.get(Constants.SELECTED_WIDGET_REF).toString() : null;
-      if (selectedWidgetRef == null)
+      if (selectedWidgetRef == null && !availableWidgetsList.isEmpty())
       {
         selectedWidgetRef = availableWidgetsList.get(0).getWidgetRef();
+      } else if (selectedWidgetRef == null)
+      {
+        selectedWidgetRef = "";
       }
-      Optional<EmbeddableWidgetsConfig> opSelectedWidgetConfig =
-          availableWidgetsList.stream().filter(widget -> widget.getWidgetRef().equals(selectedWidgetRef)).findFirst();
-      EmbeddableWidgetsConfig selectedWidgetConfig;
-      if (opSelectedWidgetConfig.isPresent())
+      selectedWidgetConfig = EmbeddableWidgetConfigUtils.getSelectedWidget(availableWidgetsList, selectedWidgetRef);
+      if (selectedWidgetConfig != null)
       {
-        selectedWidgetConfig = opSelectedWidgetConfig.get();
+        selectedRef = selectedWidgetConfig.getRef();
+        widgetSrcUrl = Constants.CPUrl.WIDGET_SRC_URL.replace("{hostName}", hostName).replace("{widgetRef}", selectedWidgetConfig.getRef());
       } else
       {
-        selectedWidgetConfig = availableWidgetsList.get(0);
+        LOGGER.warn("EmbeddableWidgetModel Init:: Widget catalog unavailable for host {}. Deferring widget resolution to the client.", hostName);
+        tokenDeferred = true;
       }
-      selectedRef = selectedWidgetConfig.getRef();
-      widgetSrcUrl = Constants.CPUrl.WIDGET_SRC_URL.replace("{hostName}", hostName).replace("{widgetRef}", selectedWidgetConfig.getRef());
       widgetCommunicatorUrl = Constants.CPUrl.WIDGET_COMMUNICATOR_URL.replace("{hostName}", hostName);
     }
 
+    String accessToken = "";
+    String resolvedWidgetRef = selectedWidgetConfig != null ? selectedWidgetConfig.getWidgetRef() : selectedWidgetRef;
+    if (!authorMode && widgetService.isTokenRequired(request) && EmbeddableWidgetConfigUtils.isAuthenticationRequired(hostName, resolvedWidgetRef))
+    {
+      accessToken = widgetService.getAccessTokenOfUser(request, currentPage, deadline);
+      if (accessToken == null)
+      {
+        accessToken = "";
+      }
+      // The render carries the user's token; anonymous renders are left cacheable by the Dispatcher
+      if (response != null)
+      {
+        response.setHeader("Dispatcher", "no-cache");
+        response.setHeader("Cache-Control", "private, no-store");
+      }
+      tokenDeferred = tokenDeferred || (accessToken.isEmpty() && currentTimeMillis() >= deadline);
+    }
+
+    if (tokenDeferred && !authorMode)
+    {
+      deferredUrl = request.getResourceResolver().map(request, resource.getPath() + "." + Constants.DEFERRED_RENDER_SELECTOR + ".json");
+    }
+
     this.widgetConfigs = getWidgetConfig(map, selectedWidgetRef, accessToken);
   }
 
@@ -178,7 +215,7 @@ public class EmbeddableWidgetModel
 
   public String getRunMode()
   {
-    return Constants.RUNMODE_NON_AUTHOR;
+    return authorMode ? Constants.RUNMODE_AUTHOR : Constants.RUNMODE_NON_AUTHOR;
   }
 
   public String getWidgetCommunicatorUrl()
@@ -186,8 +223,8 @@ public class EmbeddableWidgetModel
     return widgetCommunicatorUrl;
   }
 
-  private List<EmbeddableWidgetsConfig> getAvailableWidgets(List<EmbeddableWidgetsConfig> widgets)
+  public String getDeferredUrl()
   {
-    return widgets.stream().filter(widget -> widget.getType().equals("widget")).collect(Collectors.toList());
+    return deferredUrl;
   }
 }
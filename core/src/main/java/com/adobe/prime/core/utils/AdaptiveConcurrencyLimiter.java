@@ -0,0 +1,108 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.utils;
+
+import static java.lang.System.currentTimeMillis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * AIMD concurrency limit for one Learning Manager host. The limit grows by {@code 1/limit} for
+ * every fast, successful call made while the host is busy and is halved whenever a call fails or
+ * is slower than {@code latencyThresholdMs}. Callers above the limit wait at most the given time
+ * and are then rejected, so a slow host cannot hold on to more than its share of request threads.
+ */
+public class AdaptiveConcurrencyLimiter
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+  private static final double BACKOFF_RATIO = 0.5;
+
+  private final String name;
+  private final int minLimit;
+  private final int maxLimit;
+  private final long latencyThresholdMs;
+
+  private double limit;
+  private int inFlight;
+
+  public AdaptiveConcurrencyLimiter(String name, int initialLimit, int maxLimit, long latencyThresholdMs)
+  {
+    this.name = name;
+    this.minLimit = 1;
+    this.maxLimit = Math.max(minLimit, maxLimit);
+    this.latencyThresholdMs = latencyThresholdMs;
+    this.limit = Math.min(this.maxLimit, Math.max(minLimit, initialLimit));
+  }
+
+  public synchronized boolean acquire(long maxWaitMs)
+  {
+    long waitUntil = currentTimeMillis() + maxWaitMs;
+    while (inFlight >= (int) limit)
+    {
+      long remaining = waitUntil - currentTimeMillis();
+      if (remaining <= 0)
+      {
+        EmbeddableWidgetMetrics.increment("limiter." + name + ".rejected");
+        LOGGER.debug("AdaptiveConcurrencyLimiter acquire:: Rejecting call to {}. inFlight {} limit {}", name, inFlight, (int) limit);
+        return false;
+      }
+      try
+      {
+        wait(remaining);
+      } catch (InterruptedException ie)
+      {
+        Thread.currentThread().interrupt();
+        EmbeddableWidgetMetrics.increment("limiter." + name + ".rejected");
+        return false;
+      }
+    }
+    inFlight++;
+    return true;
+  }
+
+  public synchronized void release(long latencyMs, boolean success)
+  {
+    inFlight--;
+    int previousLimit = (int) limit;
+    if (!success || latencyMs > latencyThresholdMs)
+    {
+      limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+    } else if (inFlight + 1 >= previousLimit / 2)
+    {
+      limit = Math.min(maxLimit, limit + 1.0 / limit);
+    }
+    if ((int) limit != previousLimit)
+    {
+      LOGGER.debug("AdaptiveConcurrencyLimiter release:: Limit for {} changed from {} to {}", name, previousLimit, (int) limit);
+    }
+    notifyAll();
+  }
+
+  public synchronized void cancel()
+  {
+    inFlight--;
+    notifyAll();
+  }
+
+  public synchronized int getLimit()
+  {
+    return (int) limit;
+  }
+
+  public synchronized int getInFlight()
+  {
+    return inFlight;
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.utils;
+
+import static java.lang.System.currentTimeMillis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Closed/open/half-open circuit breaker for one Learning Manager host. After
+ * {@code failureThreshold} consecutive failures the circuit opens and calls are rejected without
+ * touching the network. Once {@code openDurationMs} has passed a single trial call is let through;
+ * its outcome closes or re-opens the circuit.
+ */
+public class CircuitBreaker
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  public enum State
+  {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final String name;
+  private final int failureThreshold;
+  private final long openDurationMs;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openedAt;
+  private boolean trialInFlight;
+
+  public CircuitBreaker(String name, int failureThreshold, long openDurationMs)
+  {
+    this.name = name;
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.openDurationMs = openDurationMs;
+  }
+
+  public synchronized boolean allowRequest()
+  {
+    if (state == State.OPEN)
+    {
+      if (currentTimeMillis() - openedAt < openDurationMs)
+      {
+        EmbeddableWidgetMetrics.increment("circuit." + name + ".rejected");
+        return false;
+      }
+      transitionTo(State.HALF_OPEN);
+    }
+    if (state == State.HALF_OPEN)
+    {
+      if (trialInFlight)
+      {
+        EmbeddableWidgetMetrics.increment("circuit." + name + ".rejected");
+        return false;
+      }
+      trialInFlight = true;
+    }
+    return true;
+  }
+
+  public synchronized void recordSuccess()
+  {
+    consecutiveFailures = 0;
+    trialInFlight = false;
+    if (state != State.CLOSED)
+    {
+      transitionTo(State.CLOSED);
+    }
+  }
+
+  public synchronized void recordFailure()
+  {
+    consecutiveFailures++;
+    trialInFlight = false;
+    EmbeddableWidgetMetrics.increment("circuit." + name + ".failures");
+    if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold))
+    {
+      openedAt = currentTimeMillis();
+      transitionTo(State.OPEN);
+    }
+  }
+
+  public synchronized void recordCancelled()
+  {
+    trialInFlight = false;
+  }
+
+  public synchronized State getState()
+  {
+    return state;
+  }
+
+  public String getName()
+  {
+    return name;
+  }
+
+  private void transitionTo(State newState)
+  {
+    LOGGER.warn("CircuitBreaker transitionTo:: Circuit for {} moved from {} to {} after {} consecutive failures", name, state, newState,
+        consecutiveFailures);
+    EmbeddableWidgetMetrics.increment("circuit." + name + ".transitions." + newState.name().toLowerCase());
+    state = newState;
+  }
+}
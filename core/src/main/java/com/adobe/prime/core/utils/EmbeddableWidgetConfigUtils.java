@@ -15,25 +15,30 @@ import static java.lang.System.currentTimeMillis;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import org.apache.http.ParseException;
-import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.entity.EmbeddableWidgetOptions;
 import com.adobe.prime.core.entity.EmbeddableWidgetsConfig;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 
 public final class EmbeddableWidgetConfigUtils
 {
@@ -42,58 +47,144 @@ public final class EmbeddableWidgetConfigUtils
 
   private static long UPDATE_EVERY_MILLI = 86400000;
 
-  private static long lastUpdated = 0;
-  private static String widgetsConfigResponse = "";
+  private static final String ACCESS_TOKEN_OPTION_REF = "auth.accessToken";
+
+  private static final ConcurrentMap<String, CatalogEntry> CATALOGS = new ConcurrentHashMap<>();
+  private static final AtomicLong CATALOG_VERSIONS = new AtomicLong();
+
+  private static final long DEFAULT_SKU_VALID_TTL_MS = 3600000;
+  private static final long DEFAULT_SKU_INVALID_TTL_MS = 300000;
+  private static final int DEFAULT_SKU_CACHE_ENTRIES = 1000;
+
+  private static volatile ValidationResultCache skuValidations =
+      new ValidationResultCache("skuvalidation", DEFAULT_SKU_VALID_TTL_MS, DEFAULT_SKU_INVALID_TTL_MS, DEFAULT_SKU_CACHE_ENTRIES);
+
+  private static final class CatalogEntry
+  {
+    private final List<EmbeddableWidgetsConfig> widgets;
+    private final Set<String> authWidgetRefs;
+    private final long expiresAt;
+    private final long version;
+
+    private CatalogEntry(List<EmbeddableWidgetsConfig> widgets, long expiresAt)
+    {
+      this.widgets = Collections.unmodifiableList(widgets);
+      this.authWidgetRefs = getAuthenticatedWidgetRefs(widgets);
+      this.expiresAt = expiresAt;
+      this.version = CATALOG_VERSIONS.incrementAndGet();
+    }
+  }
 
   public static List<EmbeddableWidgetsConfig> getEmbeddableWidgetsConfig(String hostName)
   {
-    String url = hostName + Constants.CPUrl.CONFIG_URL;
-    String configs = getWidgetsConfig(url);
-    LOGGER.trace("EmbeddableWidgetConfigUtils getEmbeddableWidgetsConfig:: Configs from CP {}", configs);
-    if (configs != null && configs.length() > 0)
+    return getEmbeddableWidgetsConfig(hostName, EmbeddableWidgetHttpUtils.getDefaultTimeout());
+  }
+
+  public static List<EmbeddableWidgetsConfig> getEmbeddableWidgetsConfig(String hostName, long timeoutMs)
+  {
+    CatalogEntry catalog = getCatalog(hostName, timeoutMs);
+    return catalog != null ? catalog.widgets : null;
+  }
+
+  /**
+   * Version of the cached catalog of the host, which changes whenever the catalog is fetched again.
+   * Returns {@code -1} when no catalog has been loaded.
+   */
+  public static long getCatalogVersion(String hostName)
+  {
+    CatalogEntry catalog = CATALOGS.get(hostName);
+    return catalog != null ? catalog.version : -1;
+  }
+
+  /**
+   * Whether the widget reads {@code auth.accessToken}, according to the cached catalog of the host.
+   * Answers {@code true} when that cannot be told, i.e. the catalog has not been loaded or none of
+   * its widgets declares the option.
+   */
+  public static boolean isAuthenticationRequired(String hostName, String widgetRef)
+  {
+    CatalogEntry catalog = CATALOGS.get(hostName);
+    if (catalog == null || catalog.authWidgetRefs.isEmpty())
     {
-      Gson gson = new Gson();
-      return Arrays.asList(gson.fromJson(configs, EmbeddableWidgetsConfig[].class));
+      return true;
     }
-    return null;
+    return catalog.authWidgetRefs.contains(widgetRef);
   }
-  
-  public static boolean isAccountSKUValid(String hostName, String accountId)
+
+  public static Set<String> getAuthenticatedWidgetRefs(List<EmbeddableWidgetsConfig> widgets)
   {
-	  String skuUrl = hostName + Constants.CPUrl.SKU_VALIDATION_URL.replace("{accountId}", accountId);
-	  HttpGet getCall = new HttpGet(skuUrl);
-
-	  try (CloseableHttpClient httpClient = HttpClients.createDefault(); CloseableHttpResponse response = httpClient.execute(getCall))
-	  {
-		  JsonObject configResponse =  new Gson().fromJson(EntityUtils.toString(response.getEntity()), JsonObject.class);
-		  String skuValidator = Optional.ofNullable(configResponse)
-		  		  .map(data -> data.get("data")).map(dataObj -> dataObj.getAsJsonObject())
-		  		  .map(attr -> attr.get("attributes")).map(attrObj -> attrObj.getAsJsonObject())
-		  		  .map(config -> config.get("connectorConfig")).map(configObj -> configObj.getAsString())
-		  		  .orElse("");
-		  return (skuValidator.contains("aemComponents") && skuValidator.contains("true"));
-
-	  } catch (ParseException pe)
-      {
-        LOGGER.error("ParseException while fetching widget config", pe);
-      } catch (IOException ioe)
+    Set<String> authWidgetRefs = new HashSet<>();
+    for (EmbeddableWidgetsConfig widget : getAvailableWidgets(widgets))
+    {
+      List<EmbeddableWidgetOptions> options = widget.getOptions();
+      if (options.stream().anyMatch(option -> ACCESS_TOKEN_OPTION_REF.equals(option.getRef())))
       {
-        LOGGER.error("IOException while fetching widget config", ioe);
+        authWidgetRefs.add(widget.getWidgetRef());
       }
-      return false;
+    }
+    return Collections.unmodifiableSet(authWidgetRefs);
+  }
+  
+  /**
+   * Replaces the SKU validation cache. Results already cached are dropped.
+   */
+  public static void configureSkuValidationCache(long positiveTtlMs, long negativeTtlMs, int maxEntries)
+  {
+    skuValidations = new ValidationResultCache("skuvalidation", positiveTtlMs, negativeTtlMs, maxEntries);
   }
 
-  public static EmbeddableWidgetsConfig getGeneralSettingsConfig(String hostName)
+  /**
+   * Whether the account may use the AEM components. Answers are cached per host and account, a
+   * connector config without {@code aemComponents} enabled being cached as invalid for the
+   * negative TTL. When Learning Manager cannot be reached or its answer cannot be parsed, the
+   * account is reported invalid without caching that answer.
+   */
+  public static boolean isAccountSKUValid(String hostName, String accountId)
   {
-    List<EmbeddableWidgetsConfig> widgetsConfig = null;
-    String url = hostName + Constants.CPUrl.CONFIG_URL;
+    if (hostName == null || accountId == null || accountId.isEmpty())
+    {
+      return false;
+    }
+    ValidationResultCache validations = skuValidations;
+    String key = hostName + "|" + accountId;
+    Boolean valid = validations.get(key);
+    if (valid != null)
+    {
+      return valid;
+    }
 
-    String configs = getWidgetsConfig(url);
-    if (configs != null && configs.length() > 0)
+    String skuUrl = hostName + Constants.CPUrl.SKU_VALIDATION_URL.replace("{accountId}", accountId);
+    HttpGet getCall = new HttpGet(skuUrl);
+    try
+    {
+      String response = EmbeddableWidgetHttpUtils.execute(getCall);
+      if (response == null)
+      {
+        LOGGER.warn("EmbeddableWidgetConfigUtils isAccountSKUValid:: No response from {} for account {}", hostName, accountId);
+        return false;
+      }
+      JsonObject configResponse = new Gson().fromJson(response, JsonObject.class);
+      String skuValidator = Optional.ofNullable(configResponse)
+          .map(data -> data.get("data")).map(dataObj -> dataObj.getAsJsonObject())
+          .map(attr -> attr.get("attributes")).map(attrObj -> attrObj.getAsJsonObject())
+          .map(config -> config.get("connectorConfig")).map(configObj -> configObj.getAsString())
+          .orElse("");
+      valid = skuValidator.contains("aemComponents") && skuValidator.contains("true");
+      validations.put(key, valid);
+      return valid;
+    } catch (ParseException | JsonParseException | IllegalStateException pe)
+    {
+      LOGGER.error("ParseException while validating account SKU", pe);
+    } catch (IOException ioe)
     {
-      Gson gson = new Gson();
-      widgetsConfig = Arrays.asList(gson.fromJson(configs, EmbeddableWidgetsConfig[].class));
+      LOGGER.error("IOException while validating account SKU", ioe);
     }
+    return false;
+  }
+
+  public static EmbeddableWidgetsConfig getGeneralSettingsConfig(String hostName)
+  {
+    List<EmbeddableWidgetsConfig> widgetsConfig = getEmbeddableWidgetsConfig(hostName);
 
     if (widgetsConfig != null && !widgetsConfig.isEmpty())
     {
@@ -105,6 +196,24 @@ public final class EmbeddableWidgetConfigUtils
     return null;
   }
 
+  public static List<EmbeddableWidgetsConfig> getAvailableWidgets(List<EmbeddableWidgetsConfig> widgets)
+  {
+    if (widgets == null)
+    {
+      return Collections.emptyList();
+    }
+    return widgets.stream().filter(widget -> "widget".equals(widget.getType())).collect(Collectors.toList());
+  }
+
+  public static EmbeddableWidgetsConfig getSelectedWidget(List<EmbeddableWidgetsConfig> availableWidgets, String selectedWidgetRef)
+  {
+    if (availableWidgets.isEmpty())
+    {
+      return null;
+    }
+    return availableWidgets.stream().filter(widget -> widget.getWidgetRef().equals(selectedWidgetRef)).findFirst().orElse(availableWidgets.get(0));
+  }
+
   public static JsonObject getWidgetConfig(final Map<String, Object> configMap)
   {
     JsonObject widgetConfigObject = new JsonObject();
@@ -167,38 +276,48 @@ public final class EmbeddableWidgetConfigUtils
     }
   }
 
-  private static String getWidgetsConfig(String url)
+  private static CatalogEntry getCatalog(String hostName, long timeoutMs)
   {
+    CatalogEntry catalog = CATALOGS.get(hostName);
     long currentTime = currentTimeMillis();
-    LOGGER.trace("EmbeddableWidgetConfigUtils getWidgetsConfig:: lastUpdated {} currentTime {} ", lastUpdated, currentTime);
-    if (currentTime > lastUpdated)
+    LOGGER.trace("EmbeddableWidgetConfigUtils getCatalog:: hostName {} expiresAt {} currentTime {} ", hostName,
+        catalog != null ? catalog.expiresAt : 0, currentTime);
+    if ((catalog == null || currentTime > catalog.expiresAt) && timeoutMs > 0)
     {
-      HttpGet getCall = new HttpGet(url);
-
-      try (CloseableHttpClient httpClient = HttpClients.createDefault(); CloseableHttpResponse response = httpClient.execute(getCall))
-      {
-        String configResponse = EntityUtils.toString(response.getEntity());
-        setLastUpdated(currentTime + UPDATE_EVERY_MILLI);
-        setResponse(configResponse);
-        return configResponse;
-      } catch (ParseException pe)
+      String configs = getWidgetsConfig(hostName + Constants.CPUrl.CONFIG_URL, timeoutMs);
+      LOGGER.trace("EmbeddableWidgetConfigUtils getCatalog:: Configs from CP {}", configs);
+      if (configs != null && configs.length() > 0)
       {
-        LOGGER.error("ParseException while fetching widget config", pe);
-      } catch (IOException ioe)
-      {
-        LOGGER.error("IOException while fetching widget config", ioe);
+        try
+        {
+          EmbeddableWidgetsConfig[] widgets = new Gson().fromJson(configs, EmbeddableWidgetsConfig[].class);
+          if (widgets != null)
+          {
+            catalog = new CatalogEntry(Arrays.asList(widgets), currentTime + UPDATE_EVERY_MILLI);
+            CATALOGS.put(hostName, catalog);
+          }
+        } catch (JsonParseException jpe)
+        {
+          LOGGER.error("EmbeddableWidgetConfigUtils getCatalog:: Unparseable widget config from {}. Keeping the cached catalog.", hostName, jpe);
+        }
       }
     }
-    return widgetsConfigResponse;
+    return catalog;
   }
 
-  private static void setLastUpdated(long timestamp)
+  private static String getWidgetsConfig(String url, long timeoutMs)
   {
-    lastUpdated = timestamp;
-  }
-
-  private static void setResponse(String response)
-  {
-    widgetsConfigResponse = response;
+    HttpGet getCall = new HttpGet(url);
+    try
+    {
+      return EmbeddableWidgetHttpUtils.execute(getCall, timeoutMs);
+    } catch (ParseException pe)
+    {
+      LOGGER.error("ParseException while fetching widget config", pe);
+    } catch (IOException ioe)
+    {
+      LOGGER.error("IOException while fetching widget config", ioe);
+    }
+    return null;
   }
 }
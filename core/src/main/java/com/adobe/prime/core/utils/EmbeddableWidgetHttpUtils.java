@@ -0,0 +1,213 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.utils;
+
+import static java.lang.System.currentTimeMillis;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.ParseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes outbound calls to Learning Manager with a hard deadline. Socket timeouts only bound a
+ * single read, so a request which has not completed by its deadline is aborted as a whole. Every
+ * call passes through the {@link AdaptiveConcurrencyLimiter} and the {@link CircuitBreaker} of its
+ * target host; when the limiter rejects the call or the circuit is open,
+ * {@link #execute(HttpRequestBase, long)} returns {@code null} without touching the network. A
+ * server error is counted against the host and also answered with {@code null}, so callers fall
+ * back as they do for an unreachable host instead of parsing the error body. A request aborted by
+ * its caller before the deadline is not counted against the host.
+ */
+public final class EmbeddableWidgetHttpUtils
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddableWidgetHttpUtils.class);
+
+  private static final int DEFAULT_TIMEOUT_MS = 10000;
+  private static final int DEFAULT_CIRCUIT_FAILURE_THRESHOLD = 5;
+  private static final long DEFAULT_CIRCUIT_OPEN_DURATION_MS = 30000;
+
+  private static final int DEFAULT_LIMITER_INITIAL_LIMIT = 10;
+  private static final int DEFAULT_LIMITER_MAX_LIMIT = 50;
+  private static final long DEFAULT_LIMITER_LATENCY_THRESHOLD_MS = 2000;
+  private static final long DEFAULT_LIMITER_QUEUE_TIMEOUT_MS = 100;
+
+  private static final ConcurrentMap<String, CircuitBreaker> CIRCUIT_BREAKERS = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, AdaptiveConcurrencyLimiter> CONCURRENCY_LIMITERS = new ConcurrentHashMap<>();
+
+  private static volatile int defaultTimeout = DEFAULT_TIMEOUT_MS;
+  private static volatile int circuitFailureThreshold = DEFAULT_CIRCUIT_FAILURE_THRESHOLD;
+  private static volatile long circuitOpenDuration = DEFAULT_CIRCUIT_OPEN_DURATION_MS;
+  private static volatile int limiterInitialLimit = DEFAULT_LIMITER_INITIAL_LIMIT;
+  private static volatile int limiterMaxLimit = DEFAULT_LIMITER_MAX_LIMIT;
+  private static volatile long limiterLatencyThreshold = DEFAULT_LIMITER_LATENCY_THRESHOLD_MS;
+  private static volatile long limiterQueueTimeout = DEFAULT_LIMITER_QUEUE_TIMEOUT_MS;
+  private static ScheduledExecutorService deadlineExecutor;
+
+  private EmbeddableWidgetHttpUtils()
+  {}
+
+  public static int getDefaultTimeout()
+  {
+    return defaultTimeout;
+  }
+
+  public static void setDefaultTimeout(int timeoutMs)
+  {
+    defaultTimeout = timeoutMs > 0 ? timeoutMs : DEFAULT_TIMEOUT_MS;
+  }
+
+  public static void configureCircuitBreaker(int failureThreshold, long openDurationMs)
+  {
+    circuitFailureThreshold = failureThreshold > 0 ? failureThreshold : DEFAULT_CIRCUIT_FAILURE_THRESHOLD;
+    circuitOpenDuration = openDurationMs > 0 ? openDurationMs : DEFAULT_CIRCUIT_OPEN_DURATION_MS;
+    for (String host : CIRCUIT_BREAKERS.keySet())
+    {
+      EmbeddableWidgetMetrics.unregisterGauge("circuit." + host + ".state");
+    }
+    CIRCUIT_BREAKERS.clear();
+  }
+
+  public static CircuitBreaker getCircuitBreaker(String host)
+  {
+    return CIRCUIT_BREAKERS.computeIfAbsent(host, key -> {
+      CircuitBreaker circuitBreaker = new CircuitBreaker(key, circuitFailureThreshold, circuitOpenDuration);
+      EmbeddableWidgetMetrics.registerGauge("circuit." + key + ".state", circuitBreaker::getState);
+      return circuitBreaker;
+    });
+  }
+
+  public static void configureConcurrencyLimiter(int initialLimit, int maxLimit, long latencyThresholdMs, long queueTimeoutMs)
+  {
+    limiterInitialLimit = initialLimit > 0 ? initialLimit : DEFAULT_LIMITER_INITIAL_LIMIT;
+    limiterMaxLimit = maxLimit > 0 ? maxLimit : DEFAULT_LIMITER_MAX_LIMIT;
+    limiterLatencyThreshold = latencyThresholdMs > 0 ? latencyThresholdMs : DEFAULT_LIMITER_LATENCY_THRESHOLD_MS;
+    limiterQueueTimeout = queueTimeoutMs >= 0 ? queueTimeoutMs : DEFAULT_LIMITER_QUEUE_TIMEOUT_MS;
+    for (String host : CONCURRENCY_LIMITERS.keySet())
+    {
+      EmbeddableWidgetMetrics.unregisterGauge("limiter." + host + ".limit");
+      EmbeddableWidgetMetrics.unregisterGauge("limiter." + host + ".inFlight");
+    }
+    CONCURRENCY_LIMITERS.clear();
+  }
+
+  public static AdaptiveConcurrencyLimiter getConcurrencyLimiter(String host)
+  {
+    return CONCURRENCY_LIMITERS.computeIfAbsent(host, key -> {
+      AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(key, limiterInitialLimit, limiterMaxLimit, limiterLatencyThreshold);
+      EmbeddableWidgetMetrics.registerGauge("limiter." + key + ".limit", limiter::getLimit);
+      EmbeddableWidgetMetrics.registerGauge("limiter." + key + ".inFlight", limiter::getInFlight);
+      return limiter;
+    });
+  }
+
+  public static String execute(HttpRequestBase httpRequest) throws ParseException, IOException
+  {
+    return execute(httpRequest, defaultTimeout);
+  }
+
+  public static String execute(HttpRequestBase httpRequest, long timeoutMs) throws ParseException, IOException
+  {
+    String host = httpRequest.getURI().getHost();
+    AdaptiveConcurrencyLimiter limiter = getConcurrencyLimiter(host);
+    if (!limiter.acquire(Math.min(limiterQueueTimeout, timeoutMs)))
+    {
+      return null;
+    }
+
+    CircuitBreaker circuitBreaker = getCircuitBreaker(host);
+    if (!circuitBreaker.allowRequest())
+    {
+      limiter.cancel();
+      LOGGER.debug("EmbeddableWidgetHttpUtils execute:: Circuit for {} is {}. Skipping call.", host, circuitBreaker.getState());
+      return null;
+    }
+
+    int timeout = (int) Math.max(1, Math.min(timeoutMs, Integer.MAX_VALUE));
+    httpRequest.setConfig(RequestConfig.custom().setConnectTimeout(timeout).setConnectionRequestTimeout(timeout).setSocketTimeout(timeout).build());
+
+    ScheduledFuture<?> abortTask = getDeadlineExecutor().schedule(() -> {
+      LOGGER.debug("EmbeddableWidgetHttpUtils execute:: Aborting {} after {} ms", host, timeout);
+      httpRequest.abort();
+    }, timeout, TimeUnit.MILLISECONDS);
+
+    long startTime = currentTimeMillis();
+    boolean success = false;
+    try (CloseableHttpClient httpClient = HttpClients.createDefault(); CloseableHttpResponse response = httpClient.execute(httpRequest))
+    {
+      int statusCode = response.getStatusLine().getStatusCode();
+      if (statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR)
+      {
+        LOGGER.debug("EmbeddableWidgetHttpUtils execute:: {} answered with status {}", host, statusCode);
+        return null;
+      }
+      String body = EntityUtils.toString(response.getEntity());
+      success = true;
+      return body;
+    } finally
+    {
+      boolean deadlineExceeded = !abortTask.cancel(false);
+      if (!success && httpRequest.isAborted() && !deadlineExceeded)
+      {
+        limiter.cancel();
+        circuitBreaker.recordCancelled();
+      } else
+      {
+        limiter.release(currentTimeMillis() - startTime, success);
+        if (success)
+        {
+          circuitBreaker.recordSuccess();
+        } else
+        {
+          circuitBreaker.recordFailure();
+        }
+      }
+    }
+  }
+
+  public static synchronized void shutdown()
+  {
+    if (deadlineExecutor != null)
+    {
+      deadlineExecutor.shutdownNow();
+      deadlineExecutor = null;
+    }
+  }
+
+  private static synchronized ScheduledExecutorService getDeadlineExecutor()
+  {
+    if (deadlineExecutor == null)
+    {
+      deadlineExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cpwidget-http-deadline");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return deadlineExecutor;
+  }
+}
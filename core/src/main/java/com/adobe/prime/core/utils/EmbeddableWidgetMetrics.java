@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.utils;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Process wide counters and gauges of the widget bundle, exposed over JMX by
+ * {@link com.adobe.prime.core.services.EmbeddableWidgetMetricsMBeanImpl}.
+ */
+public final class EmbeddableWidgetMetrics
+{
+
+  private static final ConcurrentMap<String, AtomicLong> COUNTERS = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, Supplier<?>> GAUGES = new ConcurrentHashMap<>();
+
+  private EmbeddableWidgetMetrics()
+  {}
+
+  public static void increment(String name)
+  {
+    increment(name, 1);
+  }
+
+  public static void increment(String name, long delta)
+  {
+    COUNTERS.computeIfAbsent(name, key -> new AtomicLong()).addAndGet(delta);
+  }
+
+  public static long getCount(String name)
+  {
+    AtomicLong counter = COUNTERS.get(name);
+    return counter != null ? counter.get() : 0L;
+  }
+
+  public static void registerGauge(String name, Supplier<?> gauge)
+  {
+    GAUGES.put(name, gauge);
+  }
+
+  public static void unregisterGauge(String name)
+  {
+    GAUGES.remove(name);
+  }
+
+  public static Map<String, Object> snapshot()
+  {
+    Map<String, Object> snapshot = new TreeMap<>();
+    for (Entry<String, AtomicLong> e : COUNTERS.entrySet())
+    {
+      snapshot.put(e.getKey(), e.getValue().get());
+    }
+    for (Entry<String, Supplier<?>> e : GAUGES.entrySet())
+    {
+      snapshot.put(e.getKey(), String.valueOf(e.getValue().get()));
+    }
+    return snapshot;
+  }
+
+  public static void reset()
+  {
+    COUNTERS.clear();
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.utils;
+
+import static java.lang.System.currentTimeMillis;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers keys whose last attempts failed and how long callers should wait before trying them
+ * again. The wait starts at {@code initialDelayMs} and doubles with every further failure up to
+ * {@code maxDelayMs}. At most {@code maxEntries} keys are kept; the least recently used are
+ * dropped first.
+ */
+public class FailureBackoffCache
+{
+
+  private final String name;
+  private final long initialDelayMs;
+  private final long maxDelayMs;
+  private final Map<String, Entry> entries;
+
+  private static class Entry
+  {
+    private int failures;
+    private long retryAt;
+  }
+
+  public FailureBackoffCache(String name, long initialDelayMs, long maxDelayMs, final int maxEntries)
+  {
+    this.name = name;
+    this.initialDelayMs = Math.max(1, initialDelayMs);
+    this.maxDelayMs = Math.max(this.initialDelayMs, maxDelayMs);
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+      {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  public synchronized boolean isBackingOff(String key)
+  {
+    Entry entry = entries.get(key);
+    if (entry != null && currentTimeMillis() < entry.retryAt)
+    {
+      EmbeddableWidgetMetrics.increment(name + ".backoff.hits");
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the delay in ms before the key should be tried again.
+   */
+  public synchronized long recordFailure(String key)
+  {
+    Entry entry = entries.get(key);
+    if (entry == null)
+    {
+      entry = new Entry();
+      entries.put(key, entry);
+    }
+    entry.failures++;
+    long delay = initialDelayMs << Math.min(entry.failures - 1, 30);
+    delay = delay > 0 ? Math.min(delay, maxDelayMs) : maxDelayMs;
+    entry.retryAt = currentTimeMillis() + delay;
+    EmbeddableWidgetMetrics.increment(name + ".backoff.failures");
+    EmbeddableWidgetMetrics.increment(name + ".backoff.scheduled." + delay + "ms");
+    return delay;
+  }
+
+  public synchronized void recordSuccess(String key)
+  {
+    entries.remove(key);
+  }
+
+  public synchronized int size()
+  {
+    return entries.size();
+  }
+
+  /**
+   * @return the longest wait currently scheduled, in ms.
+   */
+  public synchronized long getLongestPendingDelay()
+  {
+    long now = currentTimeMillis();
+    long longest = 0;
+    for (Entry entry : entries.values())
+    {
+      longest = Math.max(longest, entry.retryAt - now);
+    }
+    return longest;
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.utils;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the last {@code capacity} calls in a ring buffer and answers percentile
+ * queries over them.
+ */
+public class LatencyTracker
+{
+
+  private final long[] samples;
+  private final int minSamples;
+
+  private int next;
+  private int count;
+
+  public LatencyTracker(int capacity, int minSamples)
+  {
+    this.samples = new long[Math.max(1, capacity)];
+    this.minSamples = Math.max(1, Math.min(minSamples, samples.length));
+  }
+
+  public synchronized void record(long latencyMs)
+  {
+    samples[next] = latencyMs;
+    next = (next + 1) % samples.length;
+    if (count < samples.length)
+    {
+      count++;
+    }
+  }
+
+  /**
+   * @return the latency at the given percentile (0-100), or -1 while fewer than
+   *         {@code minSamples} calls have been recorded.
+   */
+  public long getPercentile(double percentile)
+  {
+    long[] sorted;
+    synchronized (this)
+    {
+      if (count < minSamples)
+      {
+        return -1;
+      }
+      sorted = Arrays.copyOf(samples, count);
+    }
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * sorted.length) - 1;
+    return sorted[Math.max(0, index)];
+  }
+
+  public synchronized int getCount()
+  {
+    return count;
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.utils;
+
+import static java.lang.System.nanoTime;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket allowing {@code permitsPerSecond} operations per second with bursts of up to
+ * {@code maxBurst}.
+ */
+public class RateLimiter
+{
+
+  private final double permitsPerNano;
+  private final double maxBurst;
+
+  private double availablePermits;
+  private long lastRefill;
+
+  public RateLimiter(double permitsPerSecond, double maxBurst)
+  {
+    this.permitsPerNano = Math.max(0, permitsPerSecond) / TimeUnit.SECONDS.toNanos(1);
+    this.maxBurst = Math.max(1, maxBurst);
+    this.availablePermits = this.maxBurst;
+    this.lastRefill = nanoTime();
+  }
+
+  public synchronized boolean tryAcquire()
+  {
+    refill();
+    if (availablePermits >= 1)
+    {
+      availablePermits--;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Blocks until a permit is available.
+   */
+  public void acquire() throws InterruptedException
+  {
+    long waitNanos;
+    while ((waitNanos = reserveOrGetWait()) > 0)
+    {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  private synchronized long reserveOrGetWait()
+  {
+    refill();
+    if (availablePermits >= 1)
+    {
+      availablePermits--;
+      return 0;
+    }
+    if (permitsPerNano <= 0)
+    {
+      return TimeUnit.SECONDS.toNanos(1);
+    }
+    return Math.max(1, (long) Math.ceil((1 - availablePermits) / permitsPerNano));
+  }
+
+  private void refill()
+  {
+    long now = nanoTime();
+    availablePermits = Math.min(maxBurst, availablePermits + (now - lastRefill) * permitsPerNano);
+    lastRefill = now;
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.utils;
+
+import static java.lang.System.currentTimeMillis;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the outcome of remote validations. Positive and negative outcomes expire after their
+ * own time to live, so a key which failed validation is checked again sooner than one which
+ * passed. At most {@code maxEntries} keys are kept; the least recently used are dropped first.
+ * Callers should only record definite outcomes, not failures to reach the remote side.
+ */
+public class ValidationResultCache
+{
+
+  private final String name;
+  private final long positiveTtlMs;
+  private final long negativeTtlMs;
+  private final Map<String, Entry> entries;
+
+  private static class Entry
+  {
+    private final boolean valid;
+    private final long expiresAt;
+
+    private Entry(boolean valid, long expiresAt)
+    {
+      this.valid = valid;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  public ValidationResultCache(String name, long positiveTtlMs, long negativeTtlMs, final int maxEntries)
+  {
+    this.name = name;
+    this.positiveTtlMs = Math.max(0, positiveTtlMs);
+    this.negativeTtlMs = Math.max(0, negativeTtlMs);
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+      {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * @return the remembered outcome, or {@code null} when there is none or it has expired.
+   */
+  public synchronized Boolean get(String key)
+  {
+    Entry entry = entries.get(key);
+    if (entry != null && currentTimeMillis() < entry.expiresAt)
+    {
+      EmbeddableWidgetMetrics.increment(name + ".cache.hits");
+      return entry.valid;
+    }
+    if (entry != null)
+    {
+      entries.remove(key);
+    }
+    EmbeddableWidgetMetrics.increment(name + ".cache.misses");
+    return null;
+  }
+
+  public synchronized void put(String key, boolean valid)
+  {
+    long ttl = valid ? positiveTtlMs : negativeTtlMs;
+    if (ttl > 0)
+    {
+      entries.put(key, new Entry(valid, currentTimeMillis() + ttl));
+    }
+  }
+
+  public synchronized void remove(String key)
+  {
+    entries.remove(key);
+  }
+
+  public synchronized int size()
+  {
+    return entries.size();
+  }
+}
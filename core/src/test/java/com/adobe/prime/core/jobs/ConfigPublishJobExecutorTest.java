@@ -0,0 +1,166 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext.ResultBuilder;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.day.cq.replication.ReplicationActionType;
+import com.day.cq.replication.ReplicationOptions;
+import com.day.cq.replication.ReplicationStatus;
+import com.day.cq.replication.Replicator;
+import com.day.cq.wcm.api.NameConstants;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith({AemContextExtension.class, MockitoExtension.class})
+public class ConfigPublishJobExecutorTest
+{
+  private final AemContext ctx = new AemContext();
+
+  private static final Map<String, Object> SERVICE_PARAMS =
+      Collections.<String, Object>singletonMap(ResourceResolverFactory.SUBSERVICE, "writeService");
+
+  private ConfigPublishJobExecutor jobExecutor;
+
+  @Mock
+  private ResourceResolverFactory resolverFactory;
+
+  @Mock
+  private Replicator replicator;
+
+  @Mock
+  private Job job;
+
+  @Mock
+  private JobExecutionContext context;
+
+  @Mock
+  private ResultBuilder resultBuilder;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    jobExecutor = new ConfigPublishJobExecutor();
+    Field field = ConfigPublishJobExecutor.class.getDeclaredField("resourceResolverFactory");
+    field.set(jobExecutor, resolverFactory);
+    field = ConfigPublishJobExecutor.class.getDeclaredField("replicator");
+    field.set(jobExecutor, replicator);
+    lenient().when(resolverFactory.getServiceResourceResolver(SERVICE_PARAMS)).thenReturn(ctx.resourceResolver());
+
+    ctx.load().json("/files/AdminConfigRsrcParent.json", "/conf/global/captivate-prime");
+    ctx.load().json("/files/AdminConfigRsrc.json", "/conf/global/captivate-prime/test-config/test");
+
+    lenient().when(job.getProperty(ConfigPublishJobExecutor.PROPERTY_CONFIG_NAME, String.class)).thenReturn("test-config");
+    lenient().when(context.result()).thenReturn(resultBuilder);
+    lenient().when(resultBuilder.message(anyString())).thenReturn(resultBuilder);
+    lenient().when(resultBuilder.succeeded()).thenReturn(mock(JobExecutionResult.class));
+    lenient().when(resultBuilder.cancelled()).thenReturn(mock(JobExecutionResult.class));
+  }
+
+  @Test
+  public void testProcess() throws Exception
+  {
+    jobExecutor.process(job, context);
+
+    ArgumentCaptor<String[]> paths = ArgumentCaptor.forClass(String[].class);
+    verify(replicator).replicate(eq(null), eq(ReplicationActionType.ACTIVATE), paths.capture(), any(ReplicationOptions.class));
+    assertArrayEquals(new String[] {"/conf/global/captivate-prime/test-config", "/conf/global/captivate-prime/test-config/test",
+        "/conf/global/captivate-prime/test-config/test/jcr:content"}, paths.getValue());
+    verify(replicator, never()).replicate(any(), any(), anyString());
+    verify(resultBuilder).message("Published configuration test-config, 3 resources");
+    verify(resultBuilder).succeeded();
+  }
+
+  @Test
+  public void testProcessSkipsUnchangedNodes() throws Exception
+  {
+    setReplicationStatus("/conf/global/captivate-prime/test-config/test/jcr:content", -60000, "Activate");
+    jobExecutor.process(job, context);
+
+    ArgumentCaptor<String[]> paths = ArgumentCaptor.forClass(String[].class);
+    verify(replicator).replicate(eq(null), eq(ReplicationActionType.ACTIVATE), paths.capture(), any(ReplicationOptions.class));
+    assertArrayEquals(new String[] {"/conf/global/captivate-prime/test-config"}, paths.getValue());
+  }
+
+  @Test
+  public void testProcessWithoutChanges() throws Exception
+  {
+    setReplicationStatus("/conf/global/captivate-prime/test-config", -60000, "Activate");
+    setReplicationStatus("/conf/global/captivate-prime/test-config/test/jcr:content", -60000, "Activate");
+    jobExecutor.process(job, context);
+
+    verify(replicator, never()).replicate(any(), any(), any(String[].class), any(ReplicationOptions.class));
+    verify(resultBuilder).message("No changes to publish in configuration test-config");
+  }
+
+  @Test
+  public void testModifiedAfterActivation()
+  {
+    setReplicationStatus("/conf/global/captivate-prime/test-config", 60000, "Activate");
+    setReplicationStatus("/conf/global/captivate-prime/test-config/test/jcr:content", -60000, "Deactivate");
+    assertEquals(Arrays.asList("/conf/global/captivate-prime/test-config", "/conf/global/captivate-prime/test-config/test",
+        "/conf/global/captivate-prime/test-config/test/jcr:content"),
+        ConfigPublishJobExecutor.collectModifiedPaths(ctx.resourceResolver().getResource("/conf/global/captivate-prime/test-config")));
+  }
+
+  @Test
+  public void testProcessUnknownConfig() throws Exception
+  {
+    lenient().when(job.getProperty(ConfigPublishJobExecutor.PROPERTY_CONFIG_NAME, String.class)).thenReturn("missing-config");
+    jobExecutor.process(job, context);
+
+    verify(replicator, never()).replicate(any(), any(), any(String[].class), any(ReplicationOptions.class));
+    verify(resultBuilder).cancelled();
+  }
+
+  /**
+   * Marks the node as modified now and last replicated {@code replicatedBeforeMs} before that.
+   */
+  private void setReplicationStatus(String path, long replicatedBeforeMs, String action)
+  {
+    Calendar lastModified = Calendar.getInstance();
+    Calendar lastReplicated = Calendar.getInstance();
+    lastReplicated.setTimeInMillis(lastModified.getTimeInMillis() - replicatedBeforeMs);
+    ModifiableValueMap properties = ctx.resourceResolver().getResource(path).adaptTo(ModifiableValueMap.class);
+    properties.put(NameConstants.PN_PAGE_LAST_MOD, lastModified);
+    properties.put(ReplicationStatus.NODE_PROPERTY_LAST_REPLICATED, lastReplicated);
+    properties.put(ReplicationStatus.NODE_PROPERTY_LAST_REPLICATION_ACTION, action);
+  }
+}
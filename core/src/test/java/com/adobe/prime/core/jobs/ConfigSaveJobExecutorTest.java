@@ -0,0 +1,167 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext.ResultBuilder;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.adobe.prime.core.Constants;
+import com.day.cq.wcm.api.NameConstants;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith({AemContextExtension.class, MockitoExtension.class})
+public class ConfigSaveJobExecutorTest
+{
+  private final AemContext ctx = new AemContext(ResourceResolverType.JCR_MOCK);
+
+  private static final Map<String, Object> SERVICE_PARAMS =
+      Collections.<String, Object>singletonMap(ResourceResolverFactory.SUBSERVICE, "writeService");
+
+  private static final String CONFIG_PATH = "/conf/global/captivate-prime/test-config/settings/cloudconfigs/cpwidget";
+
+  private ConfigSaveJobExecutor jobExecutor;
+
+  @Mock
+  private ResourceResolverFactory resolverFactory;
+
+  @Mock
+  private Job job;
+
+  @Mock
+  private JobExecutionContext context;
+
+  @Mock
+  private ResultBuilder resultBuilder;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    jobExecutor = spy(new ConfigSaveJobExecutor());
+    Field field = ConfigSaveJobExecutor.class.getDeclaredField("resourceResolverFactory");
+    field.set(jobExecutor, resolverFactory);
+    lenient().when(resolverFactory.getServiceResourceResolver(SERVICE_PARAMS)).thenReturn(ctx.resourceResolver());
+    doReturn(true).when(jobExecutor).isAccountSKUValid("https://learningmanagerqe.adobe.com", "7110");
+
+    ctx.load().json("/files/AdminConfigRsrc.json", CONFIG_PATH);
+
+    Map<String, String> properties = new LinkedHashMap<>();
+    properties.put("cpWidget#refreshToken", "12345");
+    properties.put("cpWidget#commonConfig.disableLinks", "true");
+    properties.put("cpWidget#commonConfig.disableLinks@TypeHint", "boolean");
+    properties.put("cpWidget#commonConfig.value", "5678");
+    properties.put("cpWidget#commonConfig.value@TypeHint", "number");
+    properties.put("cpWidget#commonConfig.captivateHostName", "https://learningmanagerqe.adobe.com");
+    properties.put("cpWidget#accountId", "7110");
+    properties.put("cpWidget#theme.background@Delete", "");
+    setJobProperties(ConfigSaveJobExecutor.getJobProperties("test-config", "admin", properties));
+
+    lenient().when(context.result()).thenReturn(resultBuilder);
+    lenient().when(resultBuilder.message(anyString())).thenReturn(resultBuilder);
+    lenient().when(resultBuilder.succeeded()).thenReturn(mock(JobExecutionResult.class));
+    lenient().when(resultBuilder.cancelled()).thenReturn(mock(JobExecutionResult.class));
+  }
+
+  @Test
+  public void testProcess()
+  {
+    jobExecutor.process(job, context);
+
+    verify(resultBuilder).succeeded();
+    ValueMap vm = ctx.resourceResolver().getResource(CONFIG_PATH + "/jcr:content").getValueMap();
+    assertTrue(vm.get("cpWidget#refreshToken").equals("12345"));
+    assertTrue(vm.get("cpWidget#commonConfig.disableLinks").equals(true));
+    assertTrue(vm.get("cpWidget#commonConfig.value").equals(5678l));
+    assertTrue(vm.get("cpWidget#theme.background").equals(false));
+    assertTrue(vm.get(Constants.AdminConfigurations.ADMIN_CONFIG_PREVIOUS_TOKEN_KEY).equals(DigestUtils.sha512Hex("f85a9acef88772630c7a55ea3ed9db96")));
+    assertEquals("admin", vm.get(NameConstants.PN_PAGE_LAST_MOD_BY));
+  }
+
+  @Test
+  public void testProcessWithoutChanges()
+  {
+    jobExecutor.process(job, context);
+    Object lastModified = ctx.resourceResolver().getResource(CONFIG_PATH + "/jcr:content").getValueMap().get(NameConstants.PN_PAGE_LAST_MOD);
+
+    jobExecutor.process(job, context);
+
+    verify(resultBuilder).message("No changes to configuration test-config");
+    assertFalse(ctx.resourceResolver().hasChanges());
+    assertEquals(lastModified, ctx.resourceResolver().getResource(CONFIG_PATH + "/jcr:content").getValueMap().get(NameConstants.PN_PAGE_LAST_MOD));
+  }
+
+  @Test
+  public void testProcessInvalidSku()
+  {
+    doReturn(false).when(jobExecutor).isAccountSKUValid("https://learningmanagerqe.adobe.com", "7110");
+    jobExecutor.process(job, context);
+
+    verify(resultBuilder).message(ConfigSaveJobExecutor.SKU_VALIDATION_ERROR);
+    verify(resultBuilder).cancelled();
+    ValueMap vm = ctx.resourceResolver().getResource(CONFIG_PATH + "/jcr:content").getValueMap();
+    assertEquals("f85a9acef88772630c7a55ea3ed9db96", vm.get("cpWidget#refreshToken"));
+    assertFalse(vm.containsKey(Constants.AdminConfigurations.ADMIN_CONFIG_PREVIOUS_TOKEN_KEY));
+  }
+
+  @Test
+  public void testProcessInvalidNumber()
+  {
+    Map<String, String> properties = new LinkedHashMap<>();
+    properties.put("cpWidget#commonConfig.value", "12ab");
+    properties.put("cpWidget#commonConfig.value@TypeHint", "number");
+    properties.put("cpWidget#commonConfig.captivateHostName", "https://learningmanagerqe.adobe.com");
+    properties.put("cpWidget#accountId", "7110");
+    setJobProperties(ConfigSaveJobExecutor.getJobProperties("test-config", "admin", properties));
+
+    jobExecutor.process(job, context);
+
+    verify(resultBuilder).message("Property cpWidget#commonConfig.value of configuration test-config must be a number");
+    verify(resultBuilder).cancelled();
+    verify(jobExecutor, never()).isAccountSKUValid(anyString(), anyString());
+  }
+
+  private void setJobProperties(Map<String, Object> properties)
+  {
+    for (Map.Entry<String, Object> e : properties.entrySet())
+    {
+      lenient().when(job.getProperty(e.getKey(), e.getValue().getClass())).thenAnswer(invocation -> e.getValue());
+    }
+  }
+}
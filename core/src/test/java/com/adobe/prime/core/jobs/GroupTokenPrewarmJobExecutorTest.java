@@ -0,0 +1,174 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.jcr.Session;
+
+import org.apache.jackrabbit.api.JackrabbitSession;
+import org.apache.jackrabbit.api.security.user.Authorizable;
+import org.apache.jackrabbit.api.security.user.Group;
+import org.apache.jackrabbit.api.security.user.User;
+import org.apache.jackrabbit.api.security.user.UserManager;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext.ResultBuilder;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.adobe.prime.core.services.EmbeddableWidgetService;
+import com.adobe.prime.core.services.SharedTokenCache;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith({AemContextExtension.class, MockitoExtension.class})
+public class GroupTokenPrewarmJobExecutorTest
+{
+  private final AemContext ctx = new AemContext();
+
+  private static final Map<String, Object> SERVICE_PARAMS =
+      Collections.<String, Object>singletonMap(ResourceResolverFactory.SUBSERVICE, "writeService");
+
+  private GroupTokenPrewarmJobExecutor jobExecutor;
+
+  @Mock
+  private ResourceResolverFactory resolverFactory;
+
+  @Mock
+  private EmbeddableWidgetService widgetService;
+
+  @Mock
+  private SharedTokenCache sharedTokenCache;
+
+  @Mock
+  private JackrabbitSession jackSession;
+
+  @Mock
+  private UserManager userManager;
+
+  @Mock
+  private Group group;
+
+  @Mock
+  private Job job;
+
+  @Mock
+  private JobExecutionContext context;
+
+  @Mock
+  private ResultBuilder resultBuilder;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    jobExecutor = new GroupTokenPrewarmJobExecutor();
+    Field field = GroupTokenPrewarmJobExecutor.class.getDeclaredField("resourceResolverFactory");
+    field.set(jobExecutor, resolverFactory);
+    field = GroupTokenPrewarmJobExecutor.class.getDeclaredField("widgetService");
+    field.setAccessible(true);
+    field.set(jobExecutor, widgetService);
+    field = GroupTokenPrewarmJobExecutor.class.getDeclaredField("sharedTokenCache");
+    field.setAccessible(true);
+    field.set(jobExecutor, sharedTokenCache);
+    lenient().when(sharedTokenCache.isRemote()).thenReturn(true);
+
+    lenient().when(resolverFactory.getServiceResourceResolver(SERVICE_PARAMS)).thenReturn(ctx.resourceResolver());
+    ctx.registerAdapter(ResourceResolver.class, Session.class, jackSession);
+    lenient().when(jackSession.getUserManager()).thenReturn(userManager);
+
+    Authorizable subGroup = mock(Group.class);
+    lenient().when(subGroup.isGroup()).thenReturn(true);
+    lenient().when(group.isGroup()).thenReturn(true);
+    lenient().when(group.getMembers()).thenReturn(Arrays.asList(getUser("learner2"), subGroup, getUser("learner1")).iterator());
+    lenient().when(userManager.getAuthorizable("learners")).thenReturn(group);
+
+    lenient().when(job.getProperty(GroupTokenPrewarmJobExecutor.PROPERTY_GROUP_ID, String.class)).thenReturn("learners");
+    lenient().when(job.getProperty(GroupTokenPrewarmJobExecutor.PROPERTY_PAGE_PATH, String.class)).thenReturn("/content/mypage");
+    lenient().when(widgetService.prewarmAccessToken("learner1", "/content/mypage")).thenReturn(true);
+    lenient().when(widgetService.prewarmAccessToken("learner2", "/content/mypage")).thenReturn(false);
+
+    lenient().when(context.result()).thenReturn(resultBuilder);
+    lenient().when(resultBuilder.message(anyString())).thenReturn(resultBuilder);
+    lenient().when(resultBuilder.succeeded()).thenReturn(mock(JobExecutionResult.class));
+  }
+
+  @Test
+  public void testProcess()
+  {
+    jobExecutor.process(job, context);
+
+    ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+    verify(resultBuilder).message(message.capture());
+    assertEquals("Pre-warmed 1 learners of learners, 1 failed", message.getValue());
+    verify(context).initProgress(2, -1);
+    verify(context).log("No token acquired for {0}", "learner2");
+  }
+
+  @Test
+  public void testProcessResumes()
+  {
+    lenient().when(job.getFinishedProgressStep()).thenReturn(1);
+    jobExecutor.process(job, context);
+
+    verify(widgetService, never()).prewarmAccessToken("learner1", "/content/mypage");
+    verify(widgetService).prewarmAccessToken("learner2", "/content/mypage");
+  }
+
+  @Test
+  public void testProcessUnknownGroup()
+  {
+    lenient().when(job.getProperty(GroupTokenPrewarmJobExecutor.PROPERTY_GROUP_ID, String.class)).thenReturn("unknown");
+    lenient().when(resultBuilder.cancelled()).thenReturn(mock(JobExecutionResult.class));
+    jobExecutor.process(job, context);
+
+    verify(resultBuilder).cancelled();
+    verify(widgetService, never()).prewarmAccessToken(anyString(), any());
+  }
+
+  @Test
+  public void testProcessWithoutRemoteCache()
+  {
+    lenient().when(sharedTokenCache.isRemote()).thenReturn(false);
+    lenient().when(resultBuilder.cancelled()).thenReturn(mock(JobExecutionResult.class));
+    jobExecutor.process(job, context);
+
+    verify(resultBuilder).cancelled();
+    verify(widgetService, never()).prewarmAccessToken(anyString(), any());
+  }
+
+  private Authorizable getUser(String userId) throws Exception
+  {
+    User user = mock(User.class);
+    lenient().when(user.getID()).thenReturn(userId);
+    return user;
+  }
+}
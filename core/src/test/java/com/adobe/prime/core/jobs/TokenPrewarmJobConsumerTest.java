@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.lang.reflect.Field;
+
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobConsumer.JobResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.adobe.prime.core.services.EmbeddableWidgetService;
+
+@ExtendWith(MockitoExtension.class)
+public class TokenPrewarmJobConsumerTest
+{
+  private TokenPrewarmJobConsumer jobConsumer;
+
+  @Mock
+  private EmbeddableWidgetService widgetService;
+
+  @Mock
+  private Job job;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    jobConsumer = new TokenPrewarmJobConsumer();
+    Field serviceField = TokenPrewarmJobConsumer.class.getDeclaredField("widgetService");
+    serviceField.setAccessible(true);
+    serviceField.set(jobConsumer, widgetService);
+
+    lenient().when(job.getProperty(TokenPrewarmJobConsumer.PROPERTY_USER_ID, String.class)).thenReturn("learner");
+    lenient().when(job.getProperty(TokenPrewarmJobConsumer.PROPERTY_PAGE_PATH, String.class)).thenReturn("/content/mypage");
+  }
+
+  @Test
+  public void testProcess()
+  {
+    lenient().when(widgetService.prewarmAccessToken("learner", "/content/mypage")).thenReturn(true);
+    assertEquals(JobResult.OK, jobConsumer.process(job));
+  }
+
+  @Test
+  public void testProcessWithoutToken()
+  {
+    lenient().when(widgetService.prewarmAccessToken("learner", "/content/mypage")).thenReturn(false);
+    assertEquals(JobResult.OK, jobConsumer.process(job));
+  }
+
+  @Test
+  public void testProcessWithoutPage()
+  {
+    lenient().when(job.getProperty(TokenPrewarmJobConsumer.PROPERTY_PAGE_PATH, String.class)).thenReturn(null);
+    assertEquals(JobResult.OK, jobConsumer.process(job));
+    verify(widgetService, never()).prewarmAccessToken(anyString(), anyString());
+  }
+}
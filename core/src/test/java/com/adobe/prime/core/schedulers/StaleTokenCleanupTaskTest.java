@@ -0,0 +1,170 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.schedulers;
+
+import static java.lang.System.currentTimeMillis;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Set;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.osgi.service.component.ComponentContext;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+public class StaleTokenCleanupTaskTest
+{
+  private final AemContext ctx = new AemContext();
+
+  private StaleTokenCleanupTask cleanupTask;
+
+  private final String liveKey = DigestUtils.sha512Hex("f85a9acef88772630c7a55ea3ed9db96");
+
+  @BeforeEach
+  public void setUp()
+  {
+    ctx.load().json("/files/AdminConfigRsrc.json", "/conf/global/captivate-prime/testConfig/settings/cloudconfigs/cpwidget");
+    cleanupTask = new StaleTokenCleanupTask();
+  }
+
+  @Test
+  public void testLiveTokenKeys()
+  {
+    Set<String> liveTokenKeys = cleanupTask.getLiveTokenKeys(ctx.resourceResolver());
+    assertEquals(1, liveTokenKeys.size());
+    assertTrue(liveTokenKeys.contains(liveKey));
+  }
+
+  @Test
+  public void testCleanProfile()
+  {
+    long now = currentTimeMillis();
+    Resource profile = ctx.create().resource("/home/users/l/learner/profile", "accessToken_" + liveKey, "live", "expiresIn_" + liveKey, now + 1000,
+        "accessToken_oldkey", "old", "expiresIn_oldkey", now + 1000, "email", "learner@adobe.com");
+
+    int removed = cleanupTask.cleanProfile(profile, cleanupTask.getLiveTokenKeys(ctx.resourceResolver()), now - 1000);
+
+    ValueMap valueMap = profile.getValueMap();
+    assertEquals(1, removed);
+    assertTrue(valueMap.containsKey("accessToken_" + liveKey));
+    assertFalse(valueMap.containsKey("accessToken_oldkey"));
+    assertFalse(valueMap.containsKey("expiresIn_oldkey"));
+    assertTrue(valueMap.containsKey("email"));
+  }
+
+  @Test
+  public void testCleanProfileRemovesLongExpiredLiveToken()
+  {
+    long now = currentTimeMillis();
+    Resource profile = ctx.create().resource("/home/users/l/expired/profile", "accessToken_" + liveKey, "live", "expiresIn_" + liveKey, now - 5000);
+
+    int removed = cleanupTask.cleanProfile(profile, cleanupTask.getLiveTokenKeys(ctx.resourceResolver()), now - 1000);
+
+    assertEquals(1, removed);
+    assertFalse(profile.getValueMap().containsKey("accessToken_" + liveKey));
+  }
+
+  @Test
+  public void testRunWithoutLiveConfigurations() throws Exception
+  {
+    ResourceResolverFactory resolverFactory = mock(ResourceResolverFactory.class);
+    ResourceResolver adminResolver = mock(ResourceResolver.class);
+    when(resolverFactory.getServiceResourceResolver(anyMap())).thenReturn(adminResolver);
+    cleanupTask.resourceResolverFactory = resolverFactory;
+
+    cleanupTask.run();
+
+    verify(adminResolver, never()).findResources(anyString(), anyString());
+    verify(adminResolver, never()).commit();
+    verify(adminResolver).close();
+  }
+
+  @Test
+  public void testRunResumesAfterCheckpoint() throws Exception
+  {
+    long now = currentTimeMillis();
+    ctx.create().resource("/home/users/a/alice", "rep:authorizableId", "alice");
+    ctx.create().resource("/home/users/a/alice/profile", "accessToken_oldkey", "old", "expiresIn_oldkey", now + 1000);
+    ctx.create().resource("/home/users/b/bob", "rep:authorizableId", "bob");
+    ctx.create().resource("/home/users/b/bob/profile", "accessToken_oldkey", "old", "expiresIn_oldkey", now + 1000);
+    ctx.resourceResolver().getResource("/conf/global/captivate-prime").adaptTo(ModifiableValueMap.class).put(StaleTokenCleanupTask.CHECKPOINT,
+        "alice");
+    ctx.resourceResolver().commit();
+
+    StaleTokenCleanupTask task = spy(cleanupTask);
+    task.resourceResolverFactory = ctx.getService(ResourceResolverFactory.class);
+    doAnswer(invocation -> Collections.singletonList(invocation.<ResourceResolver>getArgument(0).getResource("/home/users/b/bob")).iterator())
+        .when(task).findUsers(any(ResourceResolver.class), eq("alice"));
+
+    task.run();
+
+    verify(task, never()).findUsers(any(ResourceResolver.class), isNull());
+    ctx.resourceResolver().refresh();
+    assertTrue(ctx.resourceResolver().getResource("/home/users/a/alice/profile").getValueMap().containsKey("accessToken_oldkey"));
+    assertFalse(ctx.resourceResolver().getResource("/home/users/b/bob/profile").getValueMap().containsKey("accessToken_oldkey"));
+    assertNull(ctx.resourceResolver().getResource("/conf/global/captivate-prime").getValueMap().get(StaleTokenCleanupTask.CHECKPOINT));
+  }
+
+  @Test
+  public void testStopEndsPauseAndKeepsCheckpoint() throws Exception
+  {
+    ctx.create().resource("/home/users/a/alice", "rep:authorizableId", "alice");
+    ctx.resourceResolver().commit();
+    Hashtable<String, Object> properties = new Hashtable<>();
+    properties.put("cleanup.batch.size", 1);
+    properties.put("cleanup.batch.pause.ms", 60000L);
+    ComponentContext componentContext = mock(ComponentContext.class);
+    when(componentContext.getProperties()).thenReturn(properties);
+    cleanupTask.activate(componentContext);
+
+    StaleTokenCleanupTask task = spy(cleanupTask);
+    task.resourceResolverFactory = ctx.getService(ResourceResolverFactory.class);
+    doAnswer(invocation -> {
+      task.deactivate();
+      return Collections.singletonList(invocation.<ResourceResolver>getArgument(0).getResource("/home/users/a/alice")).iterator();
+    }).when(task).findUsers(any(ResourceResolver.class), isNull());
+
+    assertTimeoutPreemptively(Duration.ofSeconds(10), task::run);
+
+    verify(task, never()).findUsers(any(ResourceResolver.class), eq("alice"));
+    ctx.resourceResolver().refresh();
+    assertEquals("alice", ctx.resourceResolver().getResource("/conf/global/captivate-prime").getValueMap().get(StaleTokenCleanupTask.CHECKPOINT));
+  }
+}
@@ -19,6 +19,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -26,6 +27,8 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import com.adobe.prime.core.Constants;
+
 import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
 
@@ -70,6 +73,14 @@ public class EmbeddableWidgetConfigurationServiceImplTest
 	  assertTrue("clientSecret".equals(adminConfigs.get("cpWidget#clientSecret").toString()));
   }
 
+  @Test
+  public void testTokenKeyCarriedWithConfiguration()
+  {
+	  Map<String, Object> adminConfigs = configServiceImpl.getAvailaleAdminConfiguration(ctx.currentResource());
+	  assertTrue(DigestUtils.sha512Hex("f85a9acef88772630c7a55ea3ed9db96").equals(adminConfigs.get(Constants.AdminConfigurations.ADMIN_CONFIG_TOKEN_KEY)));
+	  assertTrue(adminConfigs.get(Constants.AdminConfigurations.ADMIN_CONFIG_PATH).toString().endsWith("/cpwidget/jcr:content"));
+  }
+
   @Test
   public void testGetGeneralConfigs()
   {
@@ -11,17 +11,29 @@
 
 package com.adobe.prime.core.services;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.jcr.Session;
 
+import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.jackrabbit.api.JackrabbitSession;
 import org.apache.jackrabbit.api.security.user.User;
 import org.apache.jackrabbit.api.security.user.UserManager;
@@ -29,6 +41,7 @@ import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -36,7 +49,12 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.utils.CircuitBreaker;
+import com.adobe.prime.core.utils.EmbeddableWidgetHttpUtils;
+import com.adobe.prime.core.utils.EmbeddableWidgetMetrics;
+import com.adobe.prime.core.utils.LatencyTracker;
 import com.day.cq.wcm.api.Page;
+import com.sun.net.httpserver.HttpServer;
 
 import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
@@ -70,6 +88,13 @@ public class EmbeddableWidgetServiceImplTest
   @Mock
   User user;
 
+  private static final String UPSTREAM_HOST = "127.0.0.1";
+
+  private HttpServer upstream;
+  private ExecutorService upstreamExecutor;
+  private ExecutorService hedgeExecutor;
+  private final List<Long> arrivals = new CopyOnWriteArrayList<>();
+
   @BeforeEach
   public void setUp() throws Exception
   {
@@ -130,6 +155,21 @@ public class EmbeddableWidgetServiceImplTest
      * clientSecret.setAccessible(true); clientSecret.set(serviceImpl,
      * "c08aef1d-51d2-47d8-9b13-481dceca66d3");
      */
+
+    EmbeddableWidgetHttpUtils.configureCircuitBreaker(5, 30000);
+    hedgeExecutor = Executors.newCachedThreadPool();
+  }
+
+  @AfterEach
+  public void tearDown()
+  {
+    if (upstream != null)
+    {
+      upstream.stop(0);
+      upstreamExecutor.shutdownNow();
+    }
+    hedgeExecutor.shutdownNow();
+    EmbeddableWidgetHttpUtils.configureCircuitBreaker(5, 30000);
   }
 
   @Test
@@ -146,4 +186,138 @@ public class EmbeddableWidgetServiceImplTest
     serviceImpl.getAccessTokenOfUser(ctx.request(), ctx.currentPage());
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testPrewarmAccessToken()
+  {
+    lenient().when(widgetUserService.getAccessTokenWithExpiry(eq("vaishnav"), any(Page.class)))
+        .thenReturn(new ImmutablePair<>("prewarmed", Long.MAX_VALUE));
+    assertTrue(serviceImpl.prewarmAccessToken("vaishnav", "/content/mypage"));
+    assertFalse(serviceImpl.prewarmAccessToken("anonymous", "/content/mypage"));
+    assertFalse(serviceImpl.prewarmAccessToken("vaishnav", "/content/missing"));
+  }
+
+  @Test
+  public void testHedgeSentAfterPercentileDelayWins() throws Exception
+  {
+    String url = startUpstream(new long[] {3000, 0}, new int[] {200, 200});
+    seedLatencies(100);
+    setHedgeMaxRatio(1);
+    long sent = EmbeddableWidgetMetrics.getCount("token.hedge.sent");
+    long won = EmbeddableWidgetMetrics.getCount("token.hedge.won");
+    long failures = EmbeddableWidgetMetrics.getCount("circuit." + UPSTREAM_HOST + ".failures");
+
+    long startTime = System.currentTimeMillis();
+    String response = serviceImpl.executeHedgedTokenRequest(hedgeExecutor, url, "{}", 5000);
+    long elapsed = System.currentTimeMillis() - startTime;
+
+    assertTrue(response.contains("token1"), response);
+    assertTrue(elapsed >= 100 && elapsed < 2000, "answered after " + elapsed + " ms");
+    assertEquals(2, arrivals.size());
+    assertTrue(arrivals.get(1) - arrivals.get(0) >= 90, "hedged after " + (arrivals.get(1) - arrivals.get(0)) + " ms");
+    assertEquals(sent + 1, EmbeddableWidgetMetrics.getCount("token.hedge.sent"));
+    assertEquals(won + 1, EmbeddableWidgetMetrics.getCount("token.hedge.won"));
+
+    // the aborted primary releases its slot without counting against the host
+    awaitIdle();
+    assertEquals(failures, EmbeddableWidgetMetrics.getCount("circuit." + UPSTREAM_HOST + ".failures"));
+    assertEquals(CircuitBreaker.State.CLOSED, EmbeddableWidgetHttpUtils.getCircuitBreaker(UPSTREAM_HOST).getState());
+  }
+
+  @Test
+  public void testHedgeThrottledByCredits() throws Exception
+  {
+    String url = startUpstream(new long[] {300}, new int[] {200});
+    seedLatencies(100);
+    long sent = EmbeddableWidgetMetrics.getCount("token.hedge.sent");
+    long throttled = EmbeddableWidgetMetrics.getCount("token.hedge.throttled");
+
+    // the default ratio earns a fraction of a credit per request, not enough for a hedge
+    String response = serviceImpl.executeHedgedTokenRequest(hedgeExecutor, url, "{}", 5000);
+
+    assertTrue(response.contains("token0"), response);
+    assertEquals(1, arrivals.size());
+    assertEquals(sent, EmbeddableWidgetMetrics.getCount("token.hedge.sent"));
+    assertEquals(throttled + 1, EmbeddableWidgetMetrics.getCount("token.hedge.throttled"));
+  }
+
+  @Test
+  public void testFailedPrimaryFallsThroughToHedge() throws Exception
+  {
+    String url = startUpstream(new long[] {300, 500}, new int[] {503, 200});
+    seedLatencies(100);
+    setHedgeMaxRatio(1);
+
+    String response = serviceImpl.executeHedgedTokenRequest(hedgeExecutor, url, "{}", 5000);
+
+    assertTrue(response.contains("token1"), response);
+    assertEquals(2, arrivals.size());
+  }
+
+  /**
+   * Starts a token endpoint which answers its n-th request after {@code delays[n]} ms with
+   * {@code statuses[n]} and the token {@code token<n>}.
+   */
+  private String startUpstream(long[] delays, int[] statuses) throws Exception
+  {
+    upstream = HttpServer.create(new InetSocketAddress(UPSTREAM_HOST, 0), 0);
+    upstreamExecutor = Executors.newCachedThreadPool();
+    upstream.setExecutor(upstreamExecutor);
+    upstream.createContext("/", exchange -> {
+      int index;
+      synchronized (arrivals)
+      {
+        index = arrivals.size();
+        arrivals.add(System.currentTimeMillis());
+      }
+      try
+      {
+        Thread.sleep(delays[Math.min(index, delays.length - 1)]);
+      } catch (InterruptedException ie)
+      {
+        Thread.currentThread().interrupt();
+      }
+      byte[] body = ("{\"access_token\":\"token" + index + "\",\"expires_in\":3600}").getBytes(StandardCharsets.UTF_8);
+      try
+      {
+        exchange.sendResponseHeaders(statuses[Math.min(index, statuses.length - 1)], body.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+          out.write(body);
+        }
+      } catch (IOException ioe)
+      {
+        // the client has aborted the request
+      }
+    });
+    upstream.start();
+    return "http://" + UPSTREAM_HOST + ":" + upstream.getAddress().getPort() + "/oauth/o/learnerToken";
+  }
+
+  private void seedLatencies(long latencyMs) throws Exception
+  {
+    Field trackerField = EmbeddableWidgetServiceImpl.class.getDeclaredField("tokenLatencyTracker");
+    trackerField.setAccessible(true);
+    LatencyTracker tracker = (LatencyTracker) trackerField.get(serviceImpl);
+    for (int i = 0; i < 50; i++)
+    {
+      tracker.record(latencyMs);
+    }
+  }
+
+  private void setHedgeMaxRatio(double ratio) throws Exception
+  {
+    Field ratioField = EmbeddableWidgetServiceImpl.class.getDeclaredField("hedgeMaxRatio");
+    ratioField.setAccessible(true);
+    ratioField.set(serviceImpl, ratio);
+  }
+
+  private void awaitIdle() throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + 2000;
+    while (EmbeddableWidgetHttpUtils.getConcurrencyLimiter(UPSTREAM_HOST).getInFlight() > 0 && System.currentTimeMillis() < deadline)
+    {
+      Thread.sleep(10);
+    }
+    assertEquals(0, EmbeddableWidgetHttpUtils.getConcurrencyLimiter(UPSTREAM_HOST).getInFlight());
+  }
+}
@@ -14,6 +14,8 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 import java.lang.reflect.Field;
 import java.util.Collections;
@@ -101,6 +103,14 @@ public class EmbeddableWidgetUserServiceImplTest {
 	    replicatorField.setAccessible(true);
 	    replicatorField.set(userServiceImpl, widgetConfigService);
 
+	    JcrTokenStoreImpl tokenStore = new JcrTokenStoreImpl();
+	    Field tokenStoreFactory = JcrTokenStoreImpl.class.getDeclaredField("resourceResolverFactory");
+	    tokenStoreFactory.set(tokenStore, resolverFactory);
+
+	    Field tokenStoreField = EmbeddableWidgetUserServiceImpl.class.getDeclaredField("tokenStore");
+	    tokenStoreField.setAccessible(true);
+	    tokenStoreField.set(userServiceImpl, tokenStore);
+
 	    ctx.load().json("/files/UserRsrc.json", "/home/user/vaishnav");
 
 	    ValueMock[] emailValues = new ValueMock[] {new ValueMock("vaishnav@adobe.com")};
@@ -135,6 +145,69 @@ public class EmbeddableWidgetUserServiceImplTest {
 		assertTrue(Long.valueOf(Long.MAX_VALUE).equals(pair.getRight()));
 	}
 
+	@Test
+	public void testGetAccessTokenFromSharedCache() throws Exception {
+		LocalSharedTokenCacheImpl sharedTokenCache = new LocalSharedTokenCacheImpl();
+		sharedTokenCache.put("vaishnav", DigestUtils.sha512Hex("1234"), "sharedAccess", Long.MAX_VALUE);
+		Field sharedCacheField = EmbeddableWidgetUserServiceImpl.class.getDeclaredField("sharedTokenCache");
+		sharedCacheField.setAccessible(true);
+		sharedCacheField.set(userServiceImpl, sharedTokenCache);
+
+		Pair<String, Long> pair = userServiceImpl.getAccessTokenWithExpiry(ctx.request(), ctx.currentPage(), "test@test.com");
+		assertTrue("sharedAccess".equals(pair.getLeft()));
+	}
+
+	@Test
+	public void testSharedCacheHitStoredLocally() throws Exception {
+		TokenStore localStore = mock(TokenStore.class);
+		Field tokenStoreField = EmbeddableWidgetUserServiceImpl.class.getDeclaredField("tokenStore");
+		tokenStoreField.setAccessible(true);
+		tokenStoreField.set(userServiceImpl, localStore);
+
+		long expiry = System.currentTimeMillis() + 60000;
+		LocalSharedTokenCacheImpl sharedTokenCache = new LocalSharedTokenCacheImpl();
+		sharedTokenCache.put("vaishnav", DigestUtils.sha512Hex("1234"), "sharedAccess", expiry);
+		Field sharedCacheField = EmbeddableWidgetUserServiceImpl.class.getDeclaredField("sharedTokenCache");
+		sharedCacheField.setAccessible(true);
+		sharedCacheField.set(userServiceImpl, sharedTokenCache);
+
+		Pair<String, Long> pair = userServiceImpl.getAccessTokenWithExpiry(ctx.request(), ctx.currentPage(), "test@test.com");
+		assertTrue("sharedAccess".equals(pair.getLeft()));
+		verify(localStore).putToken("vaishnav", DigestUtils.sha512Hex("1234"), "sharedAccess", expiry);
+	}
+
+	@Test
+	public void testSetAccessTokenPopulatesSharedCache() throws Exception {
+		LocalSharedTokenCacheImpl sharedTokenCache = new LocalSharedTokenCacheImpl();
+		Field sharedCacheField = EmbeddableWidgetUserServiceImpl.class.getDeclaredField("sharedTokenCache");
+		sharedCacheField.setAccessible(true);
+		sharedCacheField.set(userServiceImpl, sharedTokenCache);
+
+		userServiceImpl.setAccessTokenWithExpiry(ctx.request(), ctx.currentPage(), "testAccessToken", Long.MAX_VALUE, "test@test.com");
+		assertTrue("testAccessToken".equals(sharedTokenCache.get("vaishnav", DigestUtils.sha512Hex("1234")).getLeft()));
+	}
+
+	@Test
+	public void testPreviousTokenServedAfterRotation() throws Exception {
+		Map<String, Object> adminConfigs = new HashMap<>(widgetConfigService.getAvailaleAdminConfiguration(ctx.currentResource()));
+		adminConfigs.put(Constants.AdminConfigurations.ADMIN_CONFIG_PREVIOUS_TOKEN_KEY, DigestUtils.sha512Hex("old"));
+		adminConfigs.put(Constants.AdminConfigurations.ADMIN_CONFIG_TOKEN_ROTATED_AT, System.currentTimeMillis());
+		lenient().when(widgetConfigService.getAvailaleAdminConfiguration(any(Resource.class))).thenReturn(adminConfigs);
+
+		String tokenSpecificPath = "_" + DigestUtils.sha512Hex("old");
+		ValueMock[] values = new ValueMock[] {new ValueMock("previousAccess")};
+		lenient().when(user.getProperty(Constants.LearnerConfigurations.USER_ACCESS_TOKEN_PATH + tokenSpecificPath)).thenReturn(values);
+		values = new ValueMock[] {new ValueMock(String.valueOf(Long.MAX_VALUE))};
+		lenient().when(user.getProperty(Constants.LearnerConfigurations.USER_ACCESS_TOKEN_EXPIRY_PATH + tokenSpecificPath)).thenReturn(values);
+
+		Pair<String, Long> pair = userServiceImpl.getAccessTokenWithExpiry(ctx.request(), ctx.currentPage(), "test@test.com");
+		assertTrue("previousAccess".equals(pair.getLeft()));
+
+		adminConfigs.put(Constants.AdminConfigurations.ADMIN_CONFIG_TOKEN_ROTATED_AT, 0L);
+		pair = userServiceImpl.getAccessTokenWithExpiry(ctx.request(), ctx.currentPage(), "test@test.com");
+		assertTrue(pair == null);
+	}
+
 	@Test 
 	public void testGetAccessTokenWithExpiryNullValue() {
 		Pair<String, Long> pair = userServiceImpl.getAccessTokenWithExpiry(ctx.request(), ctx.currentPage(), "test@test.com");
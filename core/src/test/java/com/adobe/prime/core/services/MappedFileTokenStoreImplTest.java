@@ -0,0 +1,185 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.ComponentContext;
+
+@ExtendWith(MockitoExtension.class)
+public class MappedFileTokenStoreImplTest
+{
+
+  @TempDir
+  Path tempDir;
+
+  @Mock
+  private ComponentContext componentContext;
+
+  @Mock
+  private BundleContext bundleContext;
+
+  private Dictionary<String, Object> properties;
+
+  @BeforeEach
+  public void setUp()
+  {
+    properties = new Hashtable<>();
+    properties.put("token.store.file", tempDir.resolve("tokens.dat").toString());
+    properties.put("token.store.slots", 64);
+    lenient().when(componentContext.getProperties()).thenReturn(properties);
+    lenient().when(componentContext.getBundleContext()).thenReturn(bundleContext);
+    lenient().when(bundleContext.getProperty("sling.home")).thenReturn(tempDir.toString());
+  }
+
+  @Test
+  public void testPutAndGet() throws Exception
+  {
+    MappedFileTokenStoreImpl tokenStore = new MappedFileTokenStoreImpl();
+    tokenStore.activate(componentContext);
+    assertTrue(tokenStore.putToken("learner", "key1", "token1", 1000L));
+    assertTrue(tokenStore.putToken("learner", "key1", "token2", 2000L));
+
+    Pair<String, Long> token = tokenStore.getToken("learner", "key1");
+    assertEquals("token2", token.getLeft());
+    assertEquals(Long.valueOf(2000L), token.getRight());
+    assertNull(tokenStore.getToken("learner", "key2"));
+    assertEquals(1, tokenStore.getUsedSlots());
+    tokenStore.deactivate();
+  }
+
+  @Test
+  public void testSurvivesRestart() throws Exception
+  {
+    MappedFileTokenStoreImpl tokenStore = new MappedFileTokenStoreImpl();
+    tokenStore.activate(componentContext);
+    tokenStore.putToken("learner", "key1", "token1", 1000L);
+    tokenStore.deactivate();
+
+    MappedFileTokenStoreImpl reopenedStore = new MappedFileTokenStoreImpl();
+    reopenedStore.activate(componentContext);
+    assertEquals("token1", reopenedStore.getToken("learner", "key1").getLeft());
+    assertEquals(1, reopenedStore.getUsedSlots());
+    reopenedStore.deactivate();
+  }
+
+  @Test
+  public void testSizeIsBounded() throws Exception
+  {
+    MappedFileTokenStoreImpl tokenStore = new MappedFileTokenStoreImpl();
+    tokenStore.activate(componentContext);
+    for (int i = 0; i < 200; i++)
+    {
+      assertTrue(tokenStore.putToken("learner" + i, "key", "token" + i, i));
+    }
+    assertTrue(tokenStore.getUsedSlots() <= 64);
+    assertEquals("token199", tokenStore.getToken("learner199", "key").getLeft());
+    assertFalse(tokenStore.putToken("learner", "key", StringUtils.repeat('x', 1024), 1000L));
+    tokenStore.deactivate();
+  }
+
+  @Test
+  public void testFileUnderSlingHomeOwnerOnly() throws Exception
+  {
+    Assumptions.assumeTrue(tempDir.getFileSystem().supportedFileAttributeViews().contains("posix"));
+    properties.put("token.store.file", "cpwidget/tokens.dat");
+    MappedFileTokenStoreImpl tokenStore = new MappedFileTokenStoreImpl();
+    tokenStore.activate(componentContext);
+    tokenStore.deactivate();
+
+    Path file = tempDir.resolve("cpwidget/tokens.dat");
+    assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+    assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file.getParent())));
+  }
+
+  @Test
+  public void testTornRecordIsNotServed() throws Exception
+  {
+    MappedFileTokenStoreImpl tokenStore = new MappedFileTokenStoreImpl();
+    tokenStore.activate(componentContext);
+    tokenStore.putToken("learner", "key1", "token1", Long.MAX_VALUE);
+    tokenStore.deactivate();
+
+    corrupt("token1".getBytes(StandardCharsets.UTF_8));
+
+    MappedFileTokenStoreImpl reopenedStore = new MappedFileTokenStoreImpl();
+    reopenedStore.activate(componentContext);
+    assertNull(reopenedStore.getToken("learner", "key1"));
+    reopenedStore.deactivate();
+  }
+
+  @Test
+  public void testRecordOfOtherIdentityIsNotServed() throws Exception
+  {
+    MappedFileTokenStoreImpl tokenStore = new MappedFileTokenStoreImpl();
+    tokenStore.activate(componentContext);
+    tokenStore.putToken("learner", "key1", "token1", Long.MAX_VALUE);
+    tokenStore.deactivate();
+
+    // same probe key, different digest
+    corrupt(DigestUtils.sha256("learner|key1"));
+
+    MappedFileTokenStoreImpl reopenedStore = new MappedFileTokenStoreImpl();
+    reopenedStore.activate(componentContext);
+    assertNull(reopenedStore.getToken("learner", "key1"));
+    assertTrue(reopenedStore.putToken("learner", "key1", "token2", Long.MAX_VALUE));
+    assertEquals("token2", reopenedStore.getToken("learner", "key1").getLeft());
+    reopenedStore.deactivate();
+  }
+
+  /**
+   * Flips the last byte of the first occurrence of {@code bytes} in the token file.
+   */
+  private void corrupt(byte[] bytes) throws Exception
+  {
+    Path file = tempDir.resolve("tokens.dat");
+    byte[] content = Files.readAllBytes(file);
+    int index = -1;
+    for (int i = 0; i + bytes.length <= content.length && index < 0; i++)
+    {
+      if (Arrays.equals(Arrays.copyOfRange(content, i, i + bytes.length), bytes))
+      {
+        index = i + bytes.length - 1;
+      }
+    }
+    assertTrue(index >= 0);
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw"))
+    {
+      randomAccessFile.seek(index);
+      randomAccessFile.write(content[index] ^ 0x01);
+    }
+  }
+}
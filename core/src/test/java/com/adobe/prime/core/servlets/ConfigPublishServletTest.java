@@ -11,10 +11,22 @@
 
 package com.adobe.prime.core.servlets;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
 
 import java.lang.reflect.Field;
+import java.util.Collections;
 
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -22,7 +34,9 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import com.adobe.prime.core.jobs.ConfigPublishJobExecutor;
 import com.day.cq.replication.ReplicationActionType;
+import com.day.cq.replication.ReplicationException;
 import com.day.cq.replication.Replicator;
 
 import io.wcm.testing.mock.aem.junit5.AemContext;
@@ -39,6 +53,12 @@ class ConfigPublishServletTest
   @Mock
   private Replicator replicatorMock;
 
+  @Mock
+  private JobManager jobManager;
+
+  @Mock
+  private Job job;
+
   @BeforeEach
   public void setUp() throws Exception
   {
@@ -50,6 +70,14 @@ class ConfigPublishServletTest
     Field replicatorField = ConfigPublishServlet.class.getDeclaredField("replicator");
     replicatorField.setAccessible(true);
     replicatorField.set(configServlet, replicatorMock);
+    Field jobManagerField = ConfigPublishServlet.class.getDeclaredField("jobManager");
+    jobManagerField.setAccessible(true);
+    jobManagerField.set(configServlet, jobManager);
+    lenient().when(jobManager.addJob(eq(ConfigPublishJobExecutor.TOPIC), anyMap())).thenReturn(job);
+    lenient().when(job.getId()).thenReturn("publish-job");
+    lenient().when(job.getTopic()).thenReturn(ConfigPublishJobExecutor.TOPIC);
+    lenient().when(job.getProperty(ConfigPublishJobExecutor.PROPERTY_CONFIG_NAME, String.class)).thenReturn("test-config");
+    lenient().when(jobManager.getJobById("publish-job")).thenReturn(job);
 
     ctx.request().addRequestParameter("itemPath", "test-config");
   }
@@ -58,9 +86,60 @@ class ConfigPublishServletTest
   public void testPost() throws Exception
   {
     configServlet.doPost(ctx.request(), ctx.response());
-    Mockito.verify(replicatorMock).replicate(eq(null), eq(ReplicationActionType.ACTIVATE), eq("/conf/global/captivate-prime/test-config"));
-    Mockito.verify(replicatorMock).replicate(eq(null), eq(ReplicationActionType.ACTIVATE), eq("/conf/global/captivate-prime/test-config/test"));
-    Mockito.verify(replicatorMock).replicate(eq(null), eq(ReplicationActionType.ACTIVATE),
-        eq("/conf/global/captivate-prime/test-config/test/jcr:content"));
+    assertEquals(HttpServletResponse.SC_ACCEPTED, ctx.response().getStatus());
+    assertEquals("{\"jobId\":\"publish-job\"}", ctx.response().getOutputAsString());
+    Mockito.verify(jobManager).addJob(eq(ConfigPublishJobExecutor.TOPIC), anyMap());
+    Mockito.verify(replicatorMock, never()).replicate(any(), any(), anyString());
+  }
+
+  @Test
+  public void testPostWithoutPermission() throws Exception
+  {
+    doThrow(new ReplicationException("denied")).when(replicatorMock).checkPermission(eq(null), eq(ReplicationActionType.ACTIVATE),
+        eq("/conf/global/captivate-prime/test-config"));
+    configServlet.doPost(ctx.request(), ctx.response());
+    assertEquals(HttpServletResponse.SC_FORBIDDEN, ctx.response().getStatus());
+    Mockito.verify(jobManager, never()).addJob(anyString(), anyMap());
+  }
+
+  @Test
+  public void testDryRun() throws Exception
+  {
+    ctx.request().addRequestParameter("dryRun", "true");
+    configServlet.doPost(ctx.request(), ctx.response());
+    assertEquals(HttpServletResponse.SC_OK, ctx.response().getStatus());
+    assertEquals("{\"configName\":\"test-config\",\"paths\":[\"/conf/global/captivate-prime/test-config\","
+        + "\"/conf/global/captivate-prime/test-config/test\",\"/conf/global/captivate-prime/test-config/test/jcr:content\"]}",
+        ctx.response().getOutputAsString());
+    Mockito.verify(jobManager, never()).addJob(anyString(), anyMap());
+  }
+
+  @Test
+  public void testGetStatus() throws Exception
+  {
+    lenient().when(job.getJobState()).thenReturn(Job.JobState.ERROR);
+    lenient().when(job.getResultMessage()).thenReturn("Unable to publish configuration test-config");
+    ctx.request().setParameterMap(Collections.<String, Object>singletonMap("jobId", "publish-job"));
+    configServlet.doGet(ctx.request(), ctx.response());
+    assertEquals("{\"jobId\":\"publish-job\",\"state\":\"ERROR\",\"message\":\"Unable to publish configuration test-config\"}",
+        ctx.response().getOutputAsString());
+  }
+
+  @Test
+  public void testGetStatusWithoutPermission() throws Exception
+  {
+    doThrow(new ReplicationException("denied")).when(replicatorMock).checkPermission(eq(null), eq(ReplicationActionType.ACTIVATE),
+        eq("/conf/global/captivate-prime/test-config"));
+    ctx.request().setParameterMap(Collections.<String, Object>singletonMap("jobId", "publish-job"));
+    configServlet.doGet(ctx.request(), ctx.response());
+    assertEquals(HttpServletResponse.SC_FORBIDDEN, ctx.response().getStatus());
+  }
+
+  @Test
+  public void testPostUnknownConfig() throws Exception
+  {
+    ctx.request().setParameterMap(Collections.<String, Object>singletonMap("itemPath", "missing-config"));
+    configServlet.doPost(ctx.request(), ctx.response());
+    assertEquals(HttpServletResponse.SC_NOT_FOUND, ctx.response().getStatus());
   }
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.adobe.prime.core.entity.EmbeddableWidgetOptions;
+import com.adobe.prime.core.entity.EmbeddableWidgetsConfig;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+public class DialogFieldDescriptorTest
+{
+  private final AemContext ctx = new AemContext();
+
+  private List<DialogFieldDescriptor> descriptors;
+
+  private final ValueMap contentValues = new ValueMapDecorator(Collections.singletonMap("cpWidget#widgetConfig.attributes.numRows", "3"));
+
+  @BeforeEach
+  public void setUp()
+  {
+    EmbeddableWidgetsConfig widgetConfig = new EmbeddableWidgetsConfig();
+    widgetConfig.setName("Trending");
+    widgetConfig.setWidgetRef("com.adobe.captivateprime.lostrip.trending");
+    widgetConfig.setOptions(Arrays.asList(getOption("widgetConfig.attributes.numRows", "string", false),
+        getOption("widgetConfig.attributes.layout", "grid|list", false), getOption("widgetConfig.attributes.hiddenRef", "string", true)));
+    descriptors = DialogFieldDescriptor.compile(widgetConfig);
+  }
+
+  @Test
+  public void testSelectedWidgetField()
+  {
+    ValueMap vm = descriptors.get(0).toResource(ctx.resourceResolver(), contentValues, true).getValueMap();
+    assertEquals("./cpWidget#widgetConfig.attributes.numRows", vm.get("name"));
+    assertEquals("3", vm.get("value"));
+    assertEquals(false, vm.get("renderHidden"));
+    assertEquals("com.adobe.captivateprime.lostrip.trending", vm.get("granite:itemtype"));
+  }
+
+  @Test
+  public void testOtherWidgetFieldIsHiddenWithoutValue()
+  {
+    ValueMap vm = descriptors.get(0).toResource(ctx.resourceResolver(), contentValues, false).getValueMap();
+    assertEquals("", vm.get("value"));
+    assertEquals(true, vm.get("renderHidden"));
+  }
+
+  @Test
+  public void testHiddenOptionKeepsDefault()
+  {
+    ValueMap vm = descriptors.get(2).toResource(ctx.resourceResolver(), contentValues, true).getValueMap();
+    assertEquals("hiddenDefault", vm.get("value"));
+    assertEquals("hideOption", vm.get("granite:rel"));
+  }
+
+  @Test
+  public void testDropdownItems()
+  {
+    Resource dropdown = descriptors.get(1).toResource(ctx.resourceResolver(), contentValues, true);
+    assertEquals(DialogFieldFactory.SELECT_TYPE, dropdown.getResourceType());
+    Iterator<Resource> items = dropdown.getChild("items").listChildren();
+    assertEquals("grid", items.next().getValueMap().get("value"));
+    assertEquals("list", items.next().getValueMap().get("text"));
+    assertFalse(items.hasNext());
+  }
+
+  @Test
+  public void testRequestsDoNotChangeDescriptor()
+  {
+    descriptors.get(0).toResource(ctx.resourceResolver(), contentValues, true).getValueMap().put("value", "changed");
+    ValueMap vm = descriptors.get(0).toResource(ctx.resourceResolver(), contentValues, false).getValueMap();
+    assertTrue("".equals(vm.get("value")));
+  }
+
+  private EmbeddableWidgetOptions getOption(String ref, String type, boolean hidden)
+  {
+    EmbeddableWidgetOptions option = new EmbeddableWidgetOptions();
+    option.setName(ref);
+    option.setRef(ref);
+    option.setType(type);
+    option.setHidden(hidden);
+    option.setDefaultValue("hiddenDefault");
+    return option;
+  }
+}
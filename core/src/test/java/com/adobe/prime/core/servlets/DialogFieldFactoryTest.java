@@ -0,0 +1,224 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.adobe.granite.ui.components.ValueMapResourceWrapper;
+import com.adobe.granite.ui.components.ds.ValueMapResource;
+import com.day.cq.commons.jcr.JcrConstants;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+public class DialogFieldFactoryTest
+{
+  private final AemContext ctx = new AemContext();
+
+  private static final int DIALOG_DROPDOWNS = 20;
+  private static final int ITEM_LIST_PASSES = 2;
+  private static final String DROPDOWN_TYPE = "grid|list|carousel|tiles";
+
+  private final Map<String, Object> template = DialogFieldFactory.template("name", "cpWidget#theme.background", "emptyText", "", "required", true,
+      "fieldLabel", "Background", "renderHidden", false, "granite:itemtype", "com.adobe.captivateprime.lostrip.trending");
+
+  @Test
+  public void testOverridesTakePrecedence()
+  {
+    ValueMap vm = DialogFieldFactory.createField(ctx.resourceResolver(), DialogFieldFactory.TEXTFIELD_TYPE, template, "value", "transparent",
+        "renderHidden", true).getValueMap();
+    assertEquals("transparent", vm.get("value"));
+    assertEquals(true, vm.get("renderHidden", Boolean.class));
+    assertEquals("Background", vm.get("fieldLabel"));
+    assertEquals(7, vm.size());
+  }
+
+  @Test
+  public void testWritesDoNotReachTemplate()
+  {
+    DialogFieldFactory.createField(ctx.resourceResolver(), DialogFieldFactory.TEXTFIELD_TYPE, template).getValueMap().put("fieldLabel", "Changed");
+    assertEquals("Background", template.get("fieldLabel"));
+    assertEquals("Background",
+        DialogFieldFactory.createField(ctx.resourceResolver(), DialogFieldFactory.TEXTFIELD_TYPE, template).getValueMap().get("fieldLabel"));
+  }
+
+  @Test
+  public void testDropdownItemsAreShared()
+  {
+    assertSame(DialogFieldFactory.getDropdownItems("grid|list"), DialogFieldFactory.getDropdownItems("grid|list"));
+    assertSame(DialogFieldFactory.getItem("grid", "grid"), DialogFieldFactory.getDropdownItems("grid|list").get(0));
+  }
+
+  @Test
+  public void testDropdownMarksSelectedItem()
+  {
+    Resource dropdown = DialogFieldFactory.createDropdown(ctx.resourceResolver(), template, DialogFieldFactory.getDropdownItems("grid|list"), "list",
+        "renderHidden", true);
+    assertEquals(true, dropdown.getValueMap().get("renderHidden"));
+    Iterator<Resource> items = dropdown.getChild("items").listChildren();
+    assertNull(items.next().getValueMap().get("selected"));
+    assertEquals(true, items.next().getValueMap().get("selected"));
+    assertFalse(items.hasNext());
+    assertFalse(DialogFieldFactory.getItem("list", "list").containsKey("selected"));
+  }
+
+  /**
+   * Compares the bytes allocated for rendering the dropdowns of a dialog through the factory with
+   * the code the servlets used before it, which split the option type for every field and rebuilt
+   * the item resources on every {@code listChildren()} call. The measurement depends on the JVM, so
+   * it only runs when enabled with {@code -Dbenchmark=true}.
+   */
+  @Test
+  @Tag("benchmark")
+  @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+  public void testDropdownAllocationBenchmark()
+  {
+    java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    Assumptions.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+    Assumptions.assumeTrue(allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled());
+
+    ResourceResolver resolver = ctx.resourceResolver();
+    for (int i = 0; i < 2000; i++)
+    {
+      renderBaselineDropdowns(resolver);
+      renderFactoryDropdowns(resolver);
+    }
+
+    long threadId = Thread.currentThread().getId();
+    long start = allocationBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < 1000; i++)
+    {
+      renderBaselineDropdowns(resolver);
+    }
+    long baseline = allocationBean.getThreadAllocatedBytes(threadId) - start;
+
+    start = allocationBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < 1000; i++)
+    {
+      renderFactoryDropdowns(resolver);
+    }
+    long factory = allocationBean.getThreadAllocatedBytes(threadId) - start;
+
+    assertTrue(factory < baseline, "factory " + factory + " bytes, baseline " + baseline + " bytes");
+  }
+
+  private int renderBaselineDropdowns(ResourceResolver resolver)
+  {
+    int rendered = 0;
+    for (int i = 0; i < DIALOG_DROPDOWNS; i++)
+    {
+      Resource dropdown = createBaselineDropdown(resolver, "cpWidget#widgetConfig.attributes.layout", true, "Layout", DROPDOWN_TYPE.split("\\|"),
+          "list", false);
+      rendered += listItems(dropdown);
+    }
+    return rendered;
+  }
+
+  private int renderFactoryDropdowns(ResourceResolver resolver)
+  {
+    int rendered = 0;
+    for (int i = 0; i < DIALOG_DROPDOWNS; i++)
+    {
+      Resource dropdown = DialogFieldFactory.createDropdown(resolver, template, DialogFieldFactory.getDropdownItems(DROPDOWN_TYPE), "list",
+          "renderHidden", false);
+      rendered += listItems(dropdown);
+    }
+    return rendered;
+  }
+
+  private static int listItems(Resource dropdown)
+  {
+    int listed = 0;
+    for (int pass = 0; pass < ITEM_LIST_PASSES; pass++)
+    {
+      Iterator<Resource> items = dropdown.getChild("items").listChildren();
+      while (items.hasNext())
+      {
+        listed += items.next().getValueMap().size();
+      }
+    }
+    return listed;
+  }
+
+  /**
+   * Dropdown as the admin configuration datasource created it before the factory existed.
+   */
+  private static Resource createBaselineDropdown(ResourceResolver resolver, String name, boolean required, String fieldLabel, String[] values,
+      String selectedValue, boolean hidden)
+  {
+    String resourceType = DialogFieldFactory.SELECT_TYPE;
+    Resource res = new ValueMapResource(resolver, "", resourceType, new ValueMapDecorator(new HashMap<String, Object>()));
+    Resource wrapper = new ValueMapResourceWrapper(res, resourceType)
+    {
+      @Override
+      public Resource getChild(String relPath)
+      {
+        if ("items".equals(relPath))
+        {
+          return new ValueMapResourceWrapper(res, JcrConstants.NT_UNSTRUCTURED)
+          {
+            @Override
+            public Iterator<Resource> listChildren()
+            {
+              List<Resource> itemsResourceList = new ArrayList<Resource>();
+              for (String value : values)
+              {
+                ValueMap vm = new ValueMapDecorator(new HashMap<String, Object>());
+                vm.put("value", value);
+                vm.put("text", value);
+                if (value.equals(selectedValue))
+                {
+                  vm.put("selected", true);
+                }
+                itemsResourceList.add(new ValueMapResource(resolver, "", JcrConstants.NT_UNSTRUCTURED, vm));
+              }
+              return itemsResourceList.iterator();
+            }
+          };
+        }
+        return super.getChild(relPath);
+      }
+    };
+    ValueMap valueMap = wrapper.adaptTo(ValueMap.class);
+    if (valueMap != null)
+    {
+      valueMap.put("name", name);
+      valueMap.put("required", required);
+      valueMap.put("fieldLabel", fieldLabel);
+      valueMap.put("renderHidden", hidden);
+    }
+    return wrapper;
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.settings.SlingSettingsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.entity.EmbeddableWidgetOptions;
+import com.adobe.prime.core.entity.EmbeddableWidgetsConfig;
+import com.adobe.prime.core.services.EmbeddableWidgetConfigurationService;
+import com.adobe.prime.core.services.EmbeddableWidgetService;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith({AemContextExtension.class, MockitoExtension.class})
+public class DialogSchemaServletTest
+{
+  private final AemContext ctx = new AemContext();
+
+  private DialogSchemaServlet schemaServlet;
+
+  @Mock
+  private EmbeddableWidgetService widgetService;
+
+  @Mock
+  private EmbeddableWidgetConfigurationService widgetConfigService;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    schemaServlet = new DialogSchemaServlet();
+
+    Map<String, Object> adminConfigs = new HashMap<>();
+    adminConfigs.put(Constants.CP_NODE_PROPERTY_PREFIX + "commonConfig.captivateHostName", "https://captivateprimeqe.adobe.com");
+    lenient().when(widgetConfigService.getAvailaleAdminConfiguration(any(Resource.class))).thenReturn(adminConfigs);
+
+    Field serviceField = DialogSchemaServlet.class.getDeclaredField("widgetService");
+    serviceField.setAccessible(true);
+    serviceField.set(schemaServlet, widgetService);
+
+    serviceField = DialogSchemaServlet.class.getDeclaredField("widgetConfigService");
+    serviceField.setAccessible(true);
+    serviceField.set(schemaServlet, widgetConfigService);
+
+    ctx.runMode("author");
+    serviceField = DialogSchemaServlet.class.getDeclaredField("slingSettingsService");
+    serviceField.setAccessible(true);
+    serviceField.set(schemaServlet, ctx.getService(SlingSettingsService.class));
+
+    ctx.create().page("/content/mypage");
+    ctx.create().resource("/content/mypage/jcr:content/widget");
+    ctx.currentResource("/content/mypage/jcr:content/widget");
+  }
+
+  @Test
+  public void testGet() throws Exception
+  {
+    schemaServlet.doGet(ctx.request(), ctx.response());
+    assertEquals(200, ctx.response().getStatus());
+    assertNotNull(ctx.response().getHeader("ETag"));
+    assertEquals("private, no-cache", ctx.response().getHeader("Cache-Control"));
+    JsonObject schema = JsonParser.parseString(ctx.response().getOutputAsString()).getAsJsonObject();
+    assertTrue(schema.getAsJsonArray("widgets").size() > 0);
+  }
+
+  @Test
+  public void testRevalidateVersionedRequest() throws Exception
+  {
+    DialogSchemaServlet.DialogSchema schema = DialogSchemaServlet.getSchema("https://captivateprimeqe.adobe.com");
+    ctx.request().setHeader("If-None-Match", schema.getEtag());
+    ctx.request().setParameterMap(Collections.<String, Object>singletonMap("v", schema.getVersion()));
+    schemaServlet.doGet(ctx.request(), ctx.response());
+    assertEquals(304, ctx.response().getStatus());
+    assertEquals(schema.getEtag(), ctx.response().getHeader("ETag"));
+    assertTrue(ctx.response().getHeader("Cache-Control").contains("immutable"));
+    assertEquals("", ctx.response().getOutputAsString());
+  }
+
+  @Test
+  public void testGetOnPublish() throws Exception
+  {
+    ctx.runMode("publish");
+    schemaServlet.doGet(ctx.request(), ctx.response());
+    assertEquals(404, ctx.response().getStatus());
+  }
+
+  @Test
+  public void testGetOutsidePage() throws Exception
+  {
+    ctx.create().resource("/content/dam/widget");
+    ctx.currentResource("/content/dam/widget");
+    schemaServlet.doGet(ctx.request(), ctx.response());
+    assertEquals(404, ctx.response().getStatus());
+  }
+
+  @Test
+  public void testCompile()
+  {
+    EmbeddableWidgetsConfig widgetConfig = new EmbeddableWidgetsConfig();
+    widgetConfig.setName("Trending");
+    widgetConfig.setWidgetRef("com.adobe.captivateprime.lostrip.trending");
+    widgetConfig.setType("widget");
+    EmbeddableWidgetOptions layout = new EmbeddableWidgetOptions();
+    layout.setRef("widgetConfig.attributes.layout");
+    layout.setType("grid|list");
+    layout.setHelpx("https://helpx.adobe.com/layout");
+    widgetConfig.setOptions(Arrays.asList(layout));
+    List<EmbeddableWidgetsConfig> widgets = Arrays.asList(widgetConfig);
+
+    JsonObject schema = DialogSchemaServlet.compile(widgets);
+    JsonObject field = schema.getAsJsonArray("widgets").get(0).getAsJsonObject().getAsJsonArray("fields").get(0).getAsJsonObject();
+    assertEquals("cpWidget#widgetConfig.attributes.layout", field.get("name").getAsString());
+    assertEquals("select", field.get("type").getAsString());
+    assertEquals("list", field.getAsJsonArray("values").get(1).getAsString());
+    assertEquals("https://helpx.adobe.com/layout", field.get("helpx").getAsString());
+    assertFalse(schema.has(Constants.GENERAL_SETTINGS_KEY));
+    assertEquals(schema.toString(), DialogSchemaServlet.compile(widgets).toString());
+  }
+}
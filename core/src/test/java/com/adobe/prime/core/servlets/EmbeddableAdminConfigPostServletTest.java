@@ -11,16 +11,41 @@
 
 package com.adobe.prime.core.servlets;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.jcr.Session;
 
 import org.apache.sling.api.resource.Resource;
-import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import com.adobe.prime.core.jobs.ConfigSaveJobExecutor;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
 import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
 
@@ -31,34 +56,127 @@ public class EmbeddableAdminConfigPostServletTest
 
   private EmbeddableAdminConfigPostServlet postServlet;
 
+  @Mock
+  private JobManager jobManager;
+
+  @Mock
+  private Job job;
+
   @BeforeEach
-  public void setUp()
+  public void setUp() throws Exception
   {
     postServlet = new EmbeddableAdminConfigPostServlet();
+    Field field = EmbeddableAdminConfigPostServlet.class.getDeclaredField("jobManager");
+    field.setAccessible(true);
+    field.set(postServlet, jobManager);
+
+    lenient().when(job.getId()).thenReturn("2022/7/11/config-save-1");
+    lenient().when(job.getTopic()).thenReturn(ConfigSaveJobExecutor.TOPIC);
+    lenient().when(job.getProperty(ConfigSaveJobExecutor.PROPERTY_CONFIG_NAME, String.class)).thenReturn("test-config");
+    lenient().when(jobManager.addJob(eq(ConfigSaveJobExecutor.TOPIC), anyMap())).thenReturn(job);
+    lenient().when(jobManager.getJobById("2022/7/11/config-save-1")).thenReturn(job);
+
     ctx.load().json("/files/AdminConfigRsrc.json", "/conf/global/captivate-prime/test-config/settings/cloudconfigs/cpwidget");
 
     ctx.request().addRequestParameter("item", "test-config");
     ctx.request().addRequestParameter("cpWidget#refreshToken", "12345");
     ctx.request().addRequestParameter("cpWidget#commonConfig.disableLinks", "true");
     ctx.request().addRequestParameter("cpWidget#commonConfig.disableLinks@TypeHint", "boolean");
-    ctx.request().addRequestParameter("cpWidget#commonConfig.value", "5678");
-    ctx.request().addRequestParameter("cpWidget#commonConfig.value@TypeHint", "number");
-    ctx.request().addRequestParameter("cpWidget#commonConfig.captivateHostName", "https://learningmanagerqe.adobe.com");
     ctx.request().addRequestParameter("cpWidget#accountId", "7110");
-    ctx.request().addRequestParameter("cpWidget#theme.background@Delete", "");
   }
-  
+
   @Test
-  public void testPost()
+  @SuppressWarnings("unchecked")
+  public void testPost() throws Exception
   {
     postServlet.doPost(ctx.request(), ctx.response());
+    assertEquals(202, ctx.response().getStatus());
+    JsonObject jobObject = JsonParser.parseString(ctx.response().getOutputAsString()).getAsJsonObject();
+    assertEquals("2022/7/11/config-save-1", jobObject.get("jobId").getAsString());
+
+    ArgumentCaptor<Map<String, Object>> jobProperties = ArgumentCaptor.forClass(Map.class);
+    verify(jobManager).addJob(eq(ConfigSaveJobExecutor.TOPIC), jobProperties.capture());
+    assertEquals("test-config", jobProperties.getValue().get(ConfigSaveJobExecutor.PROPERTY_CONFIG_NAME));
+    String[] names = (String[]) jobProperties.getValue().get(ConfigSaveJobExecutor.PROPERTY_NAMES);
+    String[] values = (String[]) jobProperties.getValue().get(ConfigSaveJobExecutor.PROPERTY_VALUES);
+    assertEquals(4, names.length);
+    assertEquals("12345", values[Arrays.asList(names).indexOf("cpWidget#refreshToken")]);
+
     Resource rsc =
         ctx.request().getResourceResolver().getResource("/conf/global/captivate-prime/test-config/settings/cloudconfigs/cpwidget/jcr:content");
-    ValueMap vm = rsc.getValueMap();
-    assertTrue(vm.get("cpWidget#refreshToken").equals("12345"));
-    assertTrue(vm.get("cpWidget#commonConfig.disableLinks").equals(true));
-    assertTrue(vm.get("cpWidget#commonConfig.value").equals(5678l));
-    assertTrue(vm.get("cpWidget#theme.background").equals(false));
+    assertEquals("f85a9acef88772630c7a55ea3ed9db96", rsc.getValueMap().get("cpWidget#refreshToken"));
+  }
+
+  @Test
+  public void testPostWithoutConfigName() throws Exception
+  {
+    ctx.request().setParameterMap(Collections.<String, Object>singletonMap("cpWidget#accountId", "7110"));
+    postServlet.doPost(ctx.request(), ctx.response());
+    assertEquals(400, ctx.response().getStatus());
+    verify(jobManager, never()).addJob(anyString(), anyMap());
+  }
+
+  @Test
+  public void testPostWithInvalidNumber() throws Exception
+  {
+    ctx.request().addRequestParameter("cpWidget#commonConfig.value", "12ab");
+    ctx.request().addRequestParameter("cpWidget#commonConfig.value@TypeHint", "number");
+    postServlet.doPost(ctx.request(), ctx.response());
+    assertEquals(400, ctx.response().getStatus());
+    verify(jobManager, never()).addJob(anyString(), anyMap());
+  }
+
+  @Test
+  public void testGetStatus() throws Exception
+  {
+    lenient().when(job.getJobState()).thenReturn(Job.JobState.STOPPED);
+    lenient().when(job.getResultMessage()).thenReturn(ConfigSaveJobExecutor.SKU_VALIDATION_ERROR);
+    ctx.request().setParameterMap(Collections.<String, Object>singletonMap("jobId", "2022/7/11/config-save-1"));
+    postServlet.doGet(ctx.request(), ctx.response());
+    JsonObject jobObject = JsonParser.parseString(ctx.response().getOutputAsString()).getAsJsonObject();
+    assertEquals("STOPPED", jobObject.get("state").getAsString());
+    assertEquals(ConfigSaveJobExecutor.SKU_VALIDATION_ERROR, jobObject.get("message").getAsString());
+    assertTrue(ctx.response().getHeader("Cache-Control").contains("no-store"));
+  }
+
+  @Test
+  public void testGetStatusAfterSuccess() throws Exception
+  {
+    lenient().when(job.getJobState()).thenReturn(Job.JobState.SUCCEEDED);
+    lenient().when(job.getResultMessage()).thenReturn("Saved configuration test-config, 2 properties changed");
+    ctx.request().setParameterMap(Collections.<String, Object>singletonMap("jobId", "2022/7/11/config-save-1"));
+    postServlet.doGet(ctx.request(), ctx.response());
+    assertEquals(200, ctx.response().getStatus());
+    JsonObject jobObject = JsonParser.parseString(ctx.response().getOutputAsString()).getAsJsonObject();
+    assertEquals("SUCCEEDED", jobObject.get("state").getAsString());
+    assertEquals("Saved configuration test-config, 2 properties changed", jobObject.get("message").getAsString());
+  }
+
+  @Test
+  public void testGetStatusWithoutPermission() throws Exception
+  {
+    Session session = mock(Session.class);
+    lenient().when(session.hasPermission(anyString(), anyString())).thenReturn(false);
+    ResourceResolver resolver = mock(ResourceResolver.class);
+    lenient().when(resolver.adaptTo(Session.class)).thenReturn(session);
+    MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(resolver, ctx.bundleContext());
+    request.setParameterMap(Collections.<String, Object>singletonMap("jobId", "2022/7/11/config-save-1"));
+    MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+
+    postServlet.doGet(request, response);
+
+    assertEquals(403, response.getStatus());
+    verify(session).hasPermission("/conf/global/captivate-prime/test-config/settings/cloudconfigs/cpwidget/jcr:content",
+        Session.ACTION_ADD_NODE + "," + Session.ACTION_SET_PROPERTY);
+    verify(job, never()).getResultMessage();
+  }
+
+  @Test
+  public void testGetUnknownJob() throws Exception
+  {
+    ctx.request().setParameterMap(Collections.<String, Object>singletonMap("jobId", "unknown"));
+    postServlet.doGet(ctx.request(), ctx.response());
+    assertEquals(404, ctx.response().getStatus());
   }
 
 }
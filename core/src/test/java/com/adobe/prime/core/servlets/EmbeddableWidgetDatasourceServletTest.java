@@ -11,12 +11,14 @@
 
 package com.adobe.prime.core.servlets;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.lenient;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -99,4 +101,18 @@ public class EmbeddableWidgetDatasourceServletTest
     assertTrue(resourcesNames.contains("./cpWidget#widgetConfig.attributes.catalogIds"));
   }
 
+  @Test
+  public void testGetRequestedWidgetOnly()
+  {
+    ctx.request().setParameterMap(Collections.singletonMap("widgetRef", "com.adobe.captivateprime.lostrip.trending"));
+    dsServlet.doGet(ctx.request(), ctx.response());
+    SimpleDataSource sds = (SimpleDataSource) ctx.request().getAttribute(DataSource.class.getName());
+    Iterator<Resource> rsrcs = sds.iterator();
+    rsrcs.next();
+    while (rsrcs.hasNext())
+    {
+      assertEquals("com.adobe.captivateprime.lostrip.trending", rsrcs.next().getValueMap().get("granite:itemtype"));
+    }
+  }
+
 }
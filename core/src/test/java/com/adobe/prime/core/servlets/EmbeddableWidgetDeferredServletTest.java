@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+
+import java.lang.reflect.Field;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.services.EmbeddableWidgetConfigurationService;
+import com.adobe.prime.core.services.EmbeddableWidgetService;
+import com.day.cq.wcm.api.Page;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith({AemContextExtension.class, MockitoExtension.class})
+public class EmbeddableWidgetDeferredServletTest
+{
+  private final AemContext ctx = new AemContext();
+
+  private EmbeddableWidgetDeferredServlet deferredServlet;
+
+  private final Map<String, Object> adminConfigs = new HashMap<>();
+
+  @Mock
+  private EmbeddableWidgetService widgetService;
+
+  @Mock
+  private EmbeddableWidgetConfigurationService widgetConfigService;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    deferredServlet = new EmbeddableWidgetDeferredServlet();
+
+    adminConfigs.put(Constants.CP_NODE_PROPERTY_PREFIX + "commonConfig.captivateHostName", "https://captivateprimeqe.adobe.com");
+    lenient().when(widgetConfigService.getAvailaleAdminConfiguration(any(Resource.class))).thenReturn(adminConfigs);
+    lenient().when(widgetService.getAccessTokenOfUser(any(SlingHttpServletRequest.class), any(Page.class), anyLong())).thenReturn("123456");
+    lenient().when(widgetService.getDeferredBudget()).thenReturn(5000L);
+
+    Field serviceField = EmbeddableWidgetDeferredServlet.class.getDeclaredField("widgetService");
+    serviceField.setAccessible(true);
+    serviceField.set(deferredServlet, widgetService);
+
+    serviceField = EmbeddableWidgetDeferredServlet.class.getDeclaredField("widgetConfigService");
+    serviceField.setAccessible(true);
+    serviceField.set(deferredServlet, widgetConfigService);
+
+    ctx.create().page("/content/mypage");
+    ctx.create().resource("/content/mypage/jcr:content/widget", Constants.SELECTED_WIDGET_REF, "com.adobe.captivateprime.lostrip.trending");
+    ctx.currentResource("/content/mypage/jcr:content/widget");
+  }
+
+  @Test
+  public void testGet() throws Exception
+  {
+    deferredServlet.doGet(ctx.request(), ctx.response());
+    JsonObject deferredObject = JsonParser.parseString(ctx.response().getOutputAsString()).getAsJsonObject();
+    assertEquals("123456", deferredObject.get("accessToken").getAsString());
+    assertTrue(ctx.response().getHeader("Cache-Control").contains("no-store"));
+  }
+
+  @Test
+  public void testGetWithSlowUpstream() throws Exception
+  {
+    lenient().when(widgetService.getDeferredBudget()).thenReturn(300L);
+    try (ServerSocket upstream = new ServerSocket(0))
+    {
+      // Accepts the connection but never answers
+      Thread acceptor = new Thread(() -> {
+        try (Socket socket = upstream.accept())
+        {
+          Thread.sleep(5000);
+        } catch (Exception e)
+        {
+          // closed by the test
+        }
+      });
+      acceptor.setDaemon(true);
+      acceptor.start();
+      adminConfigs.put(Constants.CP_NODE_PROPERTY_PREFIX + "commonConfig.captivateHostName", "http://127.0.0.1:" + upstream.getLocalPort());
+
+      long startTime = System.currentTimeMillis();
+      deferredServlet.doGet(ctx.request(), ctx.response());
+      long endTime = System.currentTimeMillis();
+      assertTrue(endTime - startTime < 3000);
+      assertEquals(200, ctx.response().getStatus());
+      verify(widgetService).getAccessTokenOfUser(any(SlingHttpServletRequest.class), any(Page.class),
+          longThat(deadline -> deadline <= endTime + 300));
+    }
+  }
+
+  @Test
+  public void testGetOutsidePage() throws Exception
+  {
+    ctx.create().resource("/var/widget");
+    ctx.currentResource("/var/widget");
+    deferredServlet.doGet(ctx.request(), ctx.response());
+    assertEquals(404, ctx.response().getStatus());
+  }
+}
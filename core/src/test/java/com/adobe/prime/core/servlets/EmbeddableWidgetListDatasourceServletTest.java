@@ -11,6 +11,9 @@
 
 package com.adobe.prime.core.servlets;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.lenient;
@@ -93,4 +96,21 @@ public class EmbeddableWidgetListDatasourceServletTest
     assertTrue(resourcesValues.contains("com.adobe.captivateprime.lostrip.myinterest"));
   }
 
+  @Test
+  public void testItemsSharedAcrossRequests()
+  {
+    List<Map<String, Object>> items = EmbeddableWidgetListDatasourceServlet.getWidgetItems("https://captivateprimeqe.adobe.com");
+    assertFalse(items.isEmpty());
+    assertSame(items, EmbeddableWidgetListDatasourceServlet.getWidgetItems("https://captivateprimeqe.adobe.com"));
+    assertThrows(UnsupportedOperationException.class, () -> items.get(0).put("selected", true));
+  }
+
+  @Test
+  public void testItemsBoundToRequestResolver()
+  {
+    dsServlet.doGet(ctx.request(), ctx.response());
+    SimpleDataSource sds = (SimpleDataSource) ctx.request().getAttribute(DataSource.class.getName());
+    Resource item = sds.iterator().next();
+    assertSame(ctx.request().getResourceResolver(), item.getResourceResolver());
+  }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.jobs.GroupTokenPrewarmJobExecutor;
+import com.adobe.prime.core.services.EmbeddableWidgetConfigurationService;
+import com.adobe.prime.core.services.SharedTokenCache;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith({AemContextExtension.class, MockitoExtension.class})
+public class GroupTokenPrewarmServletTest
+{
+  private final AemContext ctx = new AemContext(ResourceResolverType.JCR_MOCK);
+
+  private GroupTokenPrewarmServlet prewarmServlet;
+
+  @Mock
+  private JobManager jobManager;
+
+  @Mock
+  private EmbeddableWidgetConfigurationService widgetConfigService;
+
+  @Mock
+  private SharedTokenCache sharedTokenCache;
+
+  @Mock
+  private Job job;
+
+  private final Map<String, Object> adminConfigs = new HashMap<>();
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    prewarmServlet = new GroupTokenPrewarmServlet();
+    Field field = GroupTokenPrewarmServlet.class.getDeclaredField("jobManager");
+    field.setAccessible(true);
+    field.set(prewarmServlet, jobManager);
+    field = GroupTokenPrewarmServlet.class.getDeclaredField("widgetConfigService");
+    field.setAccessible(true);
+    field.set(prewarmServlet, widgetConfigService);
+    field = GroupTokenPrewarmServlet.class.getDeclaredField("sharedTokenCache");
+    field.setAccessible(true);
+    field.set(prewarmServlet, sharedTokenCache);
+    lenient().when(sharedTokenCache.isRemote()).thenReturn(true);
+
+    ctx.create().page("/content/mypage");
+    ctx.create().resource("/content/dam/asset");
+    ctx.create().resource("/conf/global/captivate-prime/test-config/settings/cloudconfigs/cpwidget/jcr:content");
+    adminConfigs.put(Constants.AdminConfigurations.ADMIN_CONFIG_PATH, "/conf/global/captivate-prime/test-config/settings/cloudconfigs/cpwidget");
+    lenient().when(widgetConfigService.getAvailaleAdminConfiguration(any(Resource.class))).thenReturn(adminConfigs);
+
+    lenient().when(job.getId()).thenReturn("2022/7/11/prewarm-1");
+    lenient().when(job.getTopic()).thenReturn(GroupTokenPrewarmJobExecutor.TOPIC);
+    lenient().when(job.getProperty(GroupTokenPrewarmJobExecutor.PROPERTY_PAGE_PATH, String.class)).thenReturn("/content/mypage");
+    lenient().when(job.getJobState()).thenReturn(Job.JobState.ACTIVE);
+    lenient().when(jobManager.getJobById("2022/7/11/prewarm-1")).thenReturn(job);
+  }
+
+  @Test
+  public void testPostWithNonPagePath() throws Exception
+  {
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put("group", "learners");
+    parameters.put("pagePath", "/content/dam/asset");
+    ctx.request().setParameterMap(parameters);
+
+    prewarmServlet.doPost(ctx.request(), ctx.response());
+
+    assertEquals(HttpServletResponse.SC_BAD_REQUEST, ctx.response().getStatus());
+    verify(jobManager, never()).addJob(anyString(), anyMap());
+  }
+
+  @Test
+  public void testPostWithoutRemoteCache() throws Exception
+  {
+    lenient().when(sharedTokenCache.isRemote()).thenReturn(false);
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put("group", "learners");
+    parameters.put("pagePath", "/content/mypage");
+    ctx.request().setParameterMap(parameters);
+
+    prewarmServlet.doPost(ctx.request(), ctx.response());
+
+    assertEquals(HttpServletResponse.SC_CONFLICT, ctx.response().getStatus());
+    verify(jobManager, never()).addJob(anyString(), anyMap());
+  }
+
+  @Test
+  public void testGetStatus() throws Exception
+  {
+    ctx.request().setParameterMap(Collections.<String, Object>singletonMap("jobId", "2022/7/11/prewarm-1"));
+
+    prewarmServlet.doGet(ctx.request(), ctx.response());
+
+    JsonObject jobObject = JsonParser.parseString(ctx.response().getOutputAsString()).getAsJsonObject();
+    assertEquals("ACTIVE", jobObject.get("state").getAsString());
+  }
+
+  @Test
+  public void testGetStatusWithoutPermission() throws Exception
+  {
+    adminConfigs.clear();
+    ctx.request().setParameterMap(Collections.<String, Object>singletonMap("jobId", "2022/7/11/prewarm-1"));
+
+    prewarmServlet.doGet(ctx.request(), ctx.response());
+
+    assertEquals(HttpServletResponse.SC_FORBIDDEN, ctx.response().getStatus());
+    verify(job, never()).getProgressLog();
+  }
+}
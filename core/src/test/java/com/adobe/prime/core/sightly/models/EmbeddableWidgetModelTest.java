@@ -11,10 +11,16 @@
 
 package com.adobe.prime.core.sightly.models;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -33,6 +39,7 @@ import com.adobe.prime.core.Constants;
 import com.adobe.prime.core.services.EmbeddableWidgetConfigurationService;
 import com.adobe.prime.core.services.EmbeddableWidgetService;
 import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.WCMMode;
 import com.day.cq.wcm.scripting.WCMBindingsConstants;
 import com.google.gson.JsonParser;
 
@@ -61,8 +68,10 @@ public class EmbeddableWidgetModelTest
   {
     ctx.addModelsForClasses(EmbeddableWidgetModel.class);
     
-    lenient().when(widgetService.getAccessTokenOfUser(eq(ctx.request()), any(Page.class)))
+    lenient().when(widgetService.isTokenRequired(eq(ctx.request()))).thenReturn(true);
+    lenient().when(widgetService.getAccessTokenOfUser(eq(ctx.request()), any(Page.class), anyLong()))
         .thenReturn("123456");
+    lenient().when(widgetService.getRenderBudget()).thenReturn(60000L);
     lenient().when(widgetService.getDefaultHostName()).thenReturn("https://captivateprimeqe.adobe.com");
     ctx.registerService(EmbeddableWidgetService.class, widgetService, org.osgi.framework.Constants.SERVICE_RANKING, Integer.MAX_VALUE);
     Map<String, Object> adminConfigs = new HashMap<>();
@@ -128,6 +137,61 @@ public class EmbeddableWidgetModelTest
     assertTrue(expectedRunMode.equals(runMode));
   }
 
+  @Test
+  void testEditModeSkipsToken()
+  {
+    WCMMode.EDIT.toRequest(ctx.request());
+    clearInvocations(widgetService);
+    EmbeddableWidgetModel editModel = ctx.request().adaptTo(EmbeddableWidgetModel.class);
+    assertTrue(Constants.RUNMODE_AUTHOR.equals(editModel.getRunMode()));
+    assertTrue(JsonParser.parseString(editModel.getWidgetConfigs()).getAsJsonObject().getAsJsonObject("auth").get("accessToken").getAsString().isEmpty());
+    verify(widgetService, never()).getAccessTokenOfUser(eq(ctx.request()), any(Page.class), anyLong());
+  }
+
+  @Test
+  void testDeferredUrlWhenTokenAvailable()
+  {
+    assertTrue(widgetModel.getDeferredUrl().isEmpty());
+  }
+
+  @Test
+  void testDeferredUrlWhenBudgetExhausted()
+  {
+    lenient().when(widgetService.getAccessTokenOfUser(eq(ctx.request()), any(Page.class), anyLong())).thenReturn("");
+    lenient().when(widgetService.getRenderBudget()).thenReturn(0L);
+    EmbeddableWidgetModel deferredModel = ctx.request().adaptTo(EmbeddableWidgetModel.class);
+    assertTrue(deferredModel.getDeferredUrl().endsWith("/content/prime/widgetModel." + Constants.DEFERRED_RENDER_SELECTOR + ".json"));
+  }
+
+  @Test
+  void testAnonymousRequestSkipsToken()
+  {
+    lenient().when(widgetService.isTokenRequired(eq(ctx.request()))).thenReturn(false);
+    clearInvocations(widgetService);
+    EmbeddableWidgetModel anonymousModel = ctx.request().adaptTo(EmbeddableWidgetModel.class);
+    String configs = anonymousModel.getWidgetConfigs();
+    assertTrue(JsonParser.parseString(configs).getAsJsonObject().getAsJsonObject("auth").get("accessToken").getAsString().isEmpty());
+    assertTrue(anonymousModel.getDeferredUrl().isEmpty());
+    verify(widgetService, never()).getAccessTokenOfUser(eq(ctx.request()), any(Page.class), anyLong());
+  }
+
+  @Test
+  void testTokenRenderIsNotCached()
+  {
+    assertEquals("no-cache", ctx.response().getHeader("Dispatcher"));
+    assertEquals("private, no-store", ctx.response().getHeader("Cache-Control"));
+  }
+
+  @Test
+  void testAnonymousRenderLeavesCachingHeaders()
+  {
+    lenient().when(widgetService.isTokenRequired(eq(ctx.request()))).thenReturn(false);
+    ctx.response().reset();
+    ctx.request().adaptTo(EmbeddableWidgetModel.class);
+    assertNull(ctx.response().getHeader("Dispatcher"));
+    assertNull(ctx.response().getHeader("Cache-Control"));
+  }
+
   @Test
   void testWidgetCommunicatorUrl()
   {
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveConcurrencyLimiterTest
+{
+
+  @Test
+  public void testRejectsAboveLimit()
+  {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("limit.host", 2, 10, 1000);
+    assertTrue(limiter.acquire(0));
+    assertTrue(limiter.acquire(0));
+    assertFalse(limiter.acquire(10));
+    assertEquals(2, limiter.getInFlight());
+    assertTrue(EmbeddableWidgetMetrics.getCount("limiter.limit.host.rejected") > 0);
+    limiter.cancel();
+    assertTrue(limiter.acquire(0));
+  }
+
+  @Test
+  public void testFailureHalvesLimit()
+  {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("backoff.host", 8, 10, 1000);
+    assertTrue(limiter.acquire(0));
+    limiter.release(10, false);
+    assertEquals(4, limiter.getLimit());
+    assertTrue(limiter.acquire(0));
+    limiter.release(5000, true);
+    assertEquals(2, limiter.getLimit());
+  }
+
+  @Test
+  public void testFastSuccessGrowsLimitUpToMax()
+  {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("grow.host", 1, 3, 1000);
+    for (int i = 0; i < 20; i++)
+    {
+      assertTrue(limiter.acquire(0));
+      limiter.release(10, true);
+    }
+    assertEquals(3, limiter.getLimit());
+    assertEquals(0, limiter.getInFlight());
+  }
+}
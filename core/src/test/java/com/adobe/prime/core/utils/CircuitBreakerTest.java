@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class CircuitBreakerTest
+{
+
+  @Test
+  public void testOpensAfterThreshold()
+  {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("test.host", 2, 60000);
+    assertTrue(circuitBreaker.allowRequest());
+    circuitBreaker.recordFailure();
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    circuitBreaker.recordFailure();
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    assertFalse(circuitBreaker.allowRequest());
+    assertTrue(EmbeddableWidgetMetrics.getCount("circuit.test.host.rejected") > 0);
+  }
+
+  @Test
+  public void testHalfOpenTrialClosesCircuit()
+  {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("trial.host", 1, 0);
+    circuitBreaker.recordFailure();
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    assertTrue(circuitBreaker.allowRequest());
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    assertFalse(circuitBreaker.allowRequest());
+    circuitBreaker.recordSuccess();
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+
+  @Test
+  public void testHalfOpenTrialFailureReopensCircuit()
+  {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("reopen.host", 1, 0);
+    circuitBreaker.recordFailure();
+    assertTrue(circuitBreaker.allowRequest());
+    circuitBreaker.recordFailure();
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+  }
+}
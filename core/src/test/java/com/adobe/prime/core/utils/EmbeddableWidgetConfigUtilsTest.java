@@ -11,17 +11,22 @@
 
 package com.adobe.prime.core.utils;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import com.adobe.prime.core.entity.EmbeddableWidgetsConfig;
+import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
 public class EmbeddableWidgetConfigUtilsTest
@@ -57,6 +62,37 @@ public class EmbeddableWidgetConfigUtilsTest
     assertNotNull(genrealConfig);
   }
 
+  @Test
+  public void testAuthenticatedWidgetRefs()
+  {
+    String catalog = "[{\"type\":\"widget\",\"widgetRef\":\"learner.widget\",\"options\":[{\"ref\":\"auth.accessToken\"}]},"
+        + "{\"type\":\"widget\",\"widgetRef\":\"public.widget\",\"options\":[{\"ref\":\"theme.background\"}]},"
+        + "{\"type\":\"widget\",\"widgetRef\":\"bare.widget\"}]";
+    List<EmbeddableWidgetsConfig> widgets = Arrays.asList(new Gson().fromJson(catalog, EmbeddableWidgetsConfig[].class));
+    Set<String> authWidgetRefs = EmbeddableWidgetConfigUtils.getAuthenticatedWidgetRefs(widgets);
+    assertTrue(authWidgetRefs.contains("learner.widget"));
+    assertFalse(authWidgetRefs.contains("public.widget"));
+    assertFalse(authWidgetRefs.contains("bare.widget"));
+  }
+
+  @Test
+  public void testCatalogVersionWithoutCatalog()
+  {
+    assertEquals(-1, EmbeddableWidgetConfigUtils.getCatalogVersion("https://unknown.host"));
+  }
+
+  @Test
+  public void testSkuValidationWithoutAccount()
+  {
+    assertFalse(EmbeddableWidgetConfigUtils.isAccountSKUValid(hostName, ""));
+  }
+
+  @Test
+  public void testAuthenticationRequiredWithoutCatalog()
+  {
+    assertTrue(EmbeddableWidgetConfigUtils.isAuthenticationRequired("https://unknown.host", "any.widget"));
+  }
+
   @Test
   public void testWidgetConfig()
   {
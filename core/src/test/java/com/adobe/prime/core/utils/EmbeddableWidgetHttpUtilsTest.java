@@ -0,0 +1,106 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.http.client.methods.HttpGet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.adobe.prime.core.Constants;
+import com.adobe.prime.core.entity.EmbeddableWidgetsConfig;
+import com.sun.net.httpserver.HttpServer;
+
+public class EmbeddableWidgetHttpUtilsTest
+{
+  private static final String CATALOG = "[{\"type\":\"widget\",\"widgetRef\":\"learner.widget\",\"options\":[{\"ref\":\"auth.accessToken\"}]}]";
+
+  private HttpServer upstream;
+  private String hostName;
+
+  private volatile int status = 200;
+  private volatile String body = CATALOG;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    EmbeddableWidgetHttpUtils.configureCircuitBreaker(5, 30000);
+    upstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    upstream.createContext("/", exchange -> {
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(status, bytes.length);
+      try (OutputStream out = exchange.getResponseBody())
+      {
+        out.write(bytes);
+      }
+    });
+    upstream.start();
+    hostName = "http://127.0.0.1:" + upstream.getAddress().getPort();
+  }
+
+  @AfterEach
+  public void tearDown()
+  {
+    upstream.stop(0);
+    EmbeddableWidgetHttpUtils.configureCircuitBreaker(5, 30000);
+  }
+
+  @Test
+  public void testExecute() throws Exception
+  {
+    assertEquals(CATALOG, EmbeddableWidgetHttpUtils.execute(new HttpGet(hostName + Constants.CPUrl.CONFIG_URL), 2000));
+    assertEquals(CircuitBreaker.State.CLOSED, EmbeddableWidgetHttpUtils.getCircuitBreaker("127.0.0.1").getState());
+  }
+
+  @Test
+  public void testExecuteWithServerError() throws Exception
+  {
+    status = 503;
+    body = "{\"error\":\"unavailable\"}";
+    assertNull(EmbeddableWidgetHttpUtils.execute(new HttpGet(hostName + Constants.CPUrl.CONFIG_URL), 2000));
+  }
+
+  @Test
+  public void testServerErrorKeepsCachedCatalog() throws Exception
+  {
+    Field updateEvery = EmbeddableWidgetConfigUtils.class.getDeclaredField("UPDATE_EVERY_MILLI");
+    updateEvery.setAccessible(true);
+    long previousUpdateEvery = updateEvery.getLong(null);
+    // expire the catalog right away so that every lookup fetches it again
+    updateEvery.setLong(null, -1);
+    try
+    {
+      List<EmbeddableWidgetsConfig> catalog = EmbeddableWidgetConfigUtils.getEmbeddableWidgetsConfig(hostName, 2000);
+      assertEquals(1, catalog.size());
+
+      status = 503;
+      body = "{\"error\":\"unavailable\"}";
+      assertSame(catalog, EmbeddableWidgetConfigUtils.getEmbeddableWidgetsConfig(hostName, 2000));
+
+      status = 200;
+      assertSame(catalog, EmbeddableWidgetConfigUtils.getEmbeddableWidgetsConfig(hostName, 2000));
+    } finally
+    {
+      updateEvery.setLong(null, previousUpdateEvery);
+    }
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class FailureBackoffCacheTest
+{
+
+  @Test
+  public void testDelayDoublesUpToMax()
+  {
+    FailureBackoffCache backoffCache = new FailureBackoffCache("double", 1000, 3000, 10);
+    assertEquals(1000, backoffCache.recordFailure("user|config"));
+    assertEquals(2000, backoffCache.recordFailure("user|config"));
+    assertEquals(3000, backoffCache.recordFailure("user|config"));
+    assertTrue(backoffCache.isBackingOff("user|config"));
+    assertFalse(backoffCache.isBackingOff("other|config"));
+    assertTrue(EmbeddableWidgetMetrics.getCount("double.backoff.hits") > 0);
+  }
+
+  @Test
+  public void testSuccessClearsBackoff()
+  {
+    FailureBackoffCache backoffCache = new FailureBackoffCache("success", 1000, 3000, 10);
+    backoffCache.recordFailure("user|config");
+    backoffCache.recordSuccess("user|config");
+    assertFalse(backoffCache.isBackingOff("user|config"));
+    assertEquals(1000, backoffCache.recordFailure("user|config"));
+  }
+
+  @Test
+  public void testSizeIsBounded()
+  {
+    FailureBackoffCache backoffCache = new FailureBackoffCache("bounded", 1000, 3000, 2);
+    backoffCache.recordFailure("a");
+    backoffCache.recordFailure("b");
+    backoffCache.recordFailure("c");
+    assertEquals(2, backoffCache.size());
+    assertFalse(backoffCache.isBackingOff("a"));
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyTrackerTest
+{
+
+  @Test
+  public void testNoPercentileBeforeMinSamples()
+  {
+    LatencyTracker latencyTracker = new LatencyTracker(10, 5);
+    latencyTracker.record(100);
+    assertEquals(-1, latencyTracker.getPercentile(95));
+  }
+
+  @Test
+  public void testPercentile()
+  {
+    LatencyTracker latencyTracker = new LatencyTracker(100, 1);
+    for (int i = 1; i <= 100; i++)
+    {
+      latencyTracker.record(i);
+    }
+    assertEquals(95, latencyTracker.getPercentile(95));
+    assertEquals(50, latencyTracker.getPercentile(50));
+    assertEquals(100, latencyTracker.getPercentile(100));
+  }
+
+  @Test
+  public void testOldSamplesAreOverwritten()
+  {
+    LatencyTracker latencyTracker = new LatencyTracker(4, 1);
+    for (int i = 0; i < 4; i++)
+    {
+      latencyTracker.record(1000);
+    }
+    for (int i = 0; i < 4; i++)
+    {
+      latencyTracker.record(10);
+    }
+    assertEquals(4, latencyTracker.getCount());
+    assertEquals(10, latencyTracker.getPercentile(100));
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.utils;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class RateLimiterTest
+{
+
+  @Test
+  public void testBurstThenThrottled()
+  {
+    RateLimiter rateLimiter = new RateLimiter(0.001, 3);
+    assertTrue(rateLimiter.tryAcquire());
+    assertTrue(rateLimiter.tryAcquire());
+    assertTrue(rateLimiter.tryAcquire());
+    assertFalse(rateLimiter.tryAcquire());
+  }
+
+  @Test
+  public void testRefill() throws Exception
+  {
+    RateLimiter rateLimiter = new RateLimiter(100, 1);
+    assertTrue(rateLimiter.tryAcquire());
+    assertFalse(rateLimiter.tryAcquire());
+    Thread.sleep(50);
+    assertTrue(rateLimiter.tryAcquire());
+  }
+
+  @Test
+  public void testAcquireWaitsForPermit() throws Exception
+  {
+    RateLimiter rateLimiter = new RateLimiter(20, 1);
+    rateLimiter.acquire();
+    long start = System.nanoTime();
+    rateLimiter.acquire();
+    assertTrue(System.nanoTime() - start >= 30_000_000L);
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2021 Adobe. All rights reserved. This file is licensed to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR REPRESENTATIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.adobe.prime.core.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class ValidationResultCacheTest
+{
+
+  @Test
+  public void testRemembersOutcomes()
+  {
+    ValidationResultCache validationCache = new ValidationResultCache("outcomes", 60000, 60000, 10);
+    validationCache.put("host|valid", true);
+    validationCache.put("host|invalid", false);
+    assertTrue(validationCache.get("host|valid"));
+    assertFalse(validationCache.get("host|invalid"));
+    assertNull(validationCache.get("host|unknown"));
+    assertTrue(EmbeddableWidgetMetrics.getCount("outcomes.cache.hits") >= 2);
+  }
+
+  @Test
+  public void testNegativeTtlIsSeparate() throws InterruptedException
+  {
+    ValidationResultCache validationCache = new ValidationResultCache("ttl", 60000, 1, 10);
+    validationCache.put("host|valid", true);
+    validationCache.put("host|invalid", false);
+    Thread.sleep(5);
+    assertTrue(validationCache.get("host|valid"));
+    assertNull(validationCache.get("host|invalid"));
+    assertEquals(1, validationCache.size());
+  }
+
+  @Test
+  public void testZeroTtlIsNotCached()
+  {
+    ValidationResultCache validationCache = new ValidationResultCache("zero", 60000, 0, 10);
+    validationCache.put("host|invalid", false);
+    assertNull(validationCache.get("host|invalid"));
+  }
+
+  @Test
+  public void testSizeIsBounded()
+  {
+    ValidationResultCache validationCache = new ValidationResultCache("bounded", 60000, 60000, 2);
+    validationCache.put("a", true);
+    validationCache.put("b", true);
+    validationCache.put("c", true);
+    assertEquals(2, validationCache.size());
+    assertNull(validationCache.get("a"));
+  }
+}
@@ -13,50 +13,82 @@
     "use strict";
     
     var CP_DIALOG_REL = ".cp-dialog-form-rel";
+    var FIELDS_CONTAINER = ".cp-widget-fields";
 
-    function handleHiddenOptions()
+    function handleHiddenOptions($scope)
     {
-        $("input.hideOption").closest("div.coral-Form-fieldwrapper").attr("hidden",'');
+        $scope.find("input.hideOption").closest("div.coral-Form-fieldwrapper").attr("hidden",'');
     }
 
-    function handleSelection() {
-      $(CP_DIALOG_REL).find("input[type='hidden']").each(function () {
-          if ($(this).attr("name").indexOf("@Delete") != -1) {
-            $(this).remove();
-          }
-        });
+    function isHiddenOption(divWrapper) {
+      return divWrapper.find("label#hideOption").length > 0 || divWrapper.find("input.hideOption").length > 0;
+    }
 
-      var selectedWidget = $(".selector-widget coral-select-item:selected")[0]
-        .value;
+    function getSelectedWidget() {
+      return $(".selector-widget coral-select-item:selected")[0].value;
+    }
+
+    function findDeleteInput(elemName) {
+      return $(CP_DIALOG_REL).find("input[type='hidden']").filter(function () {
+        return this.name === elemName + "@Delete";
+      });
+    }
 
-      $(CP_DIALOG_REL).find(":input, coral-select").each(function (e) {
+    // Fields of the previously selected widget are dropped from the form and their properties
+    // deleted on submit. Hidden options keep their stored values.
+    function removeWidgetFields(selectedWidget) {
+      $(CP_DIALOG_REL).find(":input, coral-select").each(function () {
           var elemName = $(this).attr("name");
           var itemType = $(this).attr("itemtype");
 
-          if (elemName && itemType) {
-            if (itemType !== selectedWidget) {
-              let divWrapper = $(this).closest("div.coral-Form-fieldwrapper");
-              divWrapper.attr("hidden", "");
-              if (divWrapper.find("label#hideOption").length < 1 && divWrapper.find("input.hideOption").length < 1) {
-                let deleteName = elemName + "@Delete";
-                $("<input>").attr({ type: "hidden", name: deleteName }).appendTo(CP_DIALOG_REL);
-                $(this).attr("disabled", "");
-              }
-            } else {
-              let divWrapper = $(this).closest("div.coral-Form-fieldwrapper");
-              if (divWrapper.find("label#hideOption").length < 1 && divWrapper.find("input.hideOption").length < 1) {
-                divWrapper.removeAttr("hidden");
-              }
-              $(this).removeAttr("disabled");
+          if (elemName && itemType && itemType !== selectedWidget) {
+            let divWrapper = $(this).closest("div.coral-Form-fieldwrapper");
+            if (!isHiddenOption(divWrapper) && findDeleteInput(elemName).length < 1) {
+              $("<input>").attr({ type: "hidden", name: elemName + "@Delete" }).appendTo(CP_DIALOG_REL);
             }
+            divWrapper.remove();
           }
         });
     }
 
+    function loadWidgetFields(selectedWidget) {
+      let container = $(FIELDS_CONTAINER);
+      let contentPath = $(CP_DIALOG_REL).closest("form").attr("action");
+      $.get(container.data("fieldsPath") + ".html" + contentPath, { widgetRef: selectedWidget }).done(function (html) {
+        if (selectedWidget !== getSelectedWidget()) {
+          return;
+        }
+        let fields = $(html).find("div.coral-Form-fieldwrapper").filter(function () {
+          return $(this).find(".selector-widget").length < 1;
+        });
+        fields.find(":input, coral-select").each(function () {
+          let elemName = $(this).attr("name");
+          if (elemName) {
+            findDeleteInput(elemName).remove();
+          }
+        });
+        container.append(fields);
+        fields.trigger("foundation-contentloaded");
+        handleHiddenOptions(fields);
+      });
+    }
+
+    function handleSelection() {
+      let selectedWidget = getSelectedWidget();
+      removeWidgetFields(selectedWidget);
+      if ($(CP_DIALOG_REL).find("[itemtype='" + selectedWidget + "']").length < 1) {
+        loadWidgetFields(selectedWidget);
+      }
+    }
+
    $(document).on("foundation-contentloaded", function (e) {
         let usageTypeSelectElem = $(".selector-widget").get(0);
+        if (!usageTypeSelectElem || $(usageTypeSelectElem).data("cpSelectionBound")) {
+            return;
+        }
+        $(usageTypeSelectElem).data("cpSelectionBound", true);
         Coral.commons.ready(usageTypeSelectElem, function() {
-            handleHiddenOptions();
+            handleHiddenOptions($(CP_DIALOG_REL));
             handleSelection();
             usageTypeSelectElem.on('change', handleSelection);
         });
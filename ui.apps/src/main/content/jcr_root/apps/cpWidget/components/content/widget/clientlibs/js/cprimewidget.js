@@ -18,7 +18,8 @@
         DATA_RUN_MODE = "cp-runmode",
         WIDGET_SRC_URL_DATA = "cp-widget-src-url",
         WIDGET_WRAPPER_DIV = ".cpWidgetWrapperDiv",
-        WIDGET_COMMUNICATOR_URL = "cp-widget-communicator-url";
+        WIDGET_COMMUNICATOR_URL = "cp-widget-communicator-url",
+        DEFERRED_URL_DATA = "cp-deferred-url";
     
     var scriptLoaded = false;
 
@@ -47,23 +48,42 @@
             var ref = configsDivWrapper.data(WIDGET_REF_DATA);
              
             var isAuthorMode = configsDivWrapper.data(DATA_RUN_MODE) === "author" ? true : false;
+            var deferredUrl = configsDivWrapper.data(DEFERRED_URL_DATA);
 
-		    let primeWidget = window.primecommunicator.createWidget({
-                                previewMode: isAuthorMode,
-                                host: "aem",
-                                ref: ref,
-                                config: widgetConfigObj,
-                                container: containerObj,
-                                initialWidth: 300,
-                                initialHeight: 200,
-                                autoFitWidth: false,
-                                autoFitHeight: true
-                            }); 
+            if (deferredUrl) {
+                $.getJSON(deferredUrl).done(function (deferredData) {
+                    widgetConfigObj.auth = widgetConfigObj.auth || {};
+                    widgetConfigObj.auth.accessToken = deferredData.accessToken;
+                    if (deferredData.widgetRef) {
+                        widgetConfigObj.widgetConfig = widgetConfigObj.widgetConfig || {};
+                        widgetConfigObj.widgetConfig.widgetRef = deferredData.widgetRef;
+                    }
+                    createWidget(deferredData.ref || ref, widgetConfigObj, containerObj, isAuthorMode);
+                }).fail(function () {
+                    createWidget(ref, widgetConfigObj, containerObj, isAuthorMode);
+                });
+            } else {
+                createWidget(ref, widgetConfigObj, containerObj, isAuthorMode);
+            }
         }); 
             
         });
      });
     
+    function createWidget(ref, widgetConfigObj, containerObj, isAuthorMode) {
+        window.primecommunicator.createWidget({
+            previewMode: isAuthorMode,
+            host: "aem",
+            ref: ref,
+            config: widgetConfigObj,
+            container: containerObj,
+            initialWidth: 300,
+            initialHeight: 200,
+            autoFitWidth: false,
+            autoFitHeight: true
+        });
+    }
+
     function loadWidgetCommunicatorScript() {
         
         if (!scriptLoaded) {
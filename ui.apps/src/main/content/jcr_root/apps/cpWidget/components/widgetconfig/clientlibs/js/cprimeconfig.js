@@ -15,6 +15,7 @@
     const GLOBAL_CONFIG_CP_PATH = "/conf/global/captivate-prime/";
     const HELPX_PREFIX = "cphelpx";
     const SKU_VALIDATION_ERROR = "Error in SKU Validation";
+    const JOB_STATUS_POLL_MS = 1000;
     
     const COMMAND_URL= Granite.HTTP.externalize("/bin/wcmcommand");
     const REPLICATION_URL = Granite.HTTP.externalize("/bin/replicate.json");
@@ -30,7 +31,8 @@
     const ui = $(window).adaptTo("foundation-ui");
 
     function handleFormSubmitSkuError() {
-        $(window).adaptTo("foundation-registry").register("foundation.form.response.ui.error", {
+        var registry = $(window).adaptTo("foundation-registry");
+        registry.register("foundation.form.response.ui.error", {
             name: "foundation.sling",
             handler: function(form, data, xhr, error, errorThrown) {
                 if (xhr.responseText.includes(SKU_VALIDATION_ERROR)) {
@@ -38,6 +40,62 @@
                 }
             }
         });
+        registry.register("foundation.form.response.ui.success", {
+            name: "foundation.sling",
+            handler: function(form, config, data, textStatus, xhr) {
+                var jobId = getJobId(xhr);
+                if (jobId) {
+                    ui.wait();
+                    pollSaveStatus($(form).attr("action"), jobId);
+                }
+            }
+        });
+    }
+
+    function getJobId(xhr) {
+        if (!xhr || xhr.status !== 202) {
+            return null;
+        }
+        try {
+            return JSON.parse(xhr.responseText).jobId;
+        } catch (e) {
+            return null;
+        }
+    }
+
+    // Saves and publications run as jobs on the server; poll their status until they have finished
+    function pollJobStatus(url, jobId, onFinished) {
+        $.ajax({
+            url: url,
+            type: "GET",
+            cache: false,
+            data: {
+                jobId: jobId
+            }
+        }).done(function(status) {
+            if (status.state === "QUEUED" || status.state === "ACTIVE") {
+                window.setTimeout(function() {
+                    pollJobStatus(url, jobId, onFinished);
+                }, JOB_STATUS_POLL_MS);
+                return;
+            }
+            onFinished(status);
+        }).fail(function() {
+            onFinished(null);
+        });
+    }
+
+    function pollSaveStatus(action, jobId) {
+        pollJobStatus(action, jobId, function(status) {
+            ui.clearWait();
+            if (status && status.state === "SUCCEEDED") {
+                ui.notify(null, status.message || Granite.I18n.get("Configuration saved"));
+            } else if (status && status.message === SKU_VALIDATION_ERROR) {
+                ui.alert(Granite.I18n.get("Error"), SKU_VALIDATION_ERROR, "error");
+            } else {
+                ui.alert(Granite.I18n.get("Error"), Granite.I18n.get("Exception in saving the config"), "error");
+            }
+        });
     }
     
     $(document).ready(function() {
@@ -73,12 +131,25 @@
                 url: publishUrl,
                 type: "POST"
             }).done(function(data, textStatus, jqXHR) {
-                window.location.reload();
+                var jobId = getJobId(jqXHR);
+                if (!jobId) {
+                    ui.clearWait();
+                    window.location.reload();
+                    return;
+                }
+                pollJobStatus(publishUrl, jobId, function(status) {
+                    ui.clearWait();
+                    if (status && status.state === "SUCCEEDED") {
+                        window.location.reload();
+                    } else {
+                        var message = Granite.I18n.get("Exception in Publishing the config");
+                        ui.alert(Granite.I18n.get("Error"), message, "error");
+                    }
+                });
             }).fail(function(jqXHR, textStatus, errorThrown) {
+                ui.clearWait();
                 var message = Granite.I18n.get("Exception in Publishing the config");
                 ui.alert(Granite.I18n.get("Error"), message, "error");
-            }).always(function() {
-                ui.clearWait();
             });
         }
     }